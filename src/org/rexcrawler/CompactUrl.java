@@ -0,0 +1,234 @@
+package org.rexcrawler;
+
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Compact URL
+ * 
+ * The frontier stores a lot of URLs sharing the same scheme and host.
+ * This representation keeps the host as an ID of the {@link HostDictionary}
+ * and only the remaining part (path, query and fragment) as UTF-8 bytes.
+ * The <code>String</code> form is built on demand by {@link #toString()}.
+ * 
+ * @author shake0
+ *
+ */
+public final class CompactUrl {
+	
+	private CompactUrl(HostDictionary dictionary, int host, byte[] path){
+		this.dictionary = dictionary;
+		this.host       = host;
+		this.path       = path;
+	}
+	
+	/**
+	 * Encode a URL string with the shared dictionary.
+	 * The shared dictionary never shrinks, long running 
+	 * programs should use their own dictionary.
+	 * @param url absolute URL
+	 * @return compact URL
+	 */
+	public static CompactUrl of(String url){
+		return of(HostDictionary.SHARED, url);
+	}
+	
+	/**
+	 * Encode the location of a URL object (query and fragment excluded)
+	 * with the shared dictionary. This is the form used to select descendant links.
+	 * @param url absolute URL
+	 * @return compact URL without query
+	 * @see CrawlerHandler#childOnly(CompactUrl, List)
+	 */
+	public static CompactUrl location(URL url){
+		return location(HostDictionary.SHARED, url);
+	}
+	
+	/**
+	 * Encode the location of a URL object (query and fragment excluded)
+	 * @param dictionary host dictionary
+	 * @param url absolute URL
+	 * @return compact URL without query
+	 */
+	public static CompactUrl location(HostDictionary dictionary, URL url){
+		return of(dictionary, url.getProtocol() + "://" + url.getAuthority(), url.getPath());
+	}
+	
+	/**
+	 * Encode a URL string
+	 * @param dictionary host dictionary
+	 * @param url absolute URL
+	 * @return compact URL
+	 */
+	public static CompactUrl of(HostDictionary dictionary, String url){
+		int split = authorityEnd(url);
+		return of(dictionary, url.substring(0, split), url.substring(split));
+	}
+	
+	private static CompactUrl of(HostDictionary dictionary, String prefix, String path){
+		return new CompactUrl(dictionary, dictionary.intern(prefix), 
+				path.isEmpty() ? EMPTY : path.getBytes(StandardCharsets.UTF_8));
+	}
+	
+	/*
+	 * Index of the first character after "scheme://authority",
+	 * 0 if the URL is not absolute.
+	 */
+	private static int authorityEnd(String url){
+		int scheme = url.indexOf("://");
+		if(scheme < 0) return 0;
+		for(int i = scheme + 3; i < url.length(); i++){
+			char c = url.charAt(i);
+			if(c == '/' || c == '?' || c == '#') return i;
+		}
+		return url.length();
+	}
+	
+	/**
+	 * Encode all the URLs of the collection
+	 * @param urls absolute URLs
+	 * @return list of compact URLs
+	 */
+	public static List<CompactUrl> encode(Collection<String> urls){
+		return encode(HostDictionary.SHARED, urls);
+	}
+	
+	/**
+	 * Encode all the URLs of the collection
+	 * @param dictionary host dictionary
+	 * @param urls absolute URLs
+	 * @return list of compact URLs
+	 */
+	public static List<CompactUrl> encode(HostDictionary dictionary, Collection<String> urls){
+		List<CompactUrl> encoded = new ArrayList<>(urls.size());
+		for(String url : urls)
+			encoded.add(of(dictionary, url));
+		return encoded;
+	}
+	
+	/**
+	 * Materialise all the URLs of the collection
+	 * @param urls compact URLs
+	 * @return list of URL strings
+	 */
+	public static List<String> decode(Collection<CompactUrl> urls){
+		List<String> decoded = new ArrayList<>(urls.size());
+		for(CompactUrl url : urls)
+			decoded.add(url.toString());
+		return decoded;
+	}
+	
+	/**
+	 * Get the host ID
+	 * @return ID in the dictionary
+	 */
+	public int getHost(){
+		return this.host;
+	}
+	
+	/**
+	 * Get the scheme and authority of this URL
+	 * @return prefix (eg. "http://www.example.org")
+	 */
+	public String getPrefix(){
+		return this.dictionary.prefix(this.host);
+	}
+	
+	/**
+	 * Get the host name of this URL, without user info and port
+	 * @return host name, empty for relative URLs
+	 */
+	public String getHostName(){
+		String prefix = getPrefix();
+		int    start  = prefix.indexOf("://");
+		if(start < 0) return "";
+		start = Math.max(start + 3, prefix.lastIndexOf('@') + 1);
+		int end = prefix.length();
+		if(prefix.charAt(start) == '['){
+			// IPv6 literal
+			end = prefix.indexOf(']', start) + 1;
+		}
+		else {
+			int port = prefix.indexOf(':', start);
+			if(port >= 0) end = port;
+		}
+		return prefix.substring(start, end);
+	}
+	
+	/**
+	 * Test whether <code>other</code> is a strict descendant of this URL.
+	 * Only the host IDs and the path bytes are compared.
+	 * @param other candidate descendant
+	 * @return true if this URL is a proper prefix of <code>other</code>
+	 */
+	public boolean isParentOf(CompactUrl other){
+		if(other.host != this.host || other.dictionary != this.dictionary) 
+			return false;
+		if(other.path.length <= this.path.length) 
+			return false;
+		for(int i = 0; i < this.path.length; i++)
+			if(this.path[i] != other.path[i]) return false;
+		return true;
+	}
+	
+	/**
+	 * Test whether <code>link</code> is a strict descendant of this URL
+	 * without materialising this URL.
+	 * @param link candidate descendant
+	 * @return true if this URL is a proper prefix of <code>link</code>
+	 */
+	public boolean isParentOf(String link){
+		String prefix = getPrefix();
+		if(! link.startsWith(prefix)) 
+			return false;
+		int offset = prefix.length();
+		for(int i = 0; i < this.path.length; i++){
+			byte b = this.path[i];
+			// non-ASCII path: compare the decoded form
+			if(b < 0){
+				String parent = toString();
+				return link.startsWith(parent) && link.length() > parent.length();
+			}
+			if(offset + i >= link.length() || link.charAt(offset + i) != b) 
+				return false;
+		}
+		return link.length() > offset + this.path.length;
+	}
+	
+	@Override
+	public boolean equals(Object obj) {
+		if(this == obj) return true;
+		if(! (obj instanceof CompactUrl)) return false;
+		CompactUrl other = (CompactUrl) obj;
+		return this.host == other.host 
+				&& this.dictionary == other.dictionary 
+				&& Arrays.equals(this.path, other.path);
+	}
+	
+	/*
+	 * Estimated heap bytes: the object, its path and a list node
+	 */
+	int footprint(){
+		return 64 + ((this.path.length + 7) & ~7);
+	}
+	
+	@Override
+	public int hashCode() {
+		return 31 * this.host + Arrays.hashCode(this.path);
+	}
+	
+	@Override
+	public String toString() {
+		return getPrefix() + new String(this.path, StandardCharsets.UTF_8);
+	}
+	
+	private static final byte[] EMPTY = new byte[0];
+	
+	private final HostDictionary dictionary;
+	private final int            host;
+	private final byte[]         path;
+}
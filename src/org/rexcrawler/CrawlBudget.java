@@ -0,0 +1,193 @@
+package org.rexcrawler;
+
+import java.net.HttpURLConnection;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Crawl budget
+ *
+ * Time and byte limits of a search, shared by the handler clones
+ * as the abort flag. The threads visiting a URL are registered as
+ * flights: when the search is aborted, by a limit or by the user,
+ * the in-flight connections are disconnected and the threads blocked
+ * on a permit, a retry or a read are interrupted. The interrupt is
+ * consumed when the flight lands, a worker never leaves the visit
+ * with a pending interrupt.
+ *
+ * @author shake0
+ *
+ */
+final class CrawlBudget {
+
+	/*
+	 * A thread visiting a URL
+	 */
+	static final class Flight {
+
+		Flight(Thread thread) {
+			this.thread = thread;
+			this.active = true;
+		}
+
+		synchronized void attach(HttpURLConnection connection){
+			this.connection = connection;
+			if(cancelled) connection.disconnect();
+		}
+
+		synchronized void cancel(){
+			if(! active || cancelled) return;
+			cancelled = true;
+			thread.interrupt();
+			if(connection != null) connection.disconnect();
+		}
+
+		synchronized boolean land(){
+			active     = false;
+			connection = null;
+			return cancelled;
+		}
+
+		private final Thread      thread;
+		private HttpURLConnection connection;
+		private boolean           active;
+		private boolean           cancelled;
+	}
+
+	CrawlBudget(AtomicBoolean abort) {
+		this.abort   = abort;
+		this.flights = ConcurrentHashMap.newKeySet();
+		this.bytes   = new AtomicLong();
+	}
+
+	/*
+	 * Start the limits of a new search, 0 is no limit
+	 */
+	synchronized void start(long timeBudget, long byteBudget){
+		stop();
+		this.byteBudget = byteBudget;
+		this.expired    = false;
+		this.abortedAt  = 0;
+		this.latency    = -1;
+		this.bytes.set(0);
+		if(timeBudget > 0)
+			this.deadline = timer().schedule(new Runnable() {
+				@Override
+				public void run() {
+					expired = true;
+					cancel("time budget");
+				}
+			}, timeBudget, TimeUnit.MILLISECONDS);
+	}
+
+	/*
+	 * End of the search, the latency of the abort is measured here
+	 */
+	synchronized void stop(){
+		if(deadline != null){
+			deadline.cancel(false);
+			deadline = null;
+		}
+		if(abortedAt != 0 && latency < 0)
+			latency = System.nanoTime() - abortedAt;
+	}
+
+	/*
+	 * Abort the search and cancel the flights
+	 */
+	void cancel(String reason){
+		CrawlEvents.Abort event = CrawlEvents.enabled() ? new CrawlEvents.Abort() : null;
+		boolean first = abort.compareAndSet(false, true);
+		if(first)
+			abortedAt = System.nanoTime();
+		int cancelled = 0;
+		for(Flight flight : flights){
+			flight.cancel();
+			cancelled++;
+		}
+		if(first && event != null && event.shouldCommit()){
+			event.reason  = reason;
+			event.flights = cancelled;
+			event.bytes   = bytes.get();
+			event.worker  = CrawlEvents.worker();
+			event.commit();
+		}
+	}
+
+	/*
+	 * Register the current thread, the caller must test the
+	 * abort flag after entering.
+	 */
+	Flight enter(){
+		Flight flight = new Flight(Thread.currentThread());
+		flights.add(flight);
+		return flight;
+	}
+
+	void exit(Flight flight){
+		flights.remove(flight);
+		if(flight.land())
+			Thread.interrupted();
+	}
+
+	/*
+	 * Count the bytes downloaded, false when the budget is exceeded
+	 */
+	boolean charge(long count){
+		long total = bytes.addAndGet(count);
+		if(byteBudget > 0 && total >= byteBudget){
+			expired = true;
+			cancel("byte budget");
+			return false;
+		}
+		return true;
+	}
+
+	long getByteCount(){
+		return bytes.get();
+	}
+
+	/*
+	 * True when a limit stopped the search
+	 */
+	boolean isExpired(){
+		return expired;
+	}
+
+	/*
+	 * Nanoseconds from the abort to the end of the search, -1 if not aborted
+	 */
+	long getAbortLatency(){
+		return latency;
+	}
+
+	private static synchronized ScheduledExecutorService timer(){
+		if(timer == null)
+			timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "rexcrawler-deadline");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		return timer;
+	}
+
+	private static ScheduledExecutorService timer;
+	private final AtomicBoolean   abort;
+	private final Set<Flight>     flights;
+	private final AtomicLong      bytes;
+	private volatile long         byteBudget;
+	private volatile boolean      expired;
+	private volatile long         abortedAt;
+	private long                  latency;
+	private ScheduledFuture<?>    deadline;
+}
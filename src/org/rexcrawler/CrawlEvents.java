@@ -0,0 +1,152 @@
+package org.rexcrawler;
+
+import java.util.concurrent.ForkJoinWorkerThread;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight Recorder events
+ *
+ * Custom JFR events of the crawl phases, to correlate a slow search
+ * with the URL or the host involved, and with the GC and I/O events
+ * of the same recording in JMC. The events are disabled unless a
+ * recording enables them:
+ * <pre>
+ * java -XX:StartFlightRecording:filename=crawl.jfr,settings=profile ...
+ * jfr print --categories RexCrawler crawl.jfr
+ * </pre>
+ * The events are only created once the Flight Recorder is initialized,
+ * see {@link #enabled()}: the first event class loaded registers the 
+ * events, which costs hundreds of milliseconds. Otherwise a disabled 
+ * event costs an allocation removed by the JIT and a flag test: the 
+ * fields are only computed when {@link Event#shouldCommit()}.
+ *
+ * The worker ID is the pool index of the fork/join worker, -1 for
+ * the other threads.
+ *
+ * @author shake0
+ *
+ */
+final class CrawlEvents {
+
+	private CrawlEvents() { }
+
+	@Name("org.rexcrawler.Fetch")
+	@Label("Fetch")
+	@Category({"RexCrawler", "Crawl"})
+	@Description("Connection to a URL until the response headers, permit wait included")
+	@StackTrace(false)
+	static final class Fetch extends Event {
+		@Label("URL")       String url;
+		@Label("Host")      String host;
+		@Label("Status")    int    status;
+		@Label("Attempt")   int    attempt;
+		@Label("Bytes") @DataAmount
+		@Description("Announced length of the body, -1 if unknown")
+		long   bytes;
+		@Label("Worker ID") int    worker;
+	}
+
+	@Name("org.rexcrawler.Parse")
+	@Label("Parse")
+	@Category({"RexCrawler", "Crawl"})
+	@Description("Download and parsing of a page by the handler")
+	@StackTrace(false)
+	static final class Parse extends Event {
+		@Label("URL")       String url;
+		@Label("Host")      String host;
+		@Label("Bytes") @DataAmount
+		long   bytes;
+		@Label("Monitor Wait") @Timespan(Timespan.NANOSECONDS)
+		@Description("Time waiting for the handler lock, held by the reduce")
+		long   monitorWait;
+		@Label("Worker ID") int    worker;
+	}
+
+	@Name("org.rexcrawler.LinkFilter")
+	@Label("Link Filter")
+	@Category({"RexCrawler", "Crawl"})
+	@Description("Filtering of the links of a page")
+	@StackTrace(false)
+	static final class LinkFilter extends Event {
+		@Label("URL")       String url;
+		@Label("Host")      String host;
+		@Label("Links Found")    int found;
+		@Label("Links Accepted") int accepted;
+		@Label("Worker ID") int    worker;
+	}
+
+	@Name("org.rexcrawler.Fork")
+	@Label("Fork")
+	@Category({"RexCrawler", "Scheduling"})
+	@Description("Chunk of URLs delegated to a new worker, or spilled under memory pressure")
+	@StackTrace(false)
+	static final class Fork extends Event {
+		@Label("Chunk Size") int     chunkSize;
+		@Label("Spilled")    boolean spilled;
+		@Label("Worker ID")  int     worker;
+	}
+
+	@Name("org.rexcrawler.Reduce")
+	@Label("Reduce")
+	@Category({"RexCrawler", "Scheduling"})
+	@Description("Merge of the @Reduced results of a worker into the master handler")
+	@StackTrace(false)
+	static final class Reduce extends Event {
+		@Label("Chunk Size") int  chunkSize;
+		@Label("Monitor Wait") @Timespan(Timespan.NANOSECONDS)
+		@Description("Time waiting for the master handler lock")
+		long monitorWait;
+		@Label("Worker ID")  int  worker;
+	}
+
+	@Name("org.rexcrawler.Abort")
+	@Label("Abort")
+	@Category({"RexCrawler", "Scheduling"})
+	@Description("Abort of a search")
+	static final class Abort extends Event {
+		@Label("Reason")    String reason;
+		@Label("Flights")
+		@Description("Visits in progress, disconnected")
+		int    flights;
+		@Label("Bytes") @DataAmount
+		@Description("Bytes downloaded by the search")
+		long   bytes;
+		@Label("Worker ID") int    worker;
+	}
+
+	/*
+	 * True once a recording may enable the events, a volatile read.
+	 * The events are not created, nor their classes loaded, before
+	 */
+	static boolean enabled(){
+		return FlightRecorder.isInitialized();
+	}
+
+	/*
+	 * Pool index of the current fork/join worker, -1 otherwise
+	 */
+	static int worker(){
+		Thread thread = Thread.currentThread();
+		return (thread instanceof ForkJoinWorkerThread) ? ((ForkJoinWorkerThread) thread).getPoolIndex() : -1;
+	}
+
+	/*
+	 * Authority of an absolute URL, without parsing it
+	 */
+	static String host(String url){
+		int start = url.indexOf("://");
+		if(start < 0) return "";
+		start += 3;
+		int end = url.indexOf('/', start);
+		return (end < 0) ? url.substring(start) : url.substring(start, end);
+	}
+}
@@ -0,0 +1,433 @@
+package org.rexcrawler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Crawl history
+ *
+ * Per-URL history of the recurring crawls: time of the last fetch,
+ * hash of the content, number of revisits and of the changes seen.
+ * Each page is modelled as changing at a constant rate; the rate is
+ * estimated from the revisits with the bias-reduced estimator of
+ * Cho and Garcia-Molina:
+ * <pre>
+ * rate = -ln((n - x + 0.5) / (n + 0.5)) / interval
+ * </pre>
+ * where <code>n</code> is the number of revisits, <code>x</code> the
+ * revisits that found a change and <code>interval</code> the mean time
+ * between two revisits. The revisit interval of a page is the inverse of
+ * its rate, bounded by {@link #setIntervals(long, long)}. Without any
+ * change seen the estimate is 0 and the interval doubles the time the 
+ * page was observed unchanged.
+ *
+ * A run starts with {@link #frontier(long, int)}: the known URLs are
+ * ordered by their probability of having changed and the unlikely ones
+ * are pruned. During the run the handler records the pages fetched and
+ * drops the known links that are not due.
+ * <pre>
+ * CrawlHistory history = CrawlHistory.load(file);
+ * handler.setHistory(history);
+ * crawler.run(history.frontier(System.currentTimeMillis(), 1000));
+ * history.save(file);
+ * </pre>
+ * The pages are stamped with the clock of the run, see {@link #time()}, 
+ * the same clock that decides which links are due.
+ * The history is set on the handler and shared by the forked handlers.
+ *
+ * @author shake0
+ * @see CrawlerHandler#setHistory(CrawlHistory)
+ */
+public class CrawlHistory {
+
+	/*
+	 * History of a URL
+	 */
+	static class Entry {
+
+		Entry(String url) {
+			this.url       = url;
+			this.lastFetch = NEVER;
+		}
+
+		/*
+		 * Changes per millisecond, 0 if no change was ever seen,
+		 * -1 without revisits
+		 */
+		synchronized double rate(){
+			if(visits == 0 || observed == 0) return -1;
+			double interval = (double) observed / visits;
+			return -Math.log((visits - changes + 0.5) / (visits + 0.5)) / interval;
+		}
+
+		final String url;
+		long   lastFetch;
+		long   hash;
+		int    visits;   // revisits, the first fetch excluded
+		int    changes;  // revisits with a new hash
+		long   observed; // time between the first and the last fetch
+		int    epoch;    // last run fetching this URL
+	}
+
+	public CrawlHistory() {
+		this.entries       = new ConcurrentHashMap<>();
+		this.minInterval   = TimeUnit.HOURS.toMillis(1);
+		this.maxInterval   = TimeUnit.DAYS.toMillis(30);
+		this.firstInterval = TimeUnit.DAYS.toMillis(1);
+		this.threshold     = 0.5;
+		this.fetchedKnown  = new AtomicInteger();
+		this.fetchedNew    = new AtomicInteger();
+	}
+
+	//--------------------------------------------
+	// Persistence
+
+	/**
+	 * Load a history, a missing file is an empty history
+	 * @param file history file
+	 * @return loaded history
+	 * @throws IOException the file cannot be read or is corrupted
+	 */
+	public static CrawlHistory load(File file) throws IOException{
+		CrawlHistory history = new CrawlHistory();
+		if(! file.exists()) return history;
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024));
+		try {
+			if(in.readInt() != MAGIC)
+				throw new IOException("Not a crawl history: " + file);
+			history.epoch = in.readInt();
+			int size = in.readInt();
+			for(int i = 0; i < size; i++){
+				Entry entry = new Entry(in.readUTF());
+				entry.lastFetch = in.readLong();
+				entry.hash      = in.readLong();
+				entry.visits    = in.readInt();
+				entry.changes   = in.readInt();
+				entry.observed  = in.readLong();
+				entry.epoch     = in.readInt();
+				history.entries.put(entry.url, entry);
+			}
+		} finally {
+			in.close();
+		}
+		return history;
+	}
+
+	/**
+	 * Save the history. The file is replaced once fully written,
+	 * a failure keeps the previous history.
+	 * @param file history file
+	 * @throws IOException the file cannot be written
+	 */
+	public void save(File file) throws IOException{
+		File temp = new File(file.getPath() + ".tmp");
+		List<Entry> snapshot = new ArrayList<>(entries.values());
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 64 * 1024));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(epoch);
+			out.writeInt(snapshot.size());
+			for(Entry entry : snapshot){
+				synchronized (entry) {
+					out.writeUTF(entry.url);
+					out.writeLong(entry.lastFetch);
+					out.writeLong(entry.hash);
+					out.writeInt(entry.visits);
+					out.writeInt(entry.changes);
+					out.writeLong(entry.observed);
+					out.writeInt(entry.epoch);
+				}
+			}
+		} finally {
+			out.close();
+		}
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	//--------------------------------------------
+	// Scheduling
+
+	/**
+	 * Start a new run and build its frontier: the known URLs whose
+	 * probability of having changed at <code>time</code> reaches the
+	 * threshold, the most likely first.
+	 * @param time current time in milliseconds
+	 * @param max maximum number of URL, 0 for no limit
+	 * @return ordered frontier of the run
+	 */
+	public List<String> frontier(long time, int max){
+		begin(time);
+		List<Entry>              due         = new ArrayList<>();
+		final Map<Entry, Double> probability = new HashMap<>();
+		for(Entry entry : entries.values()){
+			double p = probability(entry, time);
+			if(p >= threshold){
+				due.add(entry);
+				probability.put(entry, p);
+			}
+		}
+		Collections.sort(due, new Comparator<Entry>() {
+			@Override
+			public int compare(Entry a, Entry b) {
+				return Double.compare(probability.get(b), probability.get(a));
+			}
+		});
+		if(max > 0 && due.size() > max)
+			due = due.subList(0, max);
+		List<String> frontier = new ArrayList<>(due.size());
+		for(Entry entry : due)
+			frontier.add(entry.url);
+		return frontier;
+	}
+
+	/**
+	 * Start a new run without building a frontier, for instance
+	 * when the crawl is seeded by sitemaps.
+	 * @param time current time in milliseconds
+	 */
+	public void begin(long time){
+		this.epoch++;
+		this.now   = time;
+		this.began = System.nanoTime();
+		this.known = entries.size();
+		this.fetchedKnown.set(0);
+		this.fetchedNew.set(0);
+	}
+
+	/**
+	 * Clock of the current run: the time given to {@link #begin(long)}
+	 * plus the time elapsed since. Without run, the system time.
+	 * @return time in milliseconds
+	 */
+	public long time(){
+		long began = this.began;
+		if(began == 0) return System.currentTimeMillis();
+		return now + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - began);
+	}
+	
+	/**
+	 * Drop the known links that are not due in the current run,
+	 * the new links are kept.
+	 * @param links links found by the crawl
+	 * @return links to follow
+	 */
+	public List<String> prune(List<String> links){
+		List<String> due  = new LinkedList<>();
+		long         time = time();
+		for(String link : links){
+			Entry entry = entries.get(link);
+			if(entry == null || (entry.epoch != epoch && probability(entry, time) >= threshold))
+				due.add(link);
+		}
+		return due;
+	}
+
+	/**
+	 * Record the fetch of a page
+	 * @param url page location, as in the frontier
+	 * @param hash hash of the content
+	 * @param time time of the fetch in milliseconds
+	 * @return true if the content changed since the last fetch
+	 */
+	public boolean observe(String url, long hash, long time){
+		Entry entry = entries.get(url);
+		if(entry == null){
+			Entry created = new Entry(url);
+			entry = entries.putIfAbsent(url, created);
+			if(entry == null) entry = created;
+		}
+		synchronized (entry) {
+			boolean first = entry.lastFetch == NEVER;
+			if(entry.epoch != epoch)
+				(first ? fetchedNew : fetchedKnown).incrementAndGet();
+			entry.epoch = epoch;
+			if(first){
+				entry.lastFetch = time;
+				entry.hash      = hash;
+				return true;
+			}
+			boolean changed = entry.hash != hash;
+			if(time > entry.lastFetch){
+				entry.observed += time - entry.lastFetch;
+				entry.visits++;
+				if(changed) entry.changes++;
+				entry.lastFetch = time;
+			}
+			entry.hash = hash;
+			return changed;
+		}
+	}
+
+	/**
+	 * Record the fetch of a page, the content is hashed
+	 * @param page page fetched
+	 * @param url page location, as in the frontier
+	 * @param time time of the fetch in milliseconds
+	 * @return true if the content changed since the last fetch
+	 * @throws IOException the content cannot be read
+	 */
+	public boolean observe(Page page, String url, long time) throws IOException{
+		return observe(url, hash(page.getContent()), time);
+	}
+
+	/**
+	 * 64 bit FNV-1a hash of the content
+	 * @param content page content
+	 * @return hash
+	 */
+	public static long hash(CharSequence content){
+		long hash = 0xcbf29ce484222325L;
+		for(int i = 0; i < content.length(); i++){
+			hash ^= content.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		return hash;
+	}
+
+	/*
+	 * Probability of a change since the last fetch
+	 */
+	private double probability(Entry entry, long time){
+		long elapsed;
+		synchronized (entry) {
+			elapsed = time - entry.lastFetch;
+		}
+		if(elapsed <= 0) return 0;
+		// exponential model: P(change within t) = 1 - e^(-rate t)
+		return 1 - Math.exp(-(double) elapsed / interval(entry));
+	}
+
+	/*
+	 * Estimated revisit interval. A page never seen changing backs off:
+	 * the interval is twice the time it was observed unchanged.
+	 */
+	private long interval(Entry entry){
+		double rate = entry.rate();
+		double interval;
+		if(rate < 0)       interval = firstInterval;
+		else if(rate == 0) interval = Math.max(firstInterval, 2.0 * entry.observed);
+		else               interval = 1 / rate;
+		return (long) Math.max(minInterval, Math.min(maxInterval, interval));
+	}
+
+	//--------------------------------------------
+	// Mutators
+
+	/**
+	 * Get the estimated revisit interval of a URL
+	 * @param url page location
+	 * @return interval in milliseconds, -1 if the URL is unknown
+	 */
+	public long getInterval(String url){
+		Entry entry = entries.get(url);
+		return (entry == null) ? -1 : interval(entry);
+	}
+
+	/**
+	 * Get the probability of a change of the URL since its last fetch
+	 * @param url page location
+	 * @param time current time in milliseconds
+	 * @return probability, 1 if the URL is unknown
+	 */
+	public double getChangeProbability(String url, long time){
+		Entry entry = entries.get(url);
+		return (entry == null) ? 1 : probability(entry, time);
+	}
+
+	/**
+	 * Get the fraction of the fetch budget saved by the current run:
+	 * the known URLs not fetched over all the known URLs.
+	 * @return fraction between 0 and 1
+	 */
+	public double getSavedFraction(){
+		if(known == 0) return 0;
+		return 1 - (double) fetchedKnown.get() / known;
+	}
+
+	/** @return known URLs fetched by the current run */
+	public int getRefetchCount(){ return fetchedKnown.get(); }
+	/** @return new URLs fetched by the current run */
+	public int getDiscoveryCount(){ return fetchedNew.get(); }
+
+	/**
+	 * @return number of URL in the history
+	 */
+	public int size(){
+		return entries.size();
+	}
+
+	/**
+	 * Bound the revisit interval of a page
+	 * @param minInterval shortest interval in milliseconds, default 1 hour
+	 * @param maxInterval longest interval in milliseconds, default 30 days
+	 * @return the calling object
+	 */
+	public CrawlHistory setIntervals(long minInterval, long maxInterval){
+		if(minInterval <= 0 || maxInterval < minInterval)
+			throw new IllegalArgumentException("Invalid intervals");
+		this.minInterval = minInterval;
+		this.maxInterval = maxInterval;
+		return this;
+	}
+
+	/**
+	 * Set the revisit interval of a page fetched only once
+	 * @param firstInterval interval in milliseconds, default 1 day
+	 * @return the calling object
+	 */
+	public CrawlHistory setFirstInterval(long firstInterval){
+		this.firstInterval = firstInterval;
+		return this;
+	}
+
+	/**
+	 * Set the probability of change making a URL due
+	 * @param threshold between 0 and 1, default 0.5. 0 fetches every URL
+	 * @return the calling object
+	 */
+	public CrawlHistory setThreshold(double threshold){
+		if(threshold < 0 || threshold > 1)
+			throw new IllegalArgumentException("Threshold out of [0, 1]");
+		this.threshold = threshold;
+		return this;
+	}
+
+	@Override
+	public String toString() {
+		return "size=" + size() + " refetched=" + getRefetchCount() + " discovered=" + getDiscoveryCount()
+				+ " saved=" + Math.round(getSavedFraction() * 100) + "%";
+	}
+
+	private static final int  MAGIC = 0x52434831; // RCH1
+	private static final long NEVER = Long.MIN_VALUE;
+	private final Map<String, Entry> entries;
+	private long          minInterval;
+	private long          maxInterval;
+	private long          firstInterval;
+	private double        threshold;
+	// current run
+	private volatile int  epoch;
+	private volatile long now;
+	private volatile long began;
+	private volatile int  known;
+	private final AtomicInteger fetchedKnown;
+	private final AtomicInteger fetchedNew;
+}
@@ -0,0 +1,276 @@
+package org.rexcrawler;
+
+import java.net.URL;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+
+import org.rexcrawler.net.AdaptiveLimiter;
+import org.rexcrawler.net.CachingResolver;
+
+/**
+ * Crawl job
+ * 
+ * A search submitted to a {@link CrawlService}. The job owns its
+ * crawler, therefore its handler, limits and frontier; the threads
+ * are shared with the other jobs of the service.
+ * 
+ * Each running job has at most {@link #getShare()} workers at a time,
+ * the share being the pool parallelism divided among the running jobs.
+ * A worker over the share does not wait, it keeps the surplus of its 
+ * chunk instead of forking. No thread waits for the end of a job either:
+ * the last worker of the search completes it.
+ * 
+ * @author shake0
+ *
+ */
+public class CrawlJob extends RecursiveAction {
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Life cycle of a job
+	 */
+	public static enum State { QUEUED, RUNNING, DONE, CANCELLED, FAILED }
+	
+	CrawlJob(CrawlService service, long id, Crawler crawler, URL[] targets, 
+			CachingResolver resolver, AdaptiveLimiter limiter) {
+		this.service  = service;
+		this.id       = id;
+		this.crawler  = crawler;
+		this.targets  = targets;
+		this.resolver = resolver;
+		this.limiter  = limiter;
+		this.state    = State.QUEUED;
+		this.share    = 1;
+		this.created  = System.nanoTime();
+	}
+	
+	//--------------------------------------------
+	// Execution
+	
+	@Override
+	protected void compute() {
+		synchronized (this) {
+			if(state == State.QUEUED){
+				state   = State.RUNNING;
+				started = System.nanoTime();
+				// the master worker
+				active  = 1;
+			}
+		}
+		if(getState() != State.RUNNING){
+			// cancelled before starting
+			service.finished(this);
+			return;
+		}
+		try {
+			crawler.job = this;
+			crawler.prepare(targets);
+			// prepare() clears the abort flag, a cancel received meanwhile is lost
+			synchronized (this) {
+				if(cancelRequested) crawler.cancel();
+			}
+		} catch (RuntimeException e) {
+			failed(e);
+			completed();
+			return;
+		}
+		// returns once the master is done, see completed()
+		crawler.invoke();
+	}
+	
+	/*
+	 * Called by the last worker of the search
+	 */
+	void completed(){
+		crawler.job = null;
+		crawler.complete();
+		finish((getFailure() != null) ? State.FAILED : State.DONE);
+	}
+	
+	synchronized void failed(RuntimeException e){
+		if(failure == null) failure = e;
+	}
+	
+	private void finish(State end){
+		// the service is updated before the waiters are released
+		service.finished(this);
+		synchronized (this) {
+			if(state == State.RUNNING || state == State.QUEUED)
+				state = (cancelRequested && end == State.DONE) ? State.CANCELLED : end;
+			finished = System.nanoTime();
+			active   = 0;
+			notifyAll();
+		}
+	}
+	
+	/*
+	 * Fair share: a worker forks only while the job runs less 
+	 * workers than its share
+	 */
+	synchronized boolean enter(){
+		if(active >= share) return false;
+		active++;
+		return true;
+	}
+	
+	synchronized void exit(){
+		active--;
+	}
+	
+	synchronized void chunk(){
+		chunks++;
+	}
+	
+	synchronized void setShare(int share){
+		this.share = Math.max(1, share);
+	}
+	
+	//--------------------------------------------
+	// Control
+	
+	/**
+	 * Cancel the job. A queued job never starts, a running job 
+	 * stops after the pages being parsed.
+	 * @return false if the job was already over
+	 */
+	public boolean cancel(){
+		synchronized (this) {
+			if(isOver()) return false;
+			cancelRequested = true;
+			if(state == State.QUEUED){
+				state    = State.CANCELLED;
+				finished = System.nanoTime();
+			}
+			notifyAll();
+		}
+		crawler.cancel();
+		service.cancelled(this);
+		return true;
+	}
+	
+	/**
+	 * Wait for the job to be over
+	 * @throws InterruptedException
+	 */
+	public synchronized void await() throws InterruptedException{
+		while(! isOver())
+			wait();
+	}
+	
+	/**
+	 * Wait for the job to be over
+	 * @param timeout maximum time to wait
+	 * @param unit unit of the timeout
+	 * @return true if the job is over
+	 * @throws InterruptedException
+	 */
+	public synchronized boolean await(long timeout, TimeUnit unit) throws InterruptedException{
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		while(! isOver()){
+			long left = deadline - System.nanoTime();
+			if(left <= 0) return false;
+			TimeUnit.NANOSECONDS.timedWait(this, left);
+		}
+		return true;
+	}
+	
+	//--------------------------------------------
+	// Stats
+	
+	public long getId(){
+		return this.id;
+	}
+	
+	public synchronized State getState(){
+		return this.state;
+	}
+	
+	public synchronized boolean isOver(){
+		return state == State.DONE || state == State.CANCELLED || state == State.FAILED;
+	}
+	
+	public Crawler getCrawler(){
+		return this.crawler;
+	}
+	
+	/**
+	 * Get the exception that stopped the job
+	 * @return failure or null
+	 */
+	public synchronized RuntimeException getFailure(){
+		return this.failure;
+	}
+	
+	/**
+	 * Get the number of links followed so far
+	 * @return followed links
+	 */
+	public int getFollowedLinkCount(){
+		return (getState() == State.QUEUED) ? 0 : crawler.getFollowedLinkCount();
+	}
+	
+	/**
+	 * Get the number of chunks parsed so far
+	 * @return parsed chunks
+	 */
+	public synchronized long getChunkCount(){
+		return this.chunks;
+	}
+	
+	/**
+	 * @return maximum number of chunks running at the same time
+	 */
+	public synchronized int getShare(){
+		return this.share;
+	}
+	
+	/**
+	 * @return workers running
+	 */
+	public synchronized int getActiveChunks(){
+		return this.active;
+	}
+	
+	/**
+	 * Get the time spent in the queue
+	 * @return waiting time in milliseconds
+	 */
+	public synchronized long getQueueTime(){
+		long end = (started != 0) ? started : (finished != 0) ? finished : System.nanoTime();
+		return TimeUnit.NANOSECONDS.toMillis(end - created);
+	}
+	
+	/**
+	 * Get the time spent running
+	 * @return running time in milliseconds
+	 */
+	public synchronized long getRunTime(){
+		if(started == 0) return 0;
+		long end = (finished != 0) ? finished : System.nanoTime();
+		return TimeUnit.NANOSECONDS.toMillis(end - started);
+	}
+	
+	@Override
+	public String toString() {
+		return "job " + id + " " + getState() + " followed=" + getFollowedLinkCount() 
+				+ " chunks=" + getChunkCount() + " share=" + getShare()
+				+ " queued=" + getQueueTime() + "ms running=" + getRunTime() + "ms";
+	}
+	
+	private final CrawlService service;
+	private final long         id;
+	private final Crawler      crawler;
+	private final URL[]        targets;
+	final CachingResolver      resolver;
+	final AdaptiveLimiter      limiter;
+	// state, guarded by this
+	private State            state;
+	private boolean          cancelRequested;
+	private RuntimeException failure;
+	private int              share;
+	private int              active;
+	private long             chunks;
+	private final long       created;
+	private long             started;
+	private long             finished;
+}
@@ -0,0 +1,581 @@
+package org.rexcrawler;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.rexcrawler.net.AdaptiveLimiter;
+import org.rexcrawler.net.CachingResolver;
+import org.rexcrawler.net.RetryPolicy;
+
+/**
+ * Crawl pipeline
+ * 
+ * An alternative to the {@link Crawler} where fetching and parsing
+ * run on different threads. The search is split in stages connected
+ * by queues:
+ * <pre>
+ * frontier -> FETCH -> DECODE -> PARSE -> FILTER -> frontier
+ * </pre>
+ * <ul>
+ * <li>FETCH runs on the I/O threads: connection, headers and body download</li>
+ * <li>DECODE, PARSE and FILTER run on the CPU threads: body to text, 
+ * {@link CrawlerHandler#parsePage(Page)} and link extraction, 
+ * {@link CrawlerHandler#filterLinks(Page, List)}</li>
+ * </ul>
+ * The queues between the stages are bounded: when the CPU threads fall
+ * behind, the I/O threads wait instead of buffering bodies. A CPU thread
+ * never waits, if the next queue is full it runs the next stage itself.
+ * 
+ * Each CPU thread parses with its own clone of the handler, all the clones
+ * are reduced on the handler at the end of the search. 
+ * {@link CrawlerHandler#parse(List)} is not used.
+ * 
+ * The pipeline follows the links as the crawler does: fetch policy, 
+ * retry policy, link graph, history, time and byte budgets. It ignores
+ * the features of the {@link Crawler} alone:
+ * <ul>
+ * <li>the memory governor, the bounded queues limit the buffered pages</li>
+ * <li>the sitemaps</li>
+ * <li>the JFR events of the stages, only an abort is recorded</li>
+ * </ul>
+ * A page whose handler fails with a runtime exception is reported and
+ * skipped, the search goes on.
+ * 
+ * @author shake0
+ *
+ */
+public class CrawlPipeline {
+	
+	/**
+	 * Stages of the pipeline, each one with its input queue
+	 */
+	public static enum Stage { FETCH, DECODE, PARSE, FILTER }
+	
+	//--------------------------------------------
+	// Constructors
+	
+	public CrawlPipeline(CrawlerHandler handler) {
+		this.handler       = handler;
+		this.ioThreads     = 4 * Runtime.getRuntime().availableProcessors();
+		this.cpuThreads    = Runtime.getRuntime().availableProcessors();
+		this.queueCapacity = 64;
+		this.searchLength  = null;
+		this.frontier      = new LinkedBlockingQueue<>();
+		this.queues        = new EnumMap<>(Stage.class);
+		this.processed     = new EnumMap<>(Stage.class);
+		this.maxDepth      = new EnumMap<>(Stage.class);
+		for(Stage stage : Stage.values()){
+			this.processed.put(stage, new AtomicLong());
+			this.maxDepth.put(stage, new AtomicInteger());
+		}
+		this.pending       = new AtomicInteger();
+		this.followed      = new AtomicInteger();
+	}
+	
+	//--------------------------------------------
+	// Execution
+	
+	/**
+	 * Crawl the targets. The call returns when the frontier is empty,
+	 * the search length is reached or the handler aborted the search.
+	 * 
+	 * @param targets list of the URL to parse
+	 */
+	public void run(URL ... targets){
+		prepare();
+		for(URL target : targets)
+			admit(CompactUrl.of(dictionary, target.toString()));
+		
+		List<Thread>         threads = new ArrayList<>();
+		List<CrawlerHandler> clones  = new ArrayList<>();
+		try {
+			for(int i = 0; i < ioThreads; i++)
+				threads.add(start(new Runnable() {
+					@Override
+					public void run() {
+						fetchLoop();
+					}
+				}, "rexcrawler-fetch-" + i));
+			for(int i = 0; i < cpuThreads; i++){
+				final CrawlerHandler clone = (CrawlerHandler) handler.clone();
+				clones.add(clone);
+				threads.add(start(new Runnable() {
+					@Override
+					public void run() {
+						cpuLoop(clone);
+					}
+				}, "rexcrawler-parse-" + i));
+			}
+			awaitTermination();
+		} catch (CloneNotSupportedException e) {
+			System.err.println(e.getLocalizedMessage());
+		} finally {
+			done = true;
+			for(Thread thread : threads){
+				try { thread.join(); }
+				catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+			}
+			handler.budget.stop();
+			if(handler.retries != null)
+				handler.retries.clear();
+			reduce(clones);
+			if(handler.getResultPublisher() != null)
+				handler.getResultPublisher().close();
+		}
+	}
+	
+	private void prepare(){
+		if(this.handler == null)
+			throw new IllegalArgumentException("CrawlerHandler undefined");
+		this.handler.abort.set(false);
+		this.handler.budget.start(this.timeBudget, this.byteBudget);
+		this.handler.resolver = this.resolver;
+		this.handler.limiter  = this.limiter;
+		this.dictionary         = new HostDictionary();
+		this.handler.dictionary = this.dictionary;
+		this.handler.retries    = (this.handler.getRetryPolicy() == null) ? null 
+				: this.handler.getRetryPolicy().newRetries();
+		this.done = false;
+		this.frontier.clear();
+		this.queues.clear();
+		for(Stage stage : Stage.values()){
+			if(stage != Stage.FETCH)
+				this.queues.put(stage, new ArrayBlockingQueue<Page>(queueCapacity));
+			this.processed.get(stage).set(0);
+			this.maxDepth.get(stage).set(0);
+		}
+		this.pending.set(0);
+		this.followed.set(0);
+	}
+	
+	private static Thread start(Runnable task, String name){
+		Thread thread = new Thread(task, name);
+		thread.setDaemon(true);
+		thread.start();
+		return thread;
+	}
+	
+	private void awaitTermination(){
+		synchronized (pending) {
+			// an expired budget does not notify
+			while(pending.get() > 0 && ! handler.abort.get()){
+				try { pending.wait(POLL); }
+				catch (InterruptedException e) { 
+					Thread.currentThread().interrupt(); 
+					handler.abort.set(true);
+				}
+			}
+		}
+	}
+	
+	private void reduce(List<CrawlerHandler> clones){
+		synchronized (handler) {
+			for(CrawlerHandler clone : clones){
+				try {
+					handler.reduce(clone);
+				} catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException ex) {
+					System.err.println(ex.getLocalizedMessage());
+				}
+			}
+		}
+	}
+	
+	/*
+	 * Add a URL to the frontier, within the search length
+	 */
+	private boolean admit(CompactUrl url){
+		int count;
+		do {
+			count = followed.get();
+			if(searchLength != null && count >= searchLength) return false;
+		} while(! followed.compareAndSet(count, count + 1));
+		pending.incrementAndGet();
+		frontier.add(url);
+		depth(Stage.FETCH, frontier.size());
+		return true;
+	}
+	
+	/*
+	 * A URL left the pipeline
+	 */
+	private void completed(){
+		if(pending.decrementAndGet() == 0){
+			synchronized (pending) {
+				pending.notifyAll();
+			}
+		}
+	}
+	
+	private void abort(){
+		handler.budget.cancel("handler");
+		synchronized (pending) {
+			pending.notifyAll();
+		}
+	}
+	
+	private boolean isRunning(){
+		return ! done && ! handler.abort.get();
+	}
+	
+	//--------------------------------------------
+	// I/O stage
+	
+	private void fetchLoop(){
+		RetryPolicy.Retries retry = handler.retries;
+		try {
+			while(isRunning()){
+				if(retry != null)
+					for(RetryPolicy.Attempt attempt : retry.due())
+						fetch(attempt.getUrl(), attempt.getAttempt());
+				CompactUrl url = frontier.poll(POLL, TimeUnit.MILLISECONDS);
+				if(url != null) 
+					fetch(url.toString(), 0);
+			}
+		} catch (InterruptedException e) {
+			// shutting down
+		}
+	}
+	
+	/*
+	 * Connection, headers and body. A URL parked for 
+	 * another attempt stays pending. The fetch is a flight of the
+	 * budget, an abort disconnects it.
+	 */
+	private void fetch(String url, int attempt) throws InterruptedException{
+		RetryPolicy.Retries retry   = handler.retries;
+		CrawlBudget.Flight  flight  = handler.budget.enter();
+		Page                page    = null;
+		String              host    = null;
+		long                start   = 0;
+		long                elapsed = -1;
+		int                 status  = -1;
+		try {
+			if(handler.abort.get()) return;
+			if(limiter != null){
+				String authority = new URL(url).getAuthority();
+				limiter.acquire(authority);
+				host    = authority;
+				start   = System.nanoTime();
+			}
+			HttpURLConnection connection = handler.open(url, flight);
+			flight.attach(connection);
+			if(host != null){
+				status  = connection.getResponseCode();
+				elapsed = System.nanoTime() - start;
+			}
+			if(retry != null && handler.getRetryPolicy().isRetryable(connection.getResponseCode())
+					&& retry.schedule(url, attempt)){
+				connection.disconnect();
+				return;
+			}
+			FetchPolicy policy = handler.getFetchPolicy();
+			if(policy == null || policy.acceptsResponse(connection))
+				page = new Page(connection, dictionary, Page.readBody(connection));
+			else
+				connection.disconnect(); // body never read
+		} catch (MalformedURLException e) {
+			System.err.println(e.getLocalizedMessage());
+		} catch (IOException e) {
+			// disconnected by an abort
+			if(handler.abort.get()) return;
+			if(retry != null && retry.schedule(url, attempt, e)) return;
+			System.err.println(url + ": " + e);
+		} catch (RuntimeException e) {
+			if(! handler.abort.get())
+				System.err.println(url + ": " + e);
+		} finally {
+			processed.get(Stage.FETCH).incrementAndGet();
+			if(host != null)
+				limiter.release(host, (elapsed < 0) ? System.nanoTime() - start : elapsed, status);
+			handler.budget.exit(flight);
+		}
+		if(page == null || ! forward(Stage.DECODE, page))
+			completed();
+	}
+	
+	/*
+	 * Blocking hand-off to the CPU threads
+	 */
+	private boolean forward(Stage stage, Page page){
+		BlockingQueue<Page> queue = queues.get(stage);
+		try {
+			while(isRunning()){
+				if(queue.offer(page, POLL, TimeUnit.MILLISECONDS)){
+					depth(stage, queue.size());
+					return true;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return false;
+	}
+	
+	//--------------------------------------------
+	// CPU stages
+	
+	private void cpuLoop(CrawlerHandler clone){
+		while(isRunning()){
+			Page page = null;
+			try {
+				// downstream first, to keep the queues short
+				if((page = queues.get(Stage.FILTER).poll()) != null)
+					filter(clone, page);
+				else if((page = queues.get(Stage.PARSE).poll()) != null)
+					parse(clone, page);
+				else if((page = queues.get(Stage.DECODE).poll(POLL, TimeUnit.MILLISECONDS)) != null)
+					decode(clone, page);
+			} catch (InterruptedException e) {
+				return;
+			} catch (IOException | RuntimeException e) {
+				// the page is lost, not the search
+				System.err.println(page + ": " + e);
+				completed();
+			}
+		}
+	}
+	
+	private void decode(CrawlerHandler clone, Page page) throws IOException{
+		page.getContent();
+		processed.get(Stage.DECODE).incrementAndGet();
+		if(! handOff(Stage.PARSE, page))
+			parse(clone, page);
+	}
+	
+	private void parse(CrawlerHandler clone, Page page) throws IOException{
+		if(handler.abort.get() || ! clone.parsePage(page)){
+			abort();
+			return;
+		}
+		page.getHyperLinks();
+		processed.get(Stage.PARSE).incrementAndGet();
+		if(! handOff(Stage.FILTER, page))
+			filter(clone, page);
+	}
+	
+	private void filter(CrawlerHandler clone, Page page) throws IOException{
+		List<String>     links      = clone.follow(page.toString(), page);
+		List<CompactUrl> discovered = CompactUrl.encode(dictionary, links);
+		if(router != null) discovered = router.route(discovered);
+		int last = -1;
+		for(CompactUrl url : discovered){
+			if(! admit(url)) break;
+			if(resolver != null && url.getHost() != last){
+				last = url.getHost();
+				resolver.prefetch(url.getHostName());
+			}
+		}
+		processed.get(Stage.FILTER).incrementAndGet();
+		if(! handler.budget.charge(page.getByteCount()))
+			abort();
+		completed();
+	}
+	
+	/*
+	 * Non blocking hand-off between CPU stages
+	 */
+	private boolean handOff(Stage stage, Page page){
+		BlockingQueue<Page> queue = queues.get(stage);
+		if(! queue.offer(page)) return false;
+		depth(stage, queue.size());
+		return true;
+	}
+	
+	private void depth(Stage stage, int depth){
+		AtomicInteger max = maxDepth.get(stage);
+		int current;
+		while(depth > (current = max.get()) && ! max.compareAndSet(current, depth));
+	}
+	
+	//--------------------------------------------
+	// Metrics
+	
+	/**
+	 * Get the number of pages waiting for the stage.
+	 * The FETCH queue is the frontier.
+	 * @param stage pipeline stage
+	 * @return queue depth
+	 */
+	public int getQueueDepth(Stage stage){
+		if(stage == Stage.FETCH) return frontier.size();
+		BlockingQueue<Page> queue = queues.get(stage);
+		return (queue == null) ? 0 : queue.size();
+	}
+	
+	/**
+	 * Get the highest number of pages waiting for the stage in the last search
+	 * @param stage pipeline stage
+	 * @return maximum queue depth
+	 */
+	public int getMaxQueueDepth(Stage stage){
+		return maxDepth.get(stage).get();
+	}
+	
+	/**
+	 * Get the number of pages processed by the stage in the last search
+	 * @param stage pipeline stage
+	 * @return processed pages
+	 */
+	public long getProcessedCount(Stage stage){
+		return processed.get(stage).get();
+	}
+	
+	/**
+	 * Get the total number of link followed in the last search.
+	 * @return number of links followed
+	 */
+	public int getFollowedLinkCount(){
+		return followed.get();
+	}
+	
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for(Stage stage : Stage.values())
+			sb.append(stage).append(": depth=").append(getQueueDepth(stage))
+				.append(" max=").append(getMaxQueueDepth(stage))
+				.append(" processed=").append(getProcessedCount(stage)).append('\n');
+		return sb.toString();
+	}
+	
+	//--------------------------------------------
+	// Mutators
+	
+	/**
+	 * Set the number of threads fetching pages. Fetching mostly waits
+	 * on the network, this is usually several times the number of cores.
+	 * @param ioThreads number of fetching threads
+	 * @return the calling object
+	 */
+	public CrawlPipeline setIoThreads(int ioThreads){
+		if(ioThreads > 0)
+			this.ioThreads = ioThreads;
+		return this;
+	}
+	
+	/**
+	 * Set the number of threads decoding, parsing and filtering. 
+	 * By default the number of cores.
+	 * @param cpuThreads number of parsing threads
+	 * @return the calling object
+	 */
+	public CrawlPipeline setCpuThreads(int cpuThreads){
+		if(cpuThreads > 0)
+			this.cpuThreads = cpuThreads;
+		return this;
+	}
+	
+	/**
+	 * Set the capacity of the queues between the stages
+	 * @param queueCapacity maximum pages per queue
+	 * @return the calling object
+	 */
+	public CrawlPipeline setQueueCapacity(int queueCapacity){
+		if(queueCapacity > 0)
+			this.queueCapacity = queueCapacity;
+		return this;
+	}
+	
+	/**
+	 * Set the maximum number of links to follow.
+	 * By default only the submitted URL will be parsed.
+	 * @param searchLength maximum number of followed links
+	 * @return the calling object
+	 * @see Crawler#setSearchLength(int)
+	 */
+	public CrawlPipeline setSearchLength(int searchLength){
+		this.searchLength = (searchLength <= 0) ? null : Integer.valueOf(searchLength);
+		return this;
+	}
+	
+	/**
+	 * @see Crawler#setTimeBudget(long)
+	 */
+	public CrawlPipeline setTimeBudget(long timeBudget){
+		if(timeBudget < 0)
+			throw new IllegalArgumentException("Negative time budget");
+		this.timeBudget = timeBudget;
+		return this;
+	}
+	
+	/**
+	 * @see Crawler#setByteBudget(long)
+	 */
+	public CrawlPipeline setByteBudget(long byteBudget){
+		if(byteBudget < 0)
+			throw new IllegalArgumentException("Negative byte budget");
+		this.byteBudget = byteBudget;
+		return this;
+	}
+	
+	/**
+	 * @see Crawler#isBudgetExceeded()
+	 */
+	public boolean isBudgetExceeded(){
+		return this.handler.budget.isExpired();
+	}
+	
+	/**
+	 * @see Crawler#setResolver(CachingResolver)
+	 */
+	public CrawlPipeline setResolver(CachingResolver resolver){
+		this.resolver = resolver;
+		return this;
+	}
+	
+	/**
+	 * @see Crawler#setConcurrencyLimiter(AdaptiveLimiter)
+	 */
+	public CrawlPipeline setConcurrencyLimiter(AdaptiveLimiter limiter){
+		this.limiter = limiter;
+		return this;
+	}
+	
+	/**
+	 * @see Crawler#setLinkRouter(LinkRouter)
+	 */
+	public CrawlPipeline setLinkRouter(LinkRouter router){
+		this.router = router;
+		return this;
+	}
+	
+	public CrawlerHandler getHandler(){
+		return this.handler;
+	}
+	
+	private static final long POLL = 20;
+	// configuration
+	private final CrawlerHandler handler;
+	private int                  ioThreads;
+	private int                  cpuThreads;
+	private int                  queueCapacity;
+	private Integer              searchLength;
+	private long                 timeBudget;
+	private long                 byteBudget;
+	private CachingResolver      resolver;
+	private AdaptiveLimiter      limiter;
+	private LinkRouter           router;
+	// stages
+	private final BlockingQueue<CompactUrl>         frontier;
+	private final Map<Stage, BlockingQueue<Page>>   queues;
+	private final Map<Stage, AtomicLong>            processed;
+	private final Map<Stage, AtomicInteger>         maxDepth;
+	// state
+	private final AtomicInteger pending;
+	private final AtomicInteger followed;
+	private HostDictionary      dictionary;
+	private volatile boolean    done;
+}
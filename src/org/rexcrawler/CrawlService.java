@@ -0,0 +1,241 @@
+package org.rexcrawler;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.rexcrawler.net.AdaptiveLimiter;
+import org.rexcrawler.net.CachingResolver;
+
+/**
+ * Crawl service
+ * 
+ * Runs many searches on a single long-lived <code>ForkJoinPool</code>,
+ * instead of a new pool for each {@link Crawler#run(URL...)}.
+ * 
+ * Each submitted {@link CrawlJob} keeps its own crawler, handler, 
+ * host dictionary and limits. At most <code>maxRunningJobs</code> jobs 
+ * run at the same time, the others wait in a FIFO queue. The running jobs
+ * share the pool equally: each one runs at most <code>parallelism / running</code> 
+ * workers at a time. A running job holds no thread while its workers
+ * are waiting to be scheduled, more running jobs than threads only
+ * reduce every share to one worker.
+ * 
+ * The resolver and the per-host limiter of the service are shared by 
+ * all the jobs whose crawler does not define its own, so two jobs hitting
+ * the same host see the same DNS cache and the same concurrency limit.
+ * The crawlers submitted are not modified.
+ * 
+ * @author shake0
+ *
+ */
+public class CrawlService {
+	
+	/**
+	 * Service using all the cores and running up to 
+	 * one job per core concurrently.
+	 */
+	public CrawlService() {
+		this(Runtime.getRuntime().availableProcessors(), Runtime.getRuntime().availableProcessors());
+	}
+	
+	/**
+	 * @param parallelism threads of the shared pool
+	 * @param maxRunningJobs maximum number of jobs running at the same time
+	 */
+	public CrawlService(int parallelism, int maxRunningJobs) {
+		if(parallelism <= 0 || maxRunningJobs <= 0)
+			throw new IllegalArgumentException("Parallelism and running jobs must be positive");
+		this.pool           = new ForkJoinPool(parallelism);
+		this.maxRunningJobs = maxRunningJobs;
+		this.queued         = new LinkedList<>();
+		this.running        = new ArrayList<>();
+		this.ids            = new AtomicLong();
+		this.completed      = new AtomicLong();
+	}
+	
+	//--------------------------------------------
+	// Jobs
+	
+	/**
+	 * Submit a search. The crawler must not be used by another job or
+	 * <code>run()</code> until this job is over.
+	 * 
+	 * @param crawler crawler with its handler and limits
+	 * @param targets list of the URL to parse
+	 * @return the submitted job
+	 */
+	public CrawlJob submit(Crawler crawler, URL ... targets){
+		if(crawler.getHandler() == null)
+			throw new IllegalArgumentException("CrawlerHandler undefined");
+		// the shared resources are given to the job, not to the crawler
+		CrawlJob job = new CrawlJob(this, ids.incrementAndGet(), crawler, targets.clone(), resolver, limiter);
+		synchronized (this) {
+			if(shutdown)
+				throw new IllegalStateException("Service is shut down");
+			queued.add(job);
+		}
+		schedule();
+		return job;
+	}
+	
+	/**
+	 * Get the jobs not over yet
+	 * @return running jobs followed by the queued ones
+	 */
+	public synchronized List<CrawlJob> getJobs(){
+		List<CrawlJob> jobs = new ArrayList<>(running);
+		jobs.addAll(queued);
+		return jobs;
+	}
+	
+	/**
+	 * @return number of jobs over since the service started
+	 */
+	public long getCompletedJobCount(){
+		return this.completed.get();
+	}
+	
+	/**
+	 * @return threads of the shared pool, including the spare ones
+	 */
+	public int getPoolSize(){
+		return this.pool.getPoolSize();
+	}
+	
+	private void schedule(){
+		List<CrawlJob> start = new ArrayList<>();
+		synchronized (this) {
+			while(running.size() < maxRunningJobs && ! queued.isEmpty()){
+				CrawlJob job = queued.removeFirst();
+				if(job.isOver()) continue;
+				running.add(job);
+				start.add(job);
+			}
+			rebalance();
+		}
+		for(CrawlJob job : start)
+			pool.execute(job);
+	}
+	
+	/*
+	 * Split the pool among the running jobs
+	 */
+	private void rebalance(){
+		if(running.isEmpty()) return;
+		int share = Math.max(1, pool.getParallelism() / running.size());
+		for(CrawlJob job : running)
+			job.setShare(share);
+	}
+	
+	void finished(CrawlJob job){
+		boolean idle;
+		synchronized (this) {
+			if(! running.remove(job)) return;
+			completed.incrementAndGet();
+			notifyAll();
+			idle = shutdown && running.isEmpty() && queued.isEmpty();
+		}
+		if(idle) pool.shutdown();
+		else     schedule();
+	}
+	
+	void cancelled(CrawlJob job){
+		synchronized (this) {
+			if(queued.remove(job)){
+				completed.incrementAndGet();
+				notifyAll();
+			}
+		}
+	}
+	
+	//--------------------------------------------
+	// Life cycle
+	
+	/**
+	 * Stop accepting jobs. Submitted jobs are completed.
+	 */
+	public void shutdown(){
+		synchronized (this) {
+			shutdown = true;
+		}
+		if(getJobs().isEmpty()) pool.shutdown();
+	}
+	
+	/**
+	 * Stop accepting jobs and cancel the submitted ones
+	 */
+	public void shutdownNow(){
+		synchronized (this) {
+			shutdown = true;
+		}
+		for(CrawlJob job : getJobs())
+			job.cancel();
+		pool.shutdown();
+	}
+	
+	/**
+	 * Wait for the submitted jobs to be over after a shutdown
+	 * @param timeout maximum time to wait
+	 * @param unit unit of the timeout
+	 * @return true if all the jobs are over
+	 * @throws InterruptedException
+	 */
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException{
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		synchronized (this) {
+			while(! running.isEmpty() || ! queued.isEmpty()){
+				long left = deadline - System.nanoTime();
+				if(left <= 0) return false;
+				TimeUnit.NANOSECONDS.timedWait(this, left);
+			}
+		}
+		pool.shutdown();
+		return pool.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+	}
+	
+	//--------------------------------------------
+	// Shared resources
+	
+	public CachingResolver getResolver(){
+		return this.resolver;
+	}
+	
+	/**
+	 * Set the resolver given to the jobs without their own
+	 * @param resolver shared resolver, null for the JVM resolver
+	 * @return the calling object
+	 */
+	public CrawlService setResolver(CachingResolver resolver){
+		this.resolver = resolver;
+		return this;
+	}
+	
+	public AdaptiveLimiter getConcurrencyLimiter(){
+		return this.limiter;
+	}
+	
+	/**
+	 * Set the per-host limiter given to the jobs without their own
+	 * @param limiter shared limiter, null to disable
+	 * @return the calling object
+	 */
+	public CrawlService setConcurrencyLimiter(AdaptiveLimiter limiter){
+		this.limiter = limiter;
+		return this;
+	}
+	
+	private final ForkJoinPool         pool;
+	private final int                  maxRunningJobs;
+	private final LinkedList<CrawlJob> queued;
+	private final List<CrawlJob>       running;
+	private final AtomicLong           ids;
+	private final AtomicLong           completed;
+	private boolean                    shutdown;
+	private volatile CachingResolver   resolver;
+	private volatile AdaptiveLimiter   limiter;
+}
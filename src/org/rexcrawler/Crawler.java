@@ -1,5 +1,6 @@
 package org.rexcrawler;
 
+import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.net.URL;
 import java.util.ArrayList;
@@ -7,8 +8,13 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import org.rexcrawler.net.AdaptiveLimiter;
+import org.rexcrawler.net.CachingResolver;
+import org.rexcrawler.net.RetryPolicy;
+
 /**
  * Crawler
  * 
@@ -32,13 +38,21 @@ public class Crawler extends RecursiveAction {
 	// Constructors
 	
 	public Crawler(){
-		this.urls             = new LinkedList<String>();
+		this.urls             = new LinkedList<CompactUrl>();
 		this.master           = null;
 		this.lock             = new AtomicInteger(0);
 		this.linkFollowed     = new AtomicInteger(0);
 		this.chunkSize        = NO_FORK;
 		this.searchLength     = null;
-		this.links = new LinkedList<String>();
+		this.resolver         = null;
+		this.limiter          = null;
+		this.router           = null;
+		this.sitemaps         = null;
+		this.job              = null;
+		this.timeBudget       = 0;
+		this.byteBudget       = 0;
+		this.governor         = null;
+		this.links = new LinkedList<CompactUrl>();
 	}
 	
 	/*
@@ -52,7 +66,15 @@ public class Crawler extends RecursiveAction {
 		this.handler          = (CrawlerHandler) p.handler.clone();
 		this.chunkSize        = p.chunkSize;
 		this.searchLength     = p.searchLength;
-		this.links = new LinkedList<String>();
+		this.resolver         = p.resolver;
+		this.limiter          = p.limiter;
+		this.router           = p.router;
+		this.job              = p.job;
+		this.timeBudget       = p.timeBudget;
+		this.byteBudget       = p.byteBudget;
+		this.governor         = p.governor;
+		this.dictionary       = p.dictionary;
+		this.links = new LinkedList<CompactUrl>();
 		
 		this.lock.incrementAndGet();
 	}
@@ -80,49 +102,262 @@ public class Crawler extends RecursiveAction {
 	 * @param targets list of the URL to parse
 	 */
 	public void run(int parallel, URL ... targets){
+		ForkJoinPool pool = (parallel > 0) ? new ForkJoinPool(parallel) : new ForkJoinPool();
+		try {
+			run(pool, targets);
+		} finally {
+			pool.shutdown();
+		}
+	}
+	
+	/**
+	 * Crawl the <code>targets</code> on an existing pool. The pool is
+	 * not shut down at the end of the search.
+	 * 
+	 * @param pool pool executing the search
+	 * @param targets list of the URL to parse
+	 * @see CrawlService
+	 */
+	public void run(ForkJoinPool pool, URL ... targets){
+		prepare(targets);
+		try {
+			pool.invoke(this);
+		} finally {
+			complete();
+		}
+	}
+	
+	/**
+	 * Crawl an ordered frontier, such as the one of a recurring crawl,
+	 * using all available resources.
+	 * 
+	 * @param frontier URLs to parse, in their order
+	 * @see CrawlHistory#frontier(long, int)
+	 */
+	public void run(List<String> frontier){
+		run(0, frontier);
+	}
+	
+	/**
+	 * Crawl an ordered frontier using <code>parallel</code> threads.
+	 * 
+	 * @param parallel number of thread to use
+	 * @param frontier URLs to parse, in their order
+	 * @see CrawlHistory#frontier(long, int)
+	 */
+	public void run(int parallel, List<String> frontier){
+		ForkJoinPool pool = (parallel > 0) ? new ForkJoinPool(parallel) : new ForkJoinPool();
+		try {
+			prepare(frontier);
+			try {
+				pool.invoke(this);
+			} finally {
+				complete();
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+	
+	/*
+	 * Load the targets, used by run() and by CrawlJob
+	 */
+	void prepare(URL ... targets){
+		List<String> frontier = new ArrayList<>(targets.length);
+		for(URL u : targets) frontier.add(u.toString());
+		prepare(frontier);
+	}
+	
+	private void prepare(List<String> targets){
 		// test for handler
 		if(this.handler == null)
 			throw new IllegalArgumentException("CrawlerHandler undefined");
+		this.handler.resolver = resolver();
+		this.handler.limiter  = (this.limiter == null && this.job != null) ? this.job.limiter : this.limiter;
+		this.handler.governor = this.governor;
+		// the hosts of a search are released with it
+		this.dictionary         = new HostDictionary();
+		this.handler.dictionary = this.dictionary;
+		// the retries left by an aborted search are not inherited
+		this.handler.retries    = (this.handler.getRetryPolicy() == null) ? null 
+				: this.handler.getRetryPolicy().newRetries();
 		// load targets
 		this.reinitialize();
-		for(URL u : targets) this.urls.add(u.toString());
-		// execute
-		if(parallel > 0)
-			new ForkJoinPool(parallel).invoke(this);
-		else
-			new ForkJoinPool().invoke(this);
+		this.handler.budget.start(this.timeBudget, this.byteBudget);
+		for(String u : targets) this.urls.add(CompactUrl.of(this.dictionary, u));
+		if(this.governor != null){
+			this.governor.start(this.dictionary);
+			this.governor.frontier(footprint(this.urls));
+			this.governor.measure(this.handler);
+		}
+	}
+	
+	/*
+	 * End of the search, successful or not
+	 */
+	void complete(){
+		this.handler.budget.stop();
+		if(this.handler.retries != null)
+			this.handler.retries.clear();
+		if(this.governor != null)
+			this.governor.clearSpill();
+		if(this.handler.getResultPublisher() != null)
+			this.handler.getResultPublisher().close();
+	}
+	
+	/*
+	 * Stop the search, used by CrawlJob
+	 */
+	void cancel(){
+		this.handler.budget.cancel("cancel");
+	}
+	
+	/**
+	 * Abort the running search. The in-flight requests are disconnected 
+	 * and the threads waiting for a permit or a retry are interrupted;
+	 * the workers stop at the page they are parsing, merge their partial
+	 * results and <code>run()</code> returns. 
+	 * This method can be called from any thread.
+	 * 
+	 * @see #getAbortLatency()
+	 */
+	public void abort(){
+		this.handler.budget.cancel("abort");
 	}
 	
 	@Override
 	protected void compute() {
+		if(this.job != null){
+			computeJob();
+			return;
+		}
+		search();
+		if(isMaster()) seed();
 		
+		// WAIT TERMINATION
+		if(isMaster()){
+			// managed, the pool may need a spare thread to run the children
+			try { 
+				ForkJoinPool.managedBlock(new Termination(lock));
+				while(! handler.abort.get()){
+					if(isSpilled())         resume();
+					else if(awaitRetries()) retry();
+					else break;
+					ForkJoinPool.managedBlock(new Termination(lock));
+				}
+			}
+			catch (InterruptedException e) { e.printStackTrace(); }
+		}
+		else{
+			synchronized(lock){
+				if(lock.decrementAndGet() == 0)
+					lock.notify();
+			}
+		}
+	}
+	
+	/*
+	 * A job never waits for its workers: each one, the master included, 
+	 * holds a count of the lock and the last one out continues the job.
+	 */
+	private void computeJob(){
+		if(isMaster()) lock.incrementAndGet();
+		try {
+			search();
+			if(isMaster()) seed();
+		} catch (RuntimeException e) {
+			job.failed(e);
+		} finally {
+			if(! isMaster()) job.exit();
+			if(lock.decrementAndGet() == 0)
+				((isMaster()) ? this : master).quiescent();
+		}
+	}
+	
+	/*
+	 * No worker left: resume the spilled URLs and the retries, 
+	 * or complete the job
+	 */
+	private void quiescent(){
+		while(true){
+			lock.incrementAndGet();
+			boolean more = false;
+			try {
+				if(! handler.abort.get()){
+					if(isSpilled())         { resume(); more = true; }
+					else if(awaitRetries()) { retry();  more = true; }
+				}
+			} catch (InterruptedException e) {
+				System.err.println(e.getLocalizedMessage());
+			} catch (RuntimeException e) {
+				job.failed(e);
+			}
+			// the last worker forked meanwhile calls back
+			if(lock.decrementAndGet() != 0) return;
+			if(! more) break;
+		}
+		job.completed();
+	}
+	
+	private void search(){
 		while(! isFollowingLinkLimitExceeded()){
 			try {
 				// FORK
-				List<String> delegatedSet = null;
+				List<CompactUrl> delegatedSet = null;
+				long             dropped      = 0;
 				synchronized(linkFollowed){
 					delegatedSet = splitWorkLoad();
 					if(! isUnboundSearch()){
 						final int remainingTasks = searchLength - linkFollowed.get();
 						if(remainingTasks <= 0) break;
-						if(this.urls.size() > remainingTasks) 
+						if(this.urls.size() > remainingTasks){
+							dropped   = footprint(this.urls.subList(remainingTasks, this.urls.size()));
 							this.urls = this.urls.subList(0, remainingTasks);
+						}
 					}
 					linkFollowed.addAndGet(this.urls.size());
 				}
 				if(delegatedSet != null && isForkingEnabled() && ! handler.abort.get()){
-					Crawler child = new Crawler(this);
-					child.urls = delegatedSet;
-					child.fork();
+					boolean spilled = false;
+					if(isThrottled()){
+						// no new worker under memory pressure
+						governor.skipFork();
+						governor.spill(delegatedSet);
+						spilled = true;
+					}
+					else if(job != null && ! job.enter()){
+						// the job runs its share of workers, this one keeps the surplus
+						this.links.addAll(delegatedSet);
+					}
+					else {
+						Crawler child = new Crawler(this);
+						child.urls = delegatedSet;
+						child.fork();
+					}
+					if(CrawlEvents.enabled()){
+						CrawlEvents.Fork event = new CrawlEvents.Fork();
+						if(event.shouldCommit()){
+							event.chunkSize = delegatedSet.size();
+							event.spilled   = spilled;
+							event.worker    = CrawlEvents.worker();
+							event.commit();
+						}
+					}
 				}
-
+				else if(delegatedSet != null)
+					dropped += footprint(delegatedSet);
+				
 				// COMPUTE
-				parse();
-				reduce();
+				long chunk = footprint(this.urls);
+				process();
+				if(governor != null)
+					governor.frontier(-chunk - dropped);
 				
 				// UPDATE
 				this.urls  = this.links;
 				this.links = new LinkedList<>();
+				if(urls.isEmpty() && isSpilled() && ! isUnboundSearch() && ! handler.abort.get())
+					this.urls = governor.restore(getSpillChunk());
 				if(urls.isEmpty() || isUnboundSearch()) break;
 			} catch (IllegalAccessException ex) {
 				System.err.println(ex.getLocalizedMessage());
@@ -134,35 +369,187 @@ public class Crawler extends RecursiveAction {
 				System.err.println(ex.getLocalizedMessage());
 			}
 		}
-		
-		// WAIT TERMINATION
-		if(isMaster()){
-			synchronized(lock){
-				if(lock.get() != 0){
-					try { lock.wait(); }
-					catch (InterruptedException e) { e.printStackTrace(); }
+		// URLs over the search length
+		if(governor != null)
+			governor.frontier(-footprint(this.urls));
+	}
+	
+	/*
+	 * Take back the spilled URLs once the workers are done
+	 */
+	private void resume(){
+		this.urls  = governor.restore(getSpillChunk());
+		this.links = new LinkedList<>();
+		search();
+	}
+	
+	/*
+	 * Stream the sitemaps into the frontier, one child per batch.
+	 * Without forking, or while the workers outstanding exceed
+	 * SEED_FORKS per thread, a batch is crawled before reading the next one.
+	 * The lastmod of the entries is only given to filterSitemap().
+	 */
+	private void seed(){
+		if(this.sitemaps == null) return;
+		SitemapReader reader = new SitemapReader(this.handler);
+		SitemapReader.Sink sink = new SitemapReader.Sink() {
+			@Override
+			public boolean accept(List<SitemapReader.Entry> batch) {
+				if(handler.abort.get() || (! isUnboundSearch() && linkFollowed.get() >= searchLength))
+					return false;
+				List<CompactUrl> seeds = new ArrayList<>(batch.size());
+				for(SitemapReader.Entry entry : handler.filterSitemap(batch))
+					seeds.add(entry.getLocation());
+				if(router != null)
+					seeds = router.route(seeds);
+				if(seeds.isEmpty()) return true;
+				prefetch(seeds);
+				if(governor != null)
+					governor.frontier(footprint(seeds));
+				if(isThrottled()){
+					governor.spill(seeds);
+					if(isForkingEnabled()) return true;
+					seeds = governor.restore(getSpillChunk());
+				}
+				if(isForkingEnabled() && lock.get() < SEED_FORKS * getPool().getParallelism()
+						&& (job == null || job.enter())){
+					try {
+						Crawler child = new Crawler(Crawler.this);
+						child.urls = seeds;
+						child.fork();
+					} catch (CloneNotSupportedException ex) {
+						System.err.println(ex.getLocalizedMessage());
+						return false;
+					}
 				}
+				else {
+					urls = seeds;
+					search();
+				}
+				return true;
+			}
+		};
+		for(URL sitemap : this.sitemaps){
+			try {
+				if(! reader.read(sitemap, sink)) break;
+			} catch (IOException e) {
+				System.err.println(sitemap + ": " + e);
 			}
 		}
-		else{
-			synchronized(lock){
-				if(lock.decrementAndGet() == 0)
-					lock.notify();
+	}
+	
+	private void process() throws IllegalAccessException, IllegalArgumentException, InvocationTargetException,
+			CloneNotSupportedException{
+		int chunk = this.urls.size();
+		parse();
+		reduce(chunk);
+		if(job != null) job.chunk();
+	}
+	
+	/*
+	 * The workers never wait for a retry, the URL still parked 
+	 * when the search is over are left to the master.
+	 */
+	private boolean awaitRetries() throws InterruptedException{
+		final RetryPolicy.Retries retry = this.handler.retries;
+		if(retry == null || retry.getPendingCount() == 0) 
+			return false;
+		// the wait is a flight, an abort interrupts it
+		CrawlBudget.Flight flight = handler.budget.enter();
+		try {
+			if(this.handler.abort.get()) return false;
+			ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+				@Override
+				public boolean block() throws InterruptedException {
+					retry.awaitDue();
+					return true;
+				}
+				@Override
+				public boolean isReleasable() {
+					return false;
+				}
+			});
+			return true;
+		} catch (InterruptedException e) {
+			if(this.handler.abort.get()) return false;
+			throw e;
+		} finally {
+			handler.budget.exit(flight);
+		}
+	}
+	
+	/*
+	 * Parse the retries due and follow their links
+	 */
+	private void retry(){
+		try {
+			this.urls = new LinkedList<>();
+			process();
+			this.urls  = this.links;
+			this.links = new LinkedList<>();
+			if(! this.urls.isEmpty() && ! isUnboundSearch())
+				search();
+		} catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException 
+				| CloneNotSupportedException ex) {
+			System.err.println(ex.getLocalizedMessage());
+		}
+	}
+	
+	/*
+	 * Wait for all the children to terminate
+	 */
+	private static class Termination implements ForkJoinPool.ManagedBlocker {
+		
+		public Termination(AtomicInteger lock) {
+			this.lock = lock;
+		}
+		
+		@Override
+		public boolean block() throws InterruptedException {
+			synchronized (lock) {
+				while(lock.get() != 0)
+					lock.wait();
 			}
+			return true;
+		}
+		
+		@Override
+		public boolean isReleasable() {
+			return lock.get() == 0;
 		}
+		
+		private final AtomicInteger lock;
 	}
 	
-	private void reduce() throws IllegalAccessException, IllegalArgumentException, InvocationTargetException {
-		if(! isMaster())
+	private void reduce(int chunk) throws IllegalAccessException, IllegalArgumentException, InvocationTargetException, 
+			CloneNotSupportedException {
+		if(! isMaster()){
+			CrawlEvents.Reduce event = CrawlEvents.enabled() ? new CrawlEvents.Reduce() : null;
+			if(event != null) event.begin();
+			long locking = (event != null && event.isEnabled()) ? System.nanoTime() : 0;
 			synchronized (this.master.handler) {
+				if(locking != 0) locking = System.nanoTime() - locking;
 				this.master.handler.reduce(this.handler);
+				if(this.governor != null)
+					this.governor.measure(this.master.handler);
+			}
+			if(event != null) event.end();
+			if(event != null && event.shouldCommit()){
+				event.chunkSize   = chunk;
+				event.monitorWait = locking;
+				event.worker      = CrawlEvents.worker();
+				event.commit();
 			}
+			// the reduced containers now belong to the master, 
+			// the next round must not add them again
+			this.handler = (CrawlerHandler) this.handler.clone();
+		}
 	}
 	
-	private List<String> splitWorkLoad(){
+	private List<CompactUrl> splitWorkLoad(){
 		if(isForkingEnabled()){
 			if(this.urls.size() > chunkSize){
-				List<String> delegatedSet = new ArrayList<>(this.urls.subList(chunkSize, this.urls.size()));
+				List<CompactUrl> delegatedSet = new ArrayList<>(this.urls.subList(chunkSize, this.urls.size()));
 				this.urls = this.urls.subList(0, chunkSize);
 				return delegatedSet;
 			}
@@ -170,19 +557,12 @@ public class Crawler extends RecursiveAction {
 		return null;
 	}
 	
-	private void abort() {
-		// TODO: Test
-		this.handler.abort.set(true);
-		this.urls.clear();
-		this.links.clear();
-	}
-	
 	@Override
 	public void reinitialize() {
 		this.handler.abort.set(false);
 		this.lock             = new AtomicInteger(0);
 		this.linkFollowed     = new AtomicInteger(0);
-		this.urls             = new LinkedList<String>();
+		this.urls             = new LinkedList<CompactUrl>();
 		this.links            = new LinkedList<>();
 		super.reinitialize();
 	}
@@ -196,7 +576,8 @@ public class Crawler extends RecursiveAction {
 	}
 	
 	private boolean isFollowingLinkLimitExceeded(){
-		return linkFollowed.get() > ((isUnboundSearch())?this.urls.size():searchLength);
+		// an unbound search parses its URL once, see compute()
+		return ! isUnboundSearch() && linkFollowed.get() > searchLength;
 	}
 	
 	private boolean isUnboundSearch(){
@@ -206,12 +587,83 @@ public class Crawler extends RecursiveAction {
 	//--------------------------------------------
 	// Parsing
 	
+	/*
+	 * The frontier is kept compact, only the chunk handed to
+	 * the handler is materialised.
+	 */
 	private void parse(){
-		List<String> newUrlSet = this.handler.parse(this.urls);
-		if(newUrlSet == null)
-			abort();
-		else
-			this.links.addAll(newUrlSet);
+		List<String> newUrlSet = this.handler.parse(CompactUrl.decode(this.urls));
+		if(newUrlSet == null){
+			this.handler.budget.cancel("handler");
+			if(governor != null)
+				governor.frontier(-footprint(this.links));
+			this.urls.clear();
+			this.links.clear();
+		}
+		else {
+			List<CompactUrl> discovered = CompactUrl.encode(this.dictionary, newUrlSet);
+			if(this.router != null)
+				discovered = this.router.route(discovered);
+			prefetch(discovered);
+			if(governor != null){
+				governor.frontier(footprint(discovered));
+				// under pressure a worker keeps a chunk, the rest is spilled
+				int keep = Math.max(0, getSpillChunk() - this.links.size());
+				if(isThrottled() && discovered.size() > keep){
+					governor.spill(discovered.subList(keep, discovered.size()));
+					discovered = discovered.subList(0, keep);
+				}
+			}
+			this.links.addAll(discovered);
+		}
+	}
+	
+	/*
+	 * Estimated heap bytes of a list of URLs, 0 without governor
+	 */
+	private long footprint(List<CompactUrl> urls){
+		if(governor == null) return 0;
+		long bytes = 0;
+		for(CompactUrl url : urls)
+			bytes += url.footprint();
+		return bytes;
+	}
+	
+	private boolean isThrottled(){
+		return governor != null && governor.getLevel() != MemoryGovernor.Level.NORMAL;
+	}
+	
+	private boolean isSpilled(){
+		return governor != null && governor.getSpilledCount() > 0;
+	}
+	
+	/*
+	 * URLs kept by a worker under pressure
+	 */
+	private int getSpillChunk(){
+		return isForkingEnabled() ? chunkSize : SPILL_CHUNK;
+	}
+	
+	/*
+	 * Resolve the hosts of the new links in background,
+	 * consecutive links usually share the same host.
+	 */
+	private void prefetch(List<CompactUrl> discovered){
+		CachingResolver resolver = resolver();
+		if(resolver == null) return;
+		int last = -1;
+		for(CompactUrl url : discovered){
+			if(url.getHost() == last) continue;
+			last = url.getHost();
+			resolver.prefetch(url.getHostName());
+		}
+	}
+	
+	/*
+	 * The resolver of the crawler, else the one of the service running the job
+	 */
+	private CachingResolver resolver(){
+		return (this.resolver == null && this.job != null) ? this.job.resolver : this.resolver;
 	}
 	
 	//--------------------------------------------
@@ -227,6 +679,57 @@ public class Crawler extends RecursiveAction {
 		return linkFollowed.get();
 	}
 	
+	/**
+	 * Test if the last search was aborted, by {@link #abort()},
+	 * by the handler or by a budget.
+	 * @return true if the search was aborted
+	 */
+	public boolean isAborted(){
+		return this.handler != null && this.handler.abort.get();
+	}
+	
+	/**
+	 * Test if the last search was stopped by the time or the byte budget
+	 * @return true if a budget was exceeded
+	 */
+	public boolean isBudgetExceeded(){
+		return this.handler != null && this.handler.budget.isExpired();
+	}
+	
+	/**
+	 * Get the bytes downloaded by the last search
+	 * @return number of bytes
+	 */
+	public long getByteCount(){
+		return (this.handler == null) ? 0 : this.handler.budget.getByteCount();
+	}
+	
+	/**
+	 * Get the time between the abort of the last search and
+	 * the return of <code>run()</code>.
+	 * @return latency in milliseconds, -1 if the search was not aborted
+	 */
+	public long getAbortLatency(){
+		long latency = (this.handler == null) ? -1 : this.handler.budget.getAbortLatency();
+		return (latency < 0) ? -1 : TimeUnit.NANOSECONDS.toMillis(latency);
+	}
+	
+	/**
+	 * Get the time budget of a search
+	 * @return milliseconds, 0 for no limit
+	 */
+	public long getTimeBudget(){
+		return this.timeBudget;
+	}
+	
+	/**
+	 * Get the byte budget of a search
+	 * @return bytes, 0 for no limit
+	 */
+	public long getByteBudget(){
+		return this.byteBudget;
+	}
+	
 	/**
 	 * Get the maximum number of links assigned to a single
 	 * thread. 
@@ -255,6 +758,55 @@ public class Crawler extends RecursiveAction {
 		return this.handler;
 	}
 	
+	/**
+	 * Get the memory governor
+	 * @return governor in use or null
+	 */
+	public MemoryGovernor getMemoryGovernor(){
+		return this.governor;
+	}
+	
+	/**
+	 * Set the memory governor. The frontier, the page buffers and the
+	 * results of the search are accounted; under memory pressure the 
+	 * crawler stops forking, spills the frontier and delays the fetches.
+	 * @param governor memory governor, null for no limit
+	 * @return the calling object
+	 * @see MemoryGovernor
+	 */
+	public Crawler setMemoryGovernor(MemoryGovernor governor){
+		this.governor = governor;
+		return this;
+	}
+	
+	/**
+	 * Limit the duration of a search. When the time is over the 
+	 * search is aborted and <code>run()</code> returns the partial results.
+	 * @param timeBudget milliseconds, 0 for no limit
+	 * @return the calling object
+	 * @see #abort()
+	 */
+	public Crawler setTimeBudget(long timeBudget){
+		if(timeBudget < 0)
+			throw new IllegalArgumentException("Negative time budget");
+		this.timeBudget = timeBudget;
+		return this;
+	}
+	
+	/**
+	 * Limit the bytes downloaded by a search. The pages are counted 
+	 * once parsed, the search is aborted when the budget is reached.
+	 * @param byteBudget bytes, 0 for no limit
+	 * @return the calling object
+	 * @see #abort()
+	 */
+	public Crawler setByteBudget(long byteBudget){
+		if(byteBudget < 0)
+			throw new IllegalArgumentException("Negative byte budget");
+		this.byteBudget = byteBudget;
+		return this;
+	}
+	
 	/**
 	 * Set the number of URL per thread. By default this is set to <code>NO_FORK</code>
 	 * which allows the sequential parsing of each URL. Setting the chunkSize > 0
@@ -284,6 +836,101 @@ public class Crawler extends RecursiveAction {
 		return this;
 	}
 	
+	/**
+	 * Get the resolver used by this crawler.
+	 * 
+	 * @return resolver in use or null
+	 */
+	public CachingResolver getResolver(){
+		return this.resolver;
+	}
+	
+	/**
+	 * Set the resolver for the host names. Links entering the frontier
+	 * are prefetched by the resolver and connections are opened only
+	 * after the host is resolved. By default the JVM resolver is used.
+	 * 
+	 * @param resolver caching resolver, null to use the JVM resolver
+	 * @return the calling object
+	 */
+	public Crawler setResolver(CachingResolver resolver){
+		this.resolver = resolver;
+		return this;
+	}
+	
+	/**
+	 * Get the per-host concurrency limiter
+	 * 
+	 * @return limiter in use or null
+	 */
+	public AdaptiveLimiter getConcurrencyLimiter(){
+		return this.limiter;
+	}
+	
+	/**
+	 * Set the per-host concurrency limiter. Each host gets its own limit
+	 * of concurrent requests, adapted on latency and errors. The fetches
+	 * become managed blocks of the pool, which adds threads while the
+	 * workers wait on the network: the limits may exceed the threads given
+	 * to {@link #run(int, URL...)}, up to the spare threads of the pool. 
+	 * By default only the number of threads limits the requests.
+	 * 
+	 * @param limiter adaptive limiter, null to disable
+	 * @return the calling object
+	 */
+	public Crawler setConcurrencyLimiter(AdaptiveLimiter limiter){
+		this.limiter = limiter;
+		return this;
+	}
+	
+	/**
+	 * Get the link router
+	 * 
+	 * @return router in use or null
+	 */
+	public LinkRouter getLinkRouter(){
+		return this.router;
+	}
+	
+	/**
+	 * Set the router deciding which discovered links enter the local frontier.
+	 * By default all the links are kept.
+	 * 
+	 * @param router link router, null to keep all the links
+	 * @return the calling object
+	 */
+	public Crawler setLinkRouter(LinkRouter router){
+		this.router = router;
+		return this;
+	}
+	
+	/**
+	 * Get the sitemaps seeding the search
+	 * 
+	 * @return sitemaps or null
+	 */
+	public URL[] getSitemaps(){
+		return this.sitemaps;
+	}
+	
+	/**
+	 * Seed the search with the pages listed by sitemaps or sitemap indexes, 
+	 * plain or gzipped. The sitemaps are streamed after the targets of 
+	 * {@link #run(URL...)} and their pages count as followed links.
+	 * The entries can be selected with {@link CrawlerHandler#filterSitemap(List)},
+	 * their <code>lastmod</code> is not kept in the frontier.
+	 * A batch of entries is handed to a new worker while there are less than
+	 * two workers per thread, otherwise the master crawls it before reading on.
+	 * 
+	 * @param sitemaps sitemap locations, none to disable
+	 * @return the calling object
+	 * @see SitemapReader
+	 */
+	public Crawler setSitemaps(URL ... sitemaps){
+		this.sitemaps = (sitemaps.length == 0) ? null : sitemaps.clone();
+		return this;
+	}
+	
 	/**
 	 * Set the handle for the parsing
 	 * @param handler
@@ -299,15 +946,26 @@ public class Crawler extends RecursiveAction {
 	
 	// constraints
 	private static final int NO_FORK        = -1;
+	private static final int SPILL_CHUNK    = 256;
+	private static final int SEED_FORKS     = 2;
 	private int     chunkSize;
 	private Integer searchLength;
+	private CachingResolver resolver;
+	private AdaptiveLimiter limiter;
+	private LinkRouter      router;
+	private URL[]           sitemaps;
+	private long            timeBudget;
+	private long            byteBudget;
+	private MemoryGovernor  governor;
+	private HostDictionary  dictionary;
+	CrawlJob                job;
 	// states
 	private AtomicInteger      lock;
 	private AtomicInteger      linkFollowed;
 	private Crawler            master;
 	private CrawlerHandler     handler;
 	// tasks
-	private List<String>       urls;
-	private List<String>       links;
+	private List<CompactUrl>   urls;
+	private List<CompactUrl>   links;
 }
 
@@ -5,13 +5,25 @@ import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.MalformedURLException;
+import java.net.Proxy;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+import org.rexcrawler.graph.LinkGraphCollector;
+import org.rexcrawler.net.AdaptiveLimiter;
+import org.rexcrawler.net.CrawlArchive;
+import org.rexcrawler.net.HostResolver;
+import org.rexcrawler.net.RetryPolicy;
+
 
 /**
  * The handler is used by the crawler to operate on the
@@ -23,6 +35,8 @@ import java.util.concurrent.atomic.AtomicBoolean;
  * All Collection not annotated with @Reduced will not
  * be merge at the end of the search.
  * </em>
+ * For large numbers of strings, a {@link StringArena} 
+ * is a compact @Reduced collection.
  * 
  * @author shake0
  *
@@ -35,6 +49,7 @@ public abstract class CrawlerHandler implements Cloneable {
 	public CrawlerHandler() {
 		try {
 			abort            = new AtomicBoolean(false);
+			budget           = new CrawlBudget(abort);
 			reduceCollection = Collection.class.getDeclaredMethod("addAll", new Class<?>[]{Collection.class});
 			findReducedFields();
 		} catch (NoSuchMethodException | SecurityException e) {
@@ -56,7 +71,7 @@ public abstract class CrawlerHandler implements Cloneable {
 		for(Field f: this.reducedFields)
 			if(Collection.class.isAssignableFrom(f.getType())){
 				try {
-					f.set(clone, new LinkedList<>());
+					f.set(clone, emptyContainer(f.get(this)));
 				} 
 				catch (IllegalArgumentException e) { e.printStackTrace(); }
 				catch (IllegalAccessException e) { e.printStackTrace();	}
@@ -64,6 +79,23 @@ public abstract class CrawlerHandler implements Cloneable {
 		return clone;
 	}
 	
+	/*
+	 * A new empty collection of the same class, so that a 
+	 * @Reduced Set stays a Set in the forked handler.
+	 */
+	private static Collection<?> emptyContainer(Object current){
+		if(current instanceof StringArena)
+			return ((StringArena) current).emptyCopy();
+		if(current != null){
+			try {
+				return (Collection<?>) current.getClass().getDeclaredConstructor().newInstance();
+			} catch (ReflectiveOperationException | SecurityException e) {
+				// no public default constructor
+			}
+		}
+		return new LinkedList<>();
+	}
+	
 	/*
 	 * Get all the annotated @Reduce Collection
 	 * to be merged at the end of the parsing.
@@ -102,15 +134,215 @@ public abstract class CrawlerHandler implements Cloneable {
 	 * If your target required a more elaborated connection (password, redirection)
 	 * override this method.
 	 * 
+	 * When an archive is replayed, the connection is served by the
+	 * archive and the network is never used.
+	 * 
+	 * With a resolver, an HTTP connection is opened to the resolved address,
+	 * used as a direct proxy: the request line carries the absolute URL and 
+	 * the <code>Host</code> header is unchanged. HTTPS connections need the
+	 * host name for the certificate, the resolver only rejects unknown hosts
+	 * and the JVM resolves the address again.
+	 * 
 	 * <em>This method is provided as convenience</em>
 	 * 
 	 * @param url target location
 	 * @return connection to the URL target 
 	 * @throws MalformedURLException the URL is wrong
 	 * @throws IOException Cannot open a connection
+	 * @see #setArchive(CrawlArchive)
 	 */
 	protected HttpURLConnection makeConnection(String url) throws MalformedURLException, IOException{
-		return (HttpURLConnection) new URL(url).openConnection();
+		if(archive != null && archive.isReplaying())
+			return archive.open(url);
+		URL target = new URL(url);
+		if(resolver == null)
+			return (HttpURLConnection) target.openConnection();
+		InetAddress address = resolver.resolve(target.getHost())[0];
+		if(! "http".equals(target.getProtocol()))
+			return (HttpURLConnection) target.openConnection();
+		int port = (target.getPort() < 0) ? target.getDefaultPort() : target.getPort();
+		return (HttpURLConnection) target.openConnection(
+				new Proxy(Proxy.Type.HTTP, new InetSocketAddress(address, port)));
+	}
+	
+	/**
+	 * Get the resolver set by the crawler.
+	 * Custom implementations of {@link #makeConnection(String)} should 
+	 * resolve the host through it.
+	 * 
+	 * @return resolver in use, null to use the JVM resolver
+	 */
+	protected HostResolver getResolver(){
+		return this.resolver;
+	}
+	
+	/**
+	 * Get the fetch policy
+	 * @return policy in use or null
+	 */
+	public FetchPolicy getFetchPolicy(){
+		return this.policy;
+	}
+	
+	/**
+	 * Set the fetch policy. The policy filters the links entering the frontier
+	 * and disconnects unwanted responses before their body is downloaded.
+	 * By default every response is downloaded.
+	 * 
+	 * @param policy fetch policy, null to accept everything
+	 * @return the calling object
+	 * @see FetchPolicy#textOnly()
+	 */
+	public CrawlerHandler setFetchPolicy(FetchPolicy policy){
+		this.policy = policy;
+		return this;
+	}
+	
+	/**
+	 * Get the retry policy
+	 * @return policy in use or null
+	 */
+	public RetryPolicy getRetryPolicy(){
+		return this.retry;
+	}
+	
+	/**
+	 * Set the retry policy, giving deadlines, retries and hedging
+	 * to every fetch. By default a failed URL is skipped and 
+	 * the connections use the JVM timeouts.
+	 * 
+	 * @param retry retry policy, null to disable
+	 * @return the calling object
+	 */
+	public CrawlerHandler setRetryPolicy(RetryPolicy retry){
+		this.retry = retry;
+		return this;
+	}
+	
+	/**
+	 * Get the link graph collector
+	 * @return collector in use or null
+	 */
+	public LinkGraphCollector getLinkGraph(){
+		return this.graph;
+	}
+	
+	/**
+	 * Set the link graph collector. The hyperlinks of every page 
+	 * parsed are collected, before {@link #filterLinks(Page, List)}.
+	 * 
+	 * @param graph link graph collector, null to collect nothing
+	 * @return the calling object
+	 * @see LinkGraphCollector#build()
+	 */
+	public CrawlerHandler setLinkGraph(LinkGraphCollector graph){
+		this.graph = graph;
+		return this;
+	}
+	
+	/**
+	 * Get the history of the recurring crawls
+	 * @return history in use or null
+	 */
+	public CrawlHistory getHistory(){
+		return this.history;
+	}
+	
+	/**
+	 * Set the history of the recurring crawls. Every page parsed is 
+	 * recorded, and the links already known are followed only when 
+	 * they are due in the current run.
+	 * 
+	 * @param history crawl history, null to follow every link
+	 * @return the calling object
+	 * @see CrawlHistory#frontier(long, int)
+	 */
+	public CrawlerHandler setHistory(CrawlHistory history){
+		this.history = history;
+		return this;
+	}
+	
+	/**
+	 * Get the crawl archive
+	 * @return archive in use or null
+	 */
+	public CrawlArchive getArchive(){
+		return this.archive;
+	}
+	
+	/**
+	 * Set the crawl archive. A recording archive stores every response 
+	 * fetched by the search, a replaying archive serves them back 
+	 * through {@link #makeConnection(String)} instead of the network.
+	 * Custom implementations of {@link #makeConnection(String)} should
+	 * call <code>getArchive().open(url)</code> when replaying.
+	 * 
+	 * @param archive crawl archive, null to use the network only
+	 * @return the calling object
+	 * @see CrawlArchive#record(java.io.File)
+	 * @see CrawlArchive#replay(java.io.File)
+	 */
+	public CrawlerHandler setArchive(CrawlArchive archive){
+		this.archive = archive;
+		return this;
+	}
+	
+	/**
+	 * Get the publisher of the streamed results
+	 * @return publisher in use or null
+	 */
+	public ResultPublisher<?> getResultPublisher(){
+		return this.publisher;
+	}
+	
+	/**
+	 * Set the publisher receiving the results passed to {@link #emit(Object)}.
+	 * The publisher is shared by all the forked handlers and closed by the 
+	 * crawler at the end of the search.
+	 * 
+	 * @param publisher result publisher, null to disable streaming
+	 * @return the calling object
+	 */
+	public CrawlerHandler setResultPublisher(ResultPublisher<?> publisher){
+		this.publisher = publisher;
+		return this;
+	}
+	
+	/**
+	 * Publish a result while the search is running. If the subscriber 
+	 * lags behind, the crawler thread waits until the publisher has room
+	 * for the result. Streamed results can be used together with, or instead
+	 * of, the @Reduced collections.
+	 * 
+	 * The results of a page are published when the crawler leaves the
+	 * page, a handler never waits for the subscriber while it holds its
+	 * own monitor.
+	 * 
+	 * @param item result to publish
+	 * @return false if no publisher is set or the results are discarded
+	 * @see ResultPublisher#emit(Object)
+	 */
+	@SuppressWarnings("unchecked")
+	protected <T> boolean emit(T item){
+		if(this.publisher == null) return false;
+		if(this.emitted == null)
+			return ((ResultPublisher<T>) this.publisher).emit(item);
+		if(item == null)
+			throw new NullPointerException("Null results are not allowed");
+		this.emitted.add(item);
+		return this.publisher.isOpen();
+	}
+	
+	/*
+	 * Publish the results of the page, outside the handler monitor
+	 */
+	@SuppressWarnings("unchecked")
+	private void publish(){
+		List<Object> items = this.emitted;
+		this.emitted = null;
+		if(items != null)
+			for(Object item : items)
+				((ResultPublisher<Object>) this.publisher).emit(item);
 	}
 	
 	//--------------------------------------------
@@ -127,31 +359,299 @@ public abstract class CrawlerHandler implements Cloneable {
 	 * be delagated to another thread. Returning null will be 
 	 * interpreted as an abort signal.
 	 * 
+	 * A URL failing to load is skipped, or parked for another attempt 
+	 * by the {@link RetryPolicy}. The retries due are parsed with the chunk.
+	 * 
 	 * @param urls list to parse
 	 * @return the url list to be parsed or null to abort.
 	 */
 	protected List<String> parse(List<String> urls){
 		List<String> links = new LinkedList<>();
-		for(String url : urls){
-			if(abort.get()){ return null; }
+		try {
+			for(String url : urls)
+				if(! visit(url, 0, links)) return null;
+			if(retries != null)
+				for(RetryPolicy.Attempt attempt : retries.due())
+					if(! visit(attempt.getUrl(), attempt.getAttempt(), links)) return null;
+		} catch (InterruptedException e) {
+			// interrupted by an abort, the interrupt is already consumed
+			if(abort.get()) return null;
+			Thread.currentThread().interrupt();
+		}
+		return links;
+	}
+	
+	/*
+	 * Fetch and parse a single URL, a failure only loses this URL.
+	 * Returns false to abort the search. The visit is a flight of 
+	 * the budget, an abort disconnects it.
+	 */
+	private boolean visit(String url, int attempt, List<String> links) throws InterruptedException{
+		CrawlBudget.Flight flight = budget.enter();
+		if(publisher != null) 
+			this.emitted = new ArrayList<>();
+		try {
+			if(abort.get()) return false;
+			return visit(url, attempt, links, flight);
+		} finally {
+			// within the flight, an abort interrupts a waiting publication
+			publish();
+			budget.exit(flight);
+		}
+	}
+	
+	private boolean visit(String url, int attempt, List<String> links, CrawlBudget.Flight flight) 
+			throws InterruptedException{
+		String host     = null;
+		long   start    = 0;
+		long   elapsed  = -1;
+		int    status   = -1;
+		long   reserved = -1;
+		boolean fetched = false;
+		CrawlEvents.Fetch fetch = CrawlEvents.enabled() ? new CrawlEvents.Fetch() : null;
+		if(fetch != null) fetch.begin();
+		try{
+			if(governor != null)
+				governor.awaitFetch();
+			if(limiter != null){
+				String authority = new URL(url).getAuthority();
+				limiter.acquire(authority);
+				host    = authority;
+				start   = System.nanoTime();
+			}
+			// the headers are awaited here and not in parsePage, 
+			// a disconnected request must not be resent
+			HttpURLConnection connection = connect(url, flight);
+			int code = connection.getResponseCode();
+			commit(fetch, url, code, attempt, connection.getContentLengthLong());
+			fetched  = true;
+			if(abort.get()) return false;
+			if(governor != null)
+				reserved = governor.reserve(connection.getContentLengthLong());
+			if(host != null){
+				status  = code;
+				elapsed = System.nanoTime() - start;
+			}
+			if(retries != null && retry.isRetryable(code)
+					&& retries.schedule(url, attempt)){
+				connection.disconnect();
+				return true;
+			}
+			if(policy != null && ! policy.acceptsResponse(connection)){
+				connection.disconnect(); // body never read
+				return true;
+			}
+			Page              page       = (limiter == null) ? new Page(connection, dictionary())
+					: new Page(connection, dictionary(), download(connection));
+			CrawlEvents.Parse parse      = CrawlEvents.enabled() ? new CrawlEvents.Parse() : null;
+			if(parse != null) parse.begin();
+			long              locking    = (parse != null && parse.isEnabled()) ? System.nanoTime() : 0;
+			boolean           parsed;
+			synchronized (this) { // prevent master - reduce collisions
+				if(locking != 0) locking = System.nanoTime() - locking;
+				if(abort.get()) return false;
+				parsed = parsePage(page);
+			}
+			// recorded even when the page aborts the search
+			if(parse != null) parse.end();
+			if(parse != null && parse.shouldCommit()){
+				parse.url         = url;
+				parse.host        = CrawlEvents.host(url);
+				parse.bytes       = page.getByteCount();
+				parse.monitorWait = locking;
+				parse.worker      = CrawlEvents.worker();
+				parse.commit();
+			}
+			if(! parsed) return false;
 			
-			try{
-				HttpURLConnection connection = makeConnection(url);
-				Page              page       = new Page(connection);
-				synchronized (this) { // prevent master - reduce collisions
-					if(abort.get() || ! parsePage(page))
-					{ return null;}
-				}
-				links.addAll(filterLinks(page, page.getHyperLinks()));
-			} catch (MalformedURLException e){
-				System.err.println(e.getLocalizedMessage());
-				continue;
-			} catch (IOException e) {
-				e.printStackTrace();
-				break;
+			CrawlEvents.LinkFilter filter   = CrawlEvents.enabled() ? new CrawlEvents.LinkFilter() : null;
+			List<String>           accepted = follow(url, page, filter);
+			links.addAll(accepted);
+			if(filter != null && filter.shouldCommit()){
+				filter.url      = url;
+				filter.host     = CrawlEvents.host(url);
+				filter.found    = page.getHyperLinks().size();
+				filter.accepted = accepted.size();
+				filter.worker   = CrawlEvents.worker();
+				filter.commit();
 			}
+			if(! budget.charge(page.getByteCount())) return false;
+		} catch (MalformedURLException e){
+			System.err.println(e.getLocalizedMessage());
+		} catch (IOException e) {
+			// disconnected by an abort
+			if(abort.get()) return false;
+			if(retries == null || ! retries.schedule(url, attempt, e))
+				System.err.println(url + ": " + e);
+		} catch (RuntimeException e) {
+			// HttpURLConnection may also fail this way once disconnected
+			if(abort.get()) return false;
+			throw e;
+		} finally {
+			// a failed connection is recorded with status -1
+			if(! fetched)
+				commit(fetch, url, -1, attempt, -1);
+			if(reserved >= 0)
+				governor.release(reserved);
+			// the permit is held until the body is consumed
+			if(host != null)
+				limiter.release(host, (elapsed < 0) ? System.nanoTime() - start : elapsed, status);
+		}
+		return true;
+	}
+	
+	/*
+	 * Links of a parsed page to follow, after the link graph, the handler,
+	 * the fetch policy and the history. Also used by the pipeline.
+	 */
+	List<String> follow(String url, Page page) throws IOException{
+		return follow(url, page, null);
+	}
+	
+	/*
+	 * The event, if any, times the filters only: not the link graph 
+	 * nor the history bookkeeping
+	 */
+	private List<String> follow(String url, Page page, CrawlEvents.LinkFilter filter) throws IOException{
+		if(graph != null)   graph.collect(url, page.getHyperLinks());
+		if(filter != null)  filter.begin();
+		List<String> accepted = filterLinks(page, page.getHyperLinks());
+		if(policy != null)  accepted = policy.filterLinks(accepted);
+		if(history != null) accepted = history.prune(accepted);
+		if(filter != null)  filter.end();
+		if(history != null) history.observe(page, url, history.time());
+		return accepted;
+	}
+	
+	/*
+	 * Connection and headers. With a limiter the wait is a managed block:
+	 * the pool may add a thread meanwhile, so that the permits of the 
+	 * hosts and not the number of workers bound the requests in flight.
+	 */
+	private HttpURLConnection connect(final String url, final CrawlBudget.Flight flight) 
+			throws IOException, InterruptedException{
+		Callable<HttpURLConnection> connect = new Callable<HttpURLConnection>() {
+			@Override
+			public HttpURLConnection call() throws IOException, InterruptedException {
+				HttpURLConnection connection = open(url, flight);
+				flight.attach(connection);
+				connection.getResponseCode();
+				return connection;
+			}
+		};
+		return (limiter == null) ? call(connect) : new Blocking<>(connect).get();
+	}
+	
+	/*
+	 * Body of the response, downloaded in a managed block as the headers
+	 */
+	private static byte[] download(final HttpURLConnection connection) throws IOException, InterruptedException{
+		return new Blocking<>(new Callable<byte[]>() {
+			@Override
+			public byte[] call() throws IOException {
+				return Page.readBody(connection);
+			}
+		}).get();
+	}
+	
+	private static <T> T call(Callable<T> io) throws IOException, InterruptedException{
+		try {
+			return io.call();
+		} catch (IOException | InterruptedException | RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new IOException(e);
+		}
+	}
+	
+	/*
+	 * Blocking I/O run as a managed block of the ForkJoin pool
+	 */
+	private static final class Blocking<T> implements ForkJoinPool.ManagedBlocker {
+		
+		Blocking(Callable<T> io) {
+			this.io = io;
+		}
+		
+		@Override
+		public boolean block() {
+			try {
+				value = call(io);
+			} catch (IOException | InterruptedException | RuntimeException e) {
+				error = e;
+			}
+			done = true;
+			return true;
+		}
+		
+		@Override
+		public boolean isReleasable() {
+			return done;
+		}
+		
+		T get() throws IOException, InterruptedException{
+			ForkJoinPool.managedBlock(this);
+			if(error instanceof IOException)          throw (IOException) error;
+			if(error instanceof InterruptedException) throw (InterruptedException) error;
+			if(error != null)                         throw (RuntimeException) error;
+			return value;
+		}
+		
+		private final Callable<T> io;
+		private T                 value;
+		private Exception         error;
+		private boolean           done;
+	}
+	
+	private static void commit(CrawlEvents.Fetch event, String url, int status, int attempt, long bytes){
+		if(event == null) return;
+		event.end();
+		if(event.shouldCommit()){
+			event.url     = url;
+			event.host    = CrawlEvents.host(url);
+			event.status  = status;
+			event.attempt = attempt;
+			event.bytes   = bytes;
+			event.worker  = CrawlEvents.worker();
+			event.commit();
 		}
-		return links;
+	}
+	
+	/*
+	 * Dictionary of the running search
+	 */
+	HostDictionary dictionary(){
+		return (dictionary == null) ? HostDictionary.SHARED : dictionary;
+	}
+	
+	/*
+	 * Connection with the retry policy deadlines and hedging, 
+	 * used by the crawler and the pipeline
+	 */
+	HttpURLConnection open(final String url) throws IOException, InterruptedException{
+		return open(url, null);
+	}
+	
+	/*
+	 * The connection is attached to the flight before its headers
+	 * are read, an abort disconnects it while it waits.
+	 */
+	HttpURLConnection open(final String url, final CrawlBudget.Flight flight) throws IOException, InterruptedException{
+		HttpURLConnection connection;
+		if(retry == null) 
+			connection = makeConnection(url);
+		else
+			connection = retry.connect(new Callable<HttpURLConnection>() {
+				@Override
+				public HttpURLConnection call() throws IOException {
+					HttpURLConnection connection = makeConnection(url);
+					if(flight != null) flight.attach(connection);
+					retry.configure(connection);
+					connection.getResponseCode();
+					return connection;
+				}
+			});
+		return (archive == null) ? connection : archive.wrap(connection);
 	}
 	
 	/**
@@ -185,10 +685,26 @@ public abstract class CrawlerHandler implements Cloneable {
 	 * @param page current page retrieved
 	 * @param links all hyperlinks from this page
 	 * @return list of accepted links
-	 * @see #childOnly(URL, List)
+	 * @see #childOnly(CompactUrl, List)
 	 */
 	public List<String> filterLinks(Page page, List<String> links){
-		return childOnly(page.getConnection().getURL(), links);
+		return childOnly(page.getLocation(), links);
+	}
+	
+	/**
+	 * Select the sitemap entries entering the frontier, for instance
+	 * the pages modified since the last search. By default all the
+	 * entries are accepted. Only the location of the accepted entries 
+	 * enters the frontier, their <code>lastmod</code> is dropped.
+	 * 
+	 * <em>This method is provided as convenience</em>
+	 * 
+	 * @param entries batch of entries read from a sitemap
+	 * @return accepted entries
+	 * @see Crawler#setSitemaps(URL...)
+	 */
+	public List<SitemapReader.Entry> filterSitemap(List<SitemapReader.Entry> entries){
+		return entries;
 	}
 	
 	/**
@@ -208,10 +724,22 @@ public abstract class CrawlerHandler implements Cloneable {
 	 * @return list of links passing the constraint
 	 */
 	protected List<String> childOnly(URL domain, List<String> links){
+		return childOnly(CompactUrl.location(dictionary(), domain), links);
+	}
+	
+	/**
+	 * Same as {@link #childOnly(URL, List)} for an already encoded
+	 * location. The parent URL is never materialised.
+	 * 
+	 * @param parent the current location
+	 * @param links list of links
+	 * @return list of links passing the constraint
+	 * @see Page#getLocation()
+	 */
+	protected List<String> childOnly(CompactUrl parent, List<String> links){
 		List<String> passing = new LinkedList<>();
-		String       parent  = domain.getProtocol() +"://"+ domain.getAuthority() + domain.getPath();
 		for(String link : links){
-			if(link.startsWith(parent) && link.length() > parent.length())
+			if(parent.isParentOf(link))
 				passing.add(link);
 		}
 		return passing;
@@ -243,6 +771,53 @@ public abstract class CrawlerHandler implements Cloneable {
 		}
 	}
 	
+	/**
+	 * Get the values of the @Reduced fields, in declaration order.
+	 * Used to ship the results of a handler to another JVM.
+	 * 
+	 * @return the @Reduced containers of this handler
+	 * @see #mergeReduced(Object[])
+	 */
+	public Object[] getReducedValues() throws IllegalAccessException {
+		Object[] values = new Object[this.reducedFields.length];
+		for(int i = 0; i < values.length; i++)
+			values[i] = this.reducedFields[i].get(this);
+		return values;
+	}
+	
+	/**
+	 * Get the values of the @Reduced fields and replace them with
+	 * empty containers, the next values only hold the new results.
+	 * 
+	 * @return the @Reduced containers of this handler
+	 * @see #getReducedValues()
+	 */
+	public Object[] takeReducedValues() throws IllegalAccessException {
+		Object[] values = getReducedValues();
+		for(int i = 0; i < values.length; i++)
+			this.reducedFields[i].set(this, emptyContainer(values[i]));
+		return values;
+	}
+	
+	/**
+	 * Merge the containers exported by a handler of the same class,
+	 * as if a forked handler holding them was reduced on this one.
+	 * 
+	 * @param values containers returned by {@link #getReducedValues()}
+	 * @see #reduce(CrawlerHandler)
+	 */
+	public void mergeReduced(Object[] values) throws CloneNotSupportedException, IllegalAccessException, 
+			IllegalArgumentException, InvocationTargetException {
+		if(values.length != this.reducedFields.length)
+			throw new IllegalArgumentException("Reduced fields mismatch");
+		CrawlerHandler other = (CrawlerHandler) clone();
+		for(int i = 0; i < values.length; i++)
+			this.reducedFields[i].set(other, values[i]);
+		synchronized (this) {
+			reduce(other);
+		}
+	}
+	
 	/**
 	 * Shared flag
 	 * 
@@ -250,6 +825,19 @@ public abstract class CrawlerHandler implements Cloneable {
 	 * current search.
 	 */
 	protected AtomicBoolean abort;
+	CrawlBudget             budget;
+	HostResolver            resolver;
+	AdaptiveLimiter         limiter;
+	MemoryGovernor          governor;
+	HostDictionary          dictionary;
+	RetryPolicy.Retries     retries;
+	private   FetchPolicy   policy;
+	private   RetryPolicy   retry;
+	private   CrawlArchive  archive;
+	private   CrawlHistory  history;
+	private   LinkGraphCollector graph;
+	private   ResultPublisher<?> publisher;
+	private   List<Object>  emitted;
 	private   Field[]       reducedFields;
 	private   Method        reduceCollection;
 }
@@ -0,0 +1,210 @@
+package org.rexcrawler;
+
+import java.net.HttpURLConnection;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fetch policy
+ * 
+ * Declares which responses are worth downloading. The policy is
+ * evaluated twice:
+ * <ul>
+ * <li>on the links, before they enter the frontier, using the extension
+ * of the path (eg. ".pdf", ".jpg")</li>
+ * <li>on the response headers, before the body is read, using
+ * <code>Content-Type</code> and <code>Content-Length</code></li>
+ * </ul>
+ * A rejected response is disconnected without reading its body and
+ * never reaches {@link CrawlerHandler#parsePage(Page)}.
+ * 
+ * The same policy is shared by all the forked handlers, therefore the
+ * counters cover the whole search.
+ * 
+ * @author shake0
+ *
+ */
+public class FetchPolicy {
+	
+	/**
+	 * Policy accepting everything
+	 */
+	public FetchPolicy() {
+		this.mimeTypes        = new HashSet<>();
+		this.extensions       = new HashSet<>();
+		this.maxContentLength = UNBOUNDED;
+		this.skippedLinks     = new AtomicLong();
+		this.skippedResponses = new AtomicLong();
+		this.skippedBytes     = new AtomicLong();
+	}
+	
+	/**
+	 * Policy accepting only "text/*" responses and rejecting
+	 * the most common binary extensions.
+	 * @return a new policy
+	 */
+	public static FetchPolicy textOnly(){
+		return new FetchPolicy()
+				.allowMimeType("text/")
+				.rejectExtensions("pdf", "zip", "gz", "tar", "exe", "dmg", "iso",
+						"jpg", "jpeg", "png", "gif", "bmp", "ico", "svg", "webp",
+						"mp3", "mp4", "avi", "mov", "mkv", "webm", "ogg", "wav",
+						"doc", "docx", "xls", "xlsx", "ppt", "pptx",
+						"woff", "woff2", "ttf", "eot");
+	}
+	
+	//--------------------------------------------
+	// Rules
+	
+	/**
+	 * Accept the MIME type. A type ending with "/" accepts the whole
+	 * family (eg. "text/"). If no type is allowed, all types are accepted.
+	 * @param mimeType MIME type or family
+	 * @return the calling object
+	 */
+	public FetchPolicy allowMimeType(String mimeType){
+		this.mimeTypes.add(mimeType.toLowerCase(Locale.ROOT));
+		return this;
+	}
+	
+	/**
+	 * Reject links ending with one of the extensions
+	 * @param extensions extensions without the dot (eg. "pdf")
+	 * @return the calling object
+	 */
+	public FetchPolicy rejectExtensions(String ... extensions){
+		for(String ext : extensions)
+			this.extensions.add(ext.toLowerCase(Locale.ROOT));
+		return this;
+	}
+	
+	/**
+	 * Reject responses declaring a larger <code>Content-Length</code>.
+	 * Responses without a declared length are accepted.
+	 * @param maxContentLength maximum size in bytes, <= 0 for unbounded
+	 * @return the calling object
+	 */
+	public FetchPolicy setMaxContentLength(long maxContentLength){
+		this.maxContentLength = (maxContentLength <= 0) ? UNBOUNDED : maxContentLength;
+		return this;
+	}
+	
+	public long getMaxContentLength(){
+		return this.maxContentLength;
+	}
+	
+	//--------------------------------------------
+	// Evaluation
+	
+	/**
+	 * Test the link against the rejected extensions
+	 * @param link absolute URL
+	 * @return true if the link can be fetched
+	 */
+	public boolean acceptsLink(String link){
+		if(this.extensions.isEmpty()) return true;
+		int end = link.length();
+		for(int i = link.indexOf("://") + 3; i < end; i++){
+			char c = link.charAt(i);
+			if(c == '?' || c == '#'){ end = i; break; }
+		}
+		int dot   = link.lastIndexOf('.', end - 1);
+		int slash = link.lastIndexOf('/', end - 1);
+		if(dot <= slash) return true;
+		return ! this.extensions.contains(link.substring(dot + 1, end).toLowerCase(Locale.ROOT));
+	}
+	
+	/**
+	 * Remove the rejected links
+	 * @param links list of links
+	 * @return list of accepted links
+	 */
+	public List<String> filterLinks(List<String> links){
+		List<String> passing = new LinkedList<>();
+		for(String link : links){
+			if(acceptsLink(link))
+				passing.add(link);
+			else
+				skippedLinks.incrementAndGet();
+		}
+		return passing;
+	}
+	
+	/**
+	 * Test the response headers. Reading the headers connects 
+	 * to the target but does not read the body.
+	 * @param connection connection to the target
+	 * @return true if the body should be downloaded
+	 */
+	public boolean acceptsResponse(HttpURLConnection connection){
+		long length = connection.getContentLengthLong();
+		if(acceptsType(connection.getContentType()) 
+				&& (maxContentLength == UNBOUNDED || length <= maxContentLength))
+			return true;
+		skippedResponses.incrementAndGet();
+		if(length > 0) skippedBytes.addAndGet(length);
+		return false;
+	}
+	
+	private boolean acceptsType(String contentType){
+		if(this.mimeTypes.isEmpty()) return true;
+		if(contentType == null)      return false;
+		String mime = contentType.toLowerCase(Locale.ROOT);
+		int    semi = mime.indexOf(';');
+		if(semi >= 0) mime = mime.substring(0, semi);
+		mime = mime.trim();
+		for(String allowed : this.mimeTypes){
+			if(allowed.endsWith("/") ? mime.startsWith(allowed) : mime.equals(allowed))
+				return true;
+		}
+		return false;
+	}
+	
+	//--------------------------------------------
+	// Report
+	
+	/**
+	 * Get the number of links discarded by extension
+	 * @return skipped links
+	 */
+	public long getSkippedLinkCount(){
+		return this.skippedLinks.get();
+	}
+	
+	/**
+	 * Get the number of responses disconnected before reading the body
+	 * @return skipped responses
+	 */
+	public long getSkippedResponseCount(){
+		return this.skippedResponses.get();
+	}
+	
+	/**
+	 * Get the number of bytes not downloaded, as declared by
+	 * the <code>Content-Length</code> of the skipped responses.
+	 * @return skipped bytes
+	 */
+	public long getSkippedBytes(){
+		return this.skippedBytes.get();
+	}
+	
+	@Override
+	public String toString() {
+		return "skippedLinks=" + getSkippedLinkCount() 
+				+ " skippedResponses=" + getSkippedResponseCount() 
+				+ " skippedBytes=" + getSkippedBytes();
+	}
+	
+	private static final long UNBOUNDED = -1;
+	private final Set<String> mimeTypes;
+	private final Set<String> extensions;
+	private long              maxContentLength;
+	// report
+	private final AtomicLong  skippedLinks;
+	private final AtomicLong  skippedResponses;
+	private final AtomicLong  skippedBytes;
+}
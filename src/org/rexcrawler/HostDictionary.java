@@ -0,0 +1,81 @@
+package org.rexcrawler;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Host dictionary
+ * 
+ * Interns the <code>scheme://authority</code> prefix of the
+ * crawled URLs into a small integer ID. A single-site crawl
+ * ends up with a handful of entries no matter how many URLs
+ * are stored in the frontier.
+ * 
+ * IDs are never released, they are valid for the lifetime of
+ * the dictionary: the crawler uses a new dictionary for each search.
+ * The lookups of a prefix by ID take no lock, the array of prefixes 
+ * is published after each registration.
+ * 
+ * @author shake0
+ *
+ */
+public final class HostDictionary {
+	
+	/**
+	 * Dictionary of the URLs encoded without a dictionary, 
+	 * it is never used by the crawler
+	 */
+	public static final HostDictionary SHARED = new HostDictionary();
+	
+	public HostDictionary() {
+		this.ids      = new ConcurrentHashMap<>();
+		this.prefixes = new String[8];
+		intern("");
+	}
+	
+	/**
+	 * Get the ID of the prefix, registering it if needed.
+	 * @param prefix scheme and authority (eg. "http://www.example.org")
+	 * @return ID of the prefix
+	 */
+	public int intern(String prefix){
+		Integer id = this.ids.get(prefix);
+		if(id != null) return id;
+		synchronized (this.ids) {
+			id = this.ids.get(prefix);
+			if(id == null){
+				id = this.count;
+				String[] grown = (id < this.prefixes.length) ? this.prefixes 
+						: Arrays.copyOf(this.prefixes, id * 2);
+				grown[id] = prefix;
+				this.count = id + 1;
+				// publish before the ID is visible
+				this.prefixes = grown;
+				this.ids.put(prefix, id);
+			}
+		}
+		return id;
+	}
+	
+	/**
+	 * Get the prefix registered with <code>id</code>
+	 * @param id prefix ID
+	 * @return scheme and authority
+	 */
+	public String prefix(int id){
+		return this.prefixes[id];
+	}
+	
+	/**
+	 * Get the number of registered hosts
+	 * @return dictionary size
+	 */
+	public int size(){
+		return this.ids.size();
+	}
+	
+	private final ConcurrentMap<String, Integer> ids;
+	private volatile String[]                    prefixes;
+	private int                                  count;
+}
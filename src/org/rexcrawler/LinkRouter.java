@@ -0,0 +1,26 @@
+package org.rexcrawler;
+
+import java.util.List;
+
+/**
+ * Decides where the discovered links are crawled.
+ * 
+ * The router is called by every crawler thread with the links returned
+ * by {@link CrawlerHandler#parse(List)}, right before they enter the
+ * local frontier. Links not returned are dropped from the local search
+ * (eg. forwarded to another node or already visited).
+ * 
+ * Implementations must be thread safe.
+ * 
+ * @author shake0
+ *
+ */
+public interface LinkRouter {
+	
+	/**
+	 * Route the discovered links
+	 * @param links links discovered by a thread
+	 * @return links to keep in the local frontier
+	 */
+	public List<CompactUrl> route(List<CompactUrl> links);
+}
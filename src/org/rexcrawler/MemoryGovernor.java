@@ -0,0 +1,368 @@
+package org.rexcrawler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Memory governor
+ *
+ * Keeps the memory of a search under a budget. Three consumers are
+ * accounted:
+ * <ul>
+ * <li>the frontier: the URLs waiting to be parsed, held by the workers</li>
+ * <li>the page buffers: the bodies being downloaded and parsed, reserved
+ * with their announced length</li>
+ * <li>the results: the @Reduced containers of the handler, measured
+ * after each reduce</li>
+ * </ul>
+ * When the usage reaches the <em>throttle</em> threshold the crawler stops
+ * forking and the links exceeding a chunk are spilled to a temporary file;
+ * a worker without URLs takes them back. Above the <em>critical</em>
+ * threshold a fetch waits for a page buffer to be released, one fetch
+ * is always allowed.
+ *
+ * The spill file has its own lock, the file I/O never blocks the
+ * accounting of the page buffers.
+ *
+ * The governor is set on the crawler and shared by its workers.
+ *
+ * @author shake0
+ * @see Crawler#setMemoryGovernor(MemoryGovernor)
+ */
+public class MemoryGovernor {
+
+	/**
+	 * Memory pressure
+	 */
+	public static enum Level {
+		/** under the throttle threshold */
+		NORMAL,
+		/** no forking, the frontier is spilled */
+		THROTTLE,
+		/** the fetches wait for the buffers */
+		CRITICAL
+	}
+
+	/**
+	 * Budget of half the maximum heap
+	 */
+	public MemoryGovernor() {
+		this(Runtime.getRuntime().maxMemory() / 2);
+	}
+
+	/**
+	 * @param budget bytes available to the search
+	 */
+	public MemoryGovernor(long budget) {
+		if(budget <= 0)
+			throw new IllegalArgumentException("Budget must be positive");
+		this.budget       = budget;
+		this.throttle     = 0.7;
+		this.critical     = 0.9;
+		this.frontier     = new AtomicLong();
+		this.buffers      = new AtomicLong();
+		this.spilled      = new AtomicLong();
+		this.restored     = new AtomicLong();
+		this.skippedForks = new AtomicLong();
+		this.waits        = new AtomicLong();
+		this.spillLock    = new Object();
+	}
+
+	//--------------------------------------------
+	// Accounting
+
+	/*
+	 * Reset the accounting, the metrics are kept
+	 */
+	synchronized void start(HostDictionary dictionary){
+		this.dictionary = dictionary;
+		this.frontier.set(0);
+		this.buffers.set(0);
+		this.results  = 0;
+		this.inFlight = 0;
+		clearSpill();
+	}
+
+	/*
+	 * URLs entering (positive) or leaving the frontier
+	 */
+	void frontier(long bytes){
+		frontier.addAndGet(bytes);
+		peak();
+	}
+
+	/*
+	 * Measure the @Reduced containers of the master handler
+	 */
+	void measure(CrawlerHandler handler){
+		long bytes = 0;
+		try {
+			for(Object value : handler.getReducedValues()){
+				if(value instanceof StringArena)
+					bytes += ((StringArena) value).getReservedBytes();
+				else if(value instanceof Collection)
+					bytes += (long) ((Collection<?>) value).size() * RESULT_BYTES;
+			}
+		} catch (IllegalAccessException e) {
+			System.err.println(e.getLocalizedMessage());
+		}
+		this.results = bytes;
+		peak();
+	}
+
+	/**
+	 * Wait for the memory to fetch a page. Above the critical threshold
+	 * the call blocks until a page buffer is released, unless no buffer
+	 * is in use.
+	 * @throws InterruptedException the search was aborted
+	 */
+	public void awaitFetch() throws InterruptedException{
+		synchronized (this) {
+			if(getLevel() != Level.CRITICAL || inFlight == 0) return;
+			waits.incrementAndGet();
+			while(getLevel() == Level.CRITICAL && inFlight > 0)
+				wait();
+		}
+	}
+
+	/**
+	 * Reserve the buffer of a page
+	 * @param length announced length of the body, negative if unknown
+	 * @return bytes reserved, to be released
+	 */
+	public long reserve(long length){
+		long bytes = (length < 0) ? UNKNOWN_LENGTH : length;
+		synchronized (this) {
+			inFlight++;
+		}
+		buffers.addAndGet(bytes);
+		peak();
+		return bytes;
+	}
+
+	/**
+	 * Release the buffer of a page
+	 * @param bytes value returned by {@link #reserve(long)}
+	 */
+	public void release(long bytes){
+		buffers.addAndGet(-bytes);
+		synchronized (this) {
+			inFlight--;
+			notifyAll();
+		}
+	}
+
+	//--------------------------------------------
+	// Spilling
+
+	/*
+	 * Write the URLs to the spill file, they leave the frontier
+	 */
+	void spill(List<CompactUrl> urls){
+		if(urls.isEmpty()) return;
+		long bytes = 0;
+		synchronized (spillLock) {
+			try {
+				if(file == null){
+					file = File.createTempFile("rexcrawler", ".spill");
+					file.deleteOnExit();
+				}
+				// the file is emptied when drained, written again from the start
+				if(writer == null)
+					writer = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+				for(CompactUrl url : urls){
+					writer.writeUTF(url.toString());
+					bytes += url.footprint();
+				}
+				writer.flush();
+				spilledCount += urls.size();
+				spilled.addAndGet(urls.size());
+			} catch (IOException e) {
+				// the URLs are lost, as with a failed fetch
+				System.err.println("spill: " + e);
+				return;
+			}
+		}
+		frontier(-bytes);
+	}
+
+	/*
+	 * Read back up to max URLs, they enter the frontier
+	 */
+	List<CompactUrl> restore(int max){
+		List<CompactUrl> urls = new LinkedList<>();
+		long bytes = 0;
+		synchronized (spillLock) {
+			if(spilledCount == 0) return urls;
+			try {
+				if(reader == null)
+					reader = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+				while(urls.size() < max && spilledCount > 0){
+					CompactUrl url = CompactUrl.of(dictionary, reader.readUTF());
+					bytes += url.footprint();
+					urls.add(url);
+					spilledCount--;
+				}
+			} catch (IOException e) {
+				System.err.println("restore: " + e);
+				spilledCount = 0;
+			}
+			if(spilledCount == 0)
+				closeSpill();
+		}
+		restored.addAndGet(urls.size());
+		frontier(bytes);
+		return urls;
+	}
+
+	/*
+	 * Close and delete the spill file
+	 */
+	void clearSpill(){
+		synchronized (spillLock) {
+			spilledCount = 0;
+			closeSpill();
+			if(file != null){
+				file.delete();
+				file = null;
+			}
+		}
+	}
+
+	/*
+	 * Close the streams, the next spill truncates the file
+	 */
+	private void closeSpill(){
+		try {
+			if(writer != null) writer.close();
+			if(reader != null) reader.close();
+		} catch (IOException e) {
+			System.err.println("spill: " + e);
+		}
+		writer = null;
+		reader = null;
+	}
+
+	/*
+	 * Counted when the crawler spills a chunk instead of forking it
+	 */
+	void skipFork(){
+		skippedForks.incrementAndGet();
+	}
+
+	private void peak(){
+		long used = getUsedBytes();
+		if(used > peak) peak = used;
+	}
+
+	//--------------------------------------------
+	// Mutators
+
+	/**
+	 * Get the pressure level
+	 * @return level of the current usage
+	 */
+	public Level getLevel(){
+		double usage = getUsage();
+		if(usage >= critical) return Level.CRITICAL;
+		if(usage >= throttle) return Level.THROTTLE;
+		return Level.NORMAL;
+	}
+
+	/**
+	 * @return used bytes over the budget
+	 */
+	public double getUsage(){
+		return (double) getUsedBytes() / budget;
+	}
+
+	/**
+	 * @return bytes accounted: frontier, page buffers and results
+	 */
+	public long getUsedBytes(){
+		return frontier.get() + buffers.get() + results;
+	}
+
+	/** @return bytes of the frontier held in memory */
+	public long getFrontierBytes(){ return frontier.get(); }
+	/** @return bytes reserved by the page buffers */
+	public long getBufferBytes()  { return buffers.get(); }
+	/** @return bytes of the @Reduced containers, at the last reduce */
+	public long getResultBytes()  { return results; }
+	/** @return highest usage seen */
+	public long getPeakBytes()    { return peak; }
+	/** @return URLs waiting in the spill file */
+	public long getSpilledCount() { synchronized (spillLock) { return spilledCount; } }
+	/** @return URLs written to the spill file */
+	public long getSpillCount()   { return spilled.get(); }
+	/** @return URLs read back from the spill file */
+	public long getRestoreCount() { return restored.get(); }
+	/** @return chunks spilled instead of forked */
+	public long getSkippedForkCount(){ return skippedForks.get(); }
+	/** @return fetches that waited for memory */
+	public long getThrottledFetchCount(){ return waits.get(); }
+
+	/**
+	 * @return budget in bytes
+	 */
+	public long getBudget(){
+		return budget;
+	}
+
+	/**
+	 * Set the thresholds of the pressure levels
+	 * @param throttle usage starting the spilling, default 0.7
+	 * @param critical usage throttling the fetches, default 0.9
+	 * @return the calling object
+	 */
+	public MemoryGovernor setThresholds(double throttle, double critical){
+		if(throttle <= 0 || critical < throttle)
+			throw new IllegalArgumentException("Invalid thresholds");
+		this.throttle = throttle;
+		this.critical = critical;
+		return this;
+	}
+
+	@Override
+	public String toString() {
+		return getLevel() + " used=" + getUsedBytes() + "/" + budget + " frontier=" + getFrontierBytes()
+				+ " buffers=" + getBufferBytes() + " results=" + getResultBytes() + " peak=" + getPeakBytes()
+				+ " spilled=" + getSpillCount() + " restored=" + getRestoreCount()
+				+ " skippedForks=" + getSkippedForkCount() + " throttledFetches=" + getThrottledFetchCount();
+	}
+
+	// estimates
+	private static final long UNKNOWN_LENGTH = 64 * 1024;
+	private static final long RESULT_BYTES   = 64;
+	private final long          budget;
+	private volatile double     throttle;
+	private volatile double     critical;
+	// accounting
+	private final AtomicLong    frontier;
+	private final AtomicLong    buffers;
+	private volatile long       results;
+	private volatile long       peak;
+	private int                 inFlight;
+	// spill file, guarded by spillLock
+	private final Object        spillLock;
+	private HostDictionary      dictionary;
+	private File                file;
+	private DataOutputStream    writer;
+	private DataInputStream     reader;
+	private long                spilledCount;
+	// metrics
+	private final AtomicLong    spilled;
+	private final AtomicLong    restored;
+	private final AtomicLong    skippedForks;
+	private final AtomicLong    waits;
+}
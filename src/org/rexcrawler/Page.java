@@ -1,10 +1,12 @@
 package org.rexcrawler;
 
+import java.io.ByteArrayOutputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.regex.Matcher;
@@ -19,9 +21,55 @@ import java.util.regex.Pattern;
 public class Page {
 	
 	public Page(HttpURLConnection connection){
+		this(connection, HostDictionary.SHARED);
+	}
+	
+	/*
+	 * Page of a search, its location is encoded with the
+	 * dictionary of the search
+	 */
+	Page(HttpURLConnection connection, HostDictionary dictionary){
 		this.connection  = connection;
+		this.dictionary  = dictionary;
 		this.pageContent = null;
 		this.links       = null;
+		this.location    = null;
+		this.body        = null;
+	}
+	
+	/*
+	 * Page whose body has already been downloaded
+	 */
+	Page(HttpURLConnection connection, HostDictionary dictionary, byte[] body){
+		this(connection, dictionary);
+		this.body = body;
+	}
+	
+	/*
+	 * Download the whole body of the response
+	 */
+	static byte[] readBody(HttpURLConnection connection) throws IOException{
+		ByteArrayOutputStream bytes  = new ByteArrayOutputStream();
+		byte[]                buffer = new byte[8192];
+		InputStream           is     = connection.getInputStream();
+		try {
+			int read;
+			while((read = is.read(buffer)) != -1)
+				bytes.write(buffer, 0, read);
+		} finally {
+			is.close();
+		}
+		return bytes.toByteArray();
+	}
+	
+	/*
+	 * Bytes of the body downloaded, the announced length 
+	 * when the body was not read
+	 */
+	long getByteCount(){
+		if(body != null)        return body.length;
+		if(pageContent != null) return pageContent.length();
+		return Math.max(0, connection.getContentLengthLong());
 	}
 	
 	/**
@@ -32,14 +80,33 @@ public class Page {
 		return this.connection;
 	}
 	
+	/**
+	 * Get the location of this page (query excluded) in its
+	 * compact form. The value is computed once.
+	 * @return compact location
+	 * @see CompactUrl#location(URL)
+	 */
+	public CompactUrl getLocation(){
+		if(location == null)
+			this.location = CompactUrl.location(this.dictionary, this.connection.getURL());
+		return this.location;
+	}
+	
 	/**
 	 * Get page content
 	 * @return string with the page content
 	 * @throws IOException
 	 */
 	public String getContent() throws IOException{
-		if(pageContent == null)
-			this.pageContent = stringfyPage(this.connection.getInputStream());
+		if(pageContent == null){
+			if(body != null){
+				// one char per byte, as stringfyPage
+				this.pageContent = new String(body, StandardCharsets.ISO_8859_1);
+				this.body        = null;
+			}
+			else
+				this.pageContent = stringfyPage(this.connection.getInputStream());
+		}
 		return this.pageContent;
 	}
 	
@@ -50,7 +117,7 @@ public class Page {
 	 */
 	public boolean isCharacterContent(){
 		String mime = this.connection.getContentType();
-		if(mime.startsWith("text"))
+		if(mime != null && mime.startsWith("text"))
 			return true;
 		return false;
 	}
@@ -109,6 +176,9 @@ public class Page {
 		if(this.pageContent != null){
 			fos.write(this.pageContent.getBytes());
 		}
+		else if(this.body != null){
+			fos.write(this.body);
+		}
 		else{
 			InputStream is  = this.connection.getInputStream();
 			int c;
@@ -129,6 +199,9 @@ public class Page {
 	}
 	
 	private HttpURLConnection connection;
+	private HostDictionary    dictionary;
 	private String            pageContent;
 	private List<String>      links;
+	private CompactUrl        location;
+	private byte[]            body;
 }
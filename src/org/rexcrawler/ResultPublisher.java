@@ -0,0 +1,357 @@
+package org.rexcrawler;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Result publisher
+ * 
+ * Streams the results of a search while it is running, as an
+ * alternative to the @Reduced collections which are available only
+ * when <code>run()</code> returns.
+ * 
+ * Items emitted by the handlers are kept in a bounded buffer and
+ * delivered to a single {@link Flow.Subscriber} according to its demand.
+ * When the buffer is full {@link #emit(Object)} blocks the crawler thread:
+ * a slow consumer slows down the fetching instead of growing the heap.
+ * The results are dropped, and counted, instead of blocking the search
+ * forever:
+ * <ul>
+ * <li>when the buffer is full and nobody subscribed</li>
+ * <li>when the subscriber did not request any result for the stall timeout,
+ * until it requests again</li>
+ * </ul>
+ * 
+ * The publisher is completed by the crawler at the end of the search,
+ * therefore a publisher serves a single <code>run()</code>.
+ * 
+ * @author shake0
+ *
+ * @param <T> type of the results
+ * @see CrawlerHandler#emit(Object)
+ */
+public class ResultPublisher<T> implements Flow.Publisher<T> {
+	
+	/*
+	 * Subscription of the only subscriber
+	 */
+	private class Subscription implements Flow.Subscription {
+		
+		@Override
+		public void request(long n) {
+			synchronized (ResultPublisher.this) {
+				if(cancelled) return;
+				if(n <= 0){
+					failure = new IllegalArgumentException("Non positive request: " + n);
+					buffer.clear();
+					closed = true;
+				}
+				else
+					demand = (demand + n < 0) ? Long.MAX_VALUE : demand + n;
+			}
+			schedule();
+		}
+		
+		@Override
+		public void cancel() {
+			synchronized (ResultPublisher.this) {
+				cancelled = true;
+				buffer.clear();
+				ResultPublisher.this.notifyAll();
+			}
+		}
+	}
+	
+	/**
+	 * Publisher delivering the results from its own thread
+	 * @param capacity maximum number of buffered results
+	 */
+	public ResultPublisher(int capacity) {
+		this(capacity, null);
+	}
+	
+	/**
+	 * @param capacity maximum number of buffered results
+	 * @param executor executor delivering the results, null for a dedicated thread
+	 */
+	public ResultPublisher(int capacity, Executor executor) {
+		if(capacity <= 0)
+			throw new IllegalArgumentException("Capacity must be positive");
+		this.capacity  = capacity;
+		this.executor  = executor;
+		this.timeout   = TimeUnit.SECONDS.toNanos(30);
+		this.buffer    = new ArrayDeque<>(Math.min(capacity, 1024));
+		this.drain     = new Runnable() {
+			@Override
+			public void run() {
+				drain();
+			}
+		};
+	}
+	
+	//--------------------------------------------
+	// Publisher
+	
+	@Override
+	public void subscribe(Flow.Subscriber<? super T> subscriber) {
+		boolean accepted;
+		synchronized (this) {
+			accepted = (this.subscriber == null);
+			if(accepted){
+				this.subscriber = subscriber;
+				if(this.executor == null){
+					this.own      = Executors.newSingleThreadExecutor(DAEMON);
+					this.executor = this.own;
+				}
+			}
+		}
+		if(! accepted){
+			subscriber.onSubscribe(REJECTED);
+			subscriber.onError(new IllegalStateException("Only one subscriber is supported"));
+			return;
+		}
+		subscriber.onSubscribe(new Subscription());
+		schedule();
+	}
+	
+	/**
+	 * Publish a result. Blocks while the buffer is full, at most
+	 * for the stall timeout.
+	 * @param item result to publish
+	 * @return false if the item was discarded because the subscription 
+	 * is cancelled, the publisher is closed, the thread was interrupted
+	 * or the result was dropped
+	 */
+	public boolean emit(T item){
+		if(item == null)
+			throw new NullPointerException("Null results are not allowed");
+		synchronized (this) {
+			if(buffer.size() >= capacity && ! cancelled && ! closed){
+				// nobody to wait for
+				if(subscriber == null || stalled){
+					dropped++;
+					return false;
+				}
+				long start = System.nanoTime();
+				try {
+					while(buffer.size() >= capacity && ! cancelled && ! closed){
+						long left = start + timeout - System.nanoTime();
+						if(left <= 0){
+							stalled = true;
+							dropped++;
+							return false;
+						}
+						TimeUnit.NANOSECONDS.timedWait(this, left);
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return false;
+				} finally {
+					blocked += System.nanoTime() - start;
+				}
+			}
+			if(cancelled || closed) return false;
+			buffer.add(item);
+			emitted++;
+			maxBuffered = Math.max(maxBuffered, buffer.size());
+		}
+		schedule();
+		return true;
+	}
+	
+	/*
+	 * False once the results are discarded
+	 */
+	synchronized boolean isOpen(){
+		return ! cancelled && ! closed;
+	}
+	
+	/**
+	 * Complete the stream once the buffered results are delivered.
+	 * Called by the crawler at the end of the search.
+	 */
+	public void close(){
+		synchronized (this) {
+			closed = true;
+			notifyAll();
+		}
+		schedule();
+	}
+	
+	//--------------------------------------------
+	// Delivery
+	
+	/*
+	 * Only one drain at a time, signals must be serialized
+	 */
+	private void schedule(){
+		synchronized (this) {
+			if(draining || subscriber == null || cancelled || completed) return;
+			boolean ready = (demand > 0 && ! buffer.isEmpty()) || (closed && buffer.isEmpty());
+			if(! ready) return;
+			draining = true;
+		}
+		executor.execute(drain);
+	}
+	
+	private void drain(){
+		while(true){
+			T       item     = null;
+			boolean complete = false;
+			synchronized (this) {
+				if(cancelled){
+					draining = false;
+					shutdown();
+					return;
+				}
+				if(demand > 0 && ! buffer.isEmpty()){
+					item = buffer.poll();
+					demand--;
+					delivered++;
+					stalled = false;
+					notifyAll();
+				}
+				else if(closed && buffer.isEmpty()){
+					completed = true;
+					complete  = true;
+				}
+				else {
+					draining = false;
+					return;
+				}
+			}
+			if(complete){
+				if(failure != null) subscriber.onError(failure);
+				else                subscriber.onComplete();
+				synchronized (this) {
+					draining = false;
+					shutdown();
+				}
+				return;
+			}
+			try {
+				subscriber.onNext(item);
+			} catch (RuntimeException e) {
+				// a failing subscriber is cancelled
+				synchronized (this) {
+					cancelled = true;
+					buffer.clear();
+					notifyAll();
+				}
+				subscriber.onError(e);
+			}
+		}
+	}
+	
+	private void shutdown(){
+		if(own != null) own.shutdown();
+	}
+	
+	//--------------------------------------------
+	// Metrics
+	
+	/**
+	 * @return number of results accepted by {@link #emit(Object)}
+	 */
+	public synchronized long getEmittedCount(){
+		return this.emitted;
+	}
+	
+	/**
+	 * @return number of results delivered to the subscriber
+	 */
+	public synchronized long getDeliveredCount(){
+		return this.delivered;
+	}
+	
+	/**
+	 * @return number of results waiting for the subscriber
+	 */
+	public synchronized int getBuffered(){
+		return this.buffer.size();
+	}
+	
+	/**
+	 * @return highest number of buffered results
+	 */
+	public synchronized int getMaxBuffered(){
+		return this.maxBuffered;
+	}
+	
+	/**
+	 * @return number of results dropped, without subscriber or with a stalled one
+	 */
+	public synchronized long getDroppedCount(){
+		return this.dropped;
+	}
+	
+	/**
+	 * Get the total time the crawler threads waited for buffer space
+	 * @return blocked time in nanoseconds
+	 */
+	public synchronized long getBlockedTime(){
+		return this.blocked;
+	}
+	
+	public int getCapacity(){
+		return this.capacity;
+	}
+	
+	/**
+	 * Set the time a crawler thread waits for buffer space before the
+	 * subscriber is considered stalled, by default 30 seconds.
+	 * @param timeout milliseconds
+	 * @return the calling object
+	 */
+	public ResultPublisher<T> setStallTimeout(long timeout){
+		if(timeout < 0)
+			throw new IllegalArgumentException("Negative timeout");
+		synchronized (this) {
+			this.timeout = TimeUnit.MILLISECONDS.toNanos(timeout);
+		}
+		return this;
+	}
+	
+	private static final Flow.Subscription REJECTED = new Flow.Subscription() {
+		@Override
+		public void request(long n) { }
+		@Override
+		public void cancel() { }
+	};
+	
+	private static final ThreadFactory DAEMON = new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "rexcrawler-results");
+			t.setDaemon(true);
+			return t;
+		}
+	};
+	
+	private final int                  capacity;
+	private final ArrayDeque<T>        buffer;
+	private final Runnable             drain;
+	private Executor                   executor;
+	private ExecutorService            own;
+	private Flow.Subscriber<? super T> subscriber;
+	// state, guarded by this
+	private long      timeout;
+	private long      demand;
+	private boolean   stalled;
+	private boolean   draining;
+	private boolean   closed;
+	private boolean   cancelled;
+	private boolean   completed;
+	private Throwable failure;
+	// metrics
+	private long      emitted;
+	private long      delivered;
+	private long      blocked;
+	private long      dropped;
+	private int       maxBuffered;
+}
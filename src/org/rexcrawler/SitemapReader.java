@@ -0,0 +1,307 @@
+package org.rexcrawler;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Sitemap reader
+ * 
+ * Streams the entries of a sitemap (<code>&lt;urlset&gt;</code>) or
+ * of a sitemap index (<code>&lt;sitemapindex&gt;</code>), plain or gzipped.
+ * The document is read with a StAX cursor and the entries are handed
+ * to a {@link Sink} in batches, the memory used does not depend on the 
+ * size of the sitemap. The sitemaps listed by an index are read when 
+ * their entry is met.
+ * 
+ * DTDs and external entities are disabled.
+ * 
+ * @author shake0
+ *
+ */
+public class SitemapReader {
+	
+	/**
+	 * A page listed by a sitemap
+	 */
+	public static class Entry {
+		
+		Entry(CompactUrl location, long lastModified) {
+			this.location     = location;
+			this.lastModified = lastModified;
+		}
+		
+		/** @return location of the page */
+		public CompactUrl getLocation()    { return location; }
+		/** @return <code>lastmod</code> in milliseconds since the epoch, -1 if missing */
+		public long       getLastModified(){ return lastModified; }
+		
+		@Override
+		public String toString() {
+			return location + ((lastModified < 0) ? "" : " " + lastModified);
+		}
+		
+		private final CompactUrl location;
+		private final long       lastModified;
+	}
+	
+	/**
+	 * Receives the entries of the sitemaps
+	 */
+	public static interface Sink {
+		
+		/**
+		 * @param batch next entries, the list is not reused
+		 * @return false to stop reading
+		 */
+		public boolean accept(List<Entry> batch);
+	}
+	
+	//--------------------------------------------
+	// Constructors
+	
+	/**
+	 * Reader opening the sitemaps with the plain JVM connections
+	 */
+	public SitemapReader() {
+		this(null);
+	}
+	
+	/**
+	 * Reader opening the sitemaps through the handler connections, 
+	 * with its resolver and retry policy.
+	 * @param handler handler making the connections
+	 */
+	public SitemapReader(CrawlerHandler handler) {
+		this.handler   = handler;
+		this.dictionary = (handler == null) ? HostDictionary.SHARED : handler.dictionary();
+		this.batchSize = 1000;
+		this.maxDepth  = 2;
+		this.factory   = XMLInputFactory.newInstance();
+		this.factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		this.factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+		this.factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+	}
+	
+	//--------------------------------------------
+	// Reading
+	
+	/**
+	 * Read a sitemap or a sitemap index
+	 * @param sitemap location of the sitemap
+	 * @param sink receiver of the entries
+	 * @return false if the sink stopped the reading
+	 * @throws IOException the sitemap cannot be downloaded or is not valid XML
+	 */
+	public boolean read(URL sitemap, Sink sink) throws IOException{
+		return read(sitemap, sink, 0);
+	}
+	
+	/**
+	 * Read a sitemap or a sitemap index from a stream, 
+	 * the stream is closed at the end.
+	 * @param in plain or gzipped sitemap
+	 * @param sink receiver of the entries
+	 * @return false if the sink stopped the reading
+	 * @throws IOException the stream is not valid XML
+	 */
+	public boolean read(InputStream in, Sink sink) throws IOException{
+		return read(in, sink, 0);
+	}
+	
+	private boolean read(URL sitemap, Sink sink, int depth) throws IOException{
+		HttpURLConnection connection = open(sitemap);
+		try {
+			return read(connection.getInputStream(), sink, depth);
+		} finally {
+			connection.disconnect();
+		}
+	}
+	
+	private HttpURLConnection open(URL sitemap) throws IOException{
+		if(handler == null)
+			return (HttpURLConnection) sitemap.openConnection();
+		try {
+			return handler.open(sitemap.toString());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted");
+		}
+	}
+	
+	private boolean read(InputStream in, Sink sink, int depth) throws IOException{
+		sitemaps++;
+		XMLStreamReader xml = null;
+		try {
+			xml = factory.createXMLStreamReader(decompress(in));
+			List<Entry> batch    = new ArrayList<>(batchSize);
+			String      location = null;
+			long        modified = -1;
+			// level in the current url or sitemap entry, 0 outside: only its
+			// direct children count, not the <image:loc> of an extension
+			int         level    = 0;
+			while(xml.hasNext()){
+				int event = xml.next();
+				if(event == XMLStreamConstants.START_ELEMENT){
+					String name = xml.getLocalName();
+					if(level == 0){
+						if("url".equals(name) || "sitemap".equals(name)){
+							level    = 1;
+							location = null;
+							modified = -1;
+						}
+					}
+					else if(level == 1 && "loc".equals(name))
+						location = xml.getElementText().trim();
+					else if(level == 1 && "lastmod".equals(name))
+						modified = parseDate(xml.getElementText().trim());
+					else
+						level++;
+				}
+				else if(event == XMLStreamConstants.END_ELEMENT && level > 1)
+					level--;
+				else if(event == XMLStreamConstants.END_ELEMENT && level == 1){
+					String name = xml.getLocalName();
+					level = 0;
+					if(location == null) continue;
+					if("url".equals(name)){
+						if(location.isEmpty()) continue;
+						batch.add(new Entry(CompactUrl.of(dictionary, location), modified));
+						entries++;
+						if(batch.size() >= batchSize){
+							if(! sink.accept(batch)) return false;
+							batch = new ArrayList<>(batchSize);
+						}
+					}
+					else if("sitemap".equals(name)){
+						// flush first, the child sitemap may be large
+						if(! batch.isEmpty()){
+							if(! sink.accept(batch)) return false;
+							batch = new ArrayList<>(batchSize);
+						}
+						if(! child(location, sink, depth)) return false;
+					}
+				}
+			}
+			return batch.isEmpty() || sink.accept(batch);
+		} catch (XMLStreamException e) {
+			throw new IOException("Invalid sitemap: " + e.getMessage(), e);
+		} finally {
+			if(xml != null){
+				try { xml.close(); } catch (XMLStreamException e) { }
+			}
+			in.close();
+		}
+	}
+	
+	/*
+	 * A broken sitemap of an index does not stop the others
+	 */
+	private boolean child(String location, Sink sink, int depth){
+		if(depth >= maxDepth){
+			System.err.println("Sitemap nested too deep: " + location);
+			return true;
+		}
+		try {
+			return read(new URL(location), sink, depth + 1);
+		} catch (MalformedURLException e) {
+			System.err.println(e.getLocalizedMessage());
+		} catch (IOException e) {
+			System.err.println(location + ": " + e);
+		}
+		return true;
+	}
+	
+	/*
+	 * Sitemaps are often served as .xml.gz, with or without
+	 * the Content-Encoding header. Look at the magic number.
+	 */
+	private static InputStream decompress(InputStream in) throws IOException{
+		BufferedInputStream buffered = new BufferedInputStream(in, 8192);
+		buffered.mark(2);
+		int b1 = buffered.read();
+		int b2 = buffered.read();
+		buffered.reset();
+		if(b1 == 0x1f && b2 == 0x8b)
+			return new BufferedInputStream(new GZIPInputStream(buffered, 8192), 8192);
+		return buffered;
+	}
+	
+	/**
+	 * Parse a W3C datetime: a date, or a date and time with a time zone
+	 * @param date <code>lastmod</code> value
+	 * @return milliseconds since the epoch, -1 if the date is not valid
+	 */
+	public static long parseDate(String date){
+		try {
+			if(date.length() <= 10)
+				return LocalDate.parse(date).atStartOfDay().toInstant(ZoneOffset.UTC).toEpochMilli();
+			return OffsetDateTime.parse(date).toInstant().toEpochMilli();
+		} catch (DateTimeParseException e) {
+			return -1;
+		}
+	}
+	
+	//--------------------------------------------
+	// Mutators
+	
+	/**
+	 * Set the number of entries handed to the sink at once
+	 * @param batchSize entries per batch
+	 * @return the calling object
+	 */
+	public SitemapReader setBatchSize(int batchSize){
+		if(batchSize > 0)
+			this.batchSize = batchSize;
+		return this;
+	}
+	
+	/**
+	 * Set how many sitemap indexes can be nested. The protocol does
+	 * not nest indexes, but some sites do.
+	 * @param maxDepth levels of indexes followed
+	 * @return the calling object
+	 */
+	public SitemapReader setMaxDepth(int maxDepth){
+		if(maxDepth >= 0)
+			this.maxDepth = maxDepth;
+		return this;
+	}
+	
+	/**
+	 * @return number of sitemaps read, indexes included
+	 */
+	public int getSitemapCount(){
+		return sitemaps;
+	}
+	
+	/**
+	 * @return number of entries read
+	 */
+	public long getEntryCount(){
+		return entries;
+	}
+	
+	private final CrawlerHandler  handler;
+	private final HostDictionary  dictionary;
+	private final XMLInputFactory factory;
+	private int                   batchSize;
+	private int                   maxDepth;
+	private int                   sitemaps;
+	private long                  entries;
+}
@@ -0,0 +1,442 @@
+package org.rexcrawler;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+
+/**
+ * String arena
+ * 
+ * An append-only list of strings stored as UTF-8 in large chunks, with
+ * an int offset per string. There is no object per string: a million 
+ * short matches cost a few chunks instead of a million String, char 
+ * arrays and list nodes. The strings are decoded when read.
+ * 
+ * Chunks can be allocated off-heap (direct buffers). A full chunk is
+ * never modified again, therefore {@link #addAll(Collection)} from another
+ * arena shares its chunks instead of copying the strings: reducing the 
+ * @Reduced arenas of the forked handlers costs one reference per chunk.
+ * Only the chunks less than half full, usually the last one, are copied:
+ * sharing them would leave the arena with many mostly empty chunks.
+ * The source arena stays valid and keeps appending in new chunks.
+ * 
+ * Use as a @Reduced field or in place of a <code>List&lt;String&gt;</code>,
+ * the forked handlers get an empty arena with the same settings.
+ * Not thread safe, like the other @Reduced containers.
+ * 
+ * @author shake0
+ * @see UniqueStringArena
+ */
+public class StringArena extends AbstractList<String> implements RandomAccess, Serializable {
+	private static final long serialVersionUID = 1L;
+	
+	/*
+	 * UTF-8 bytes and end offsets of consecutive strings
+	 */
+	static final class Chunk {
+		
+		Chunk(int capacity, boolean direct) {
+			this.data = direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+			this.ends = new int[16];
+		}
+		
+		boolean fits(int length){
+			return ! sealed && data.remaining() >= length;
+		}
+		
+		void add(CharSequence s, int length){
+			encode(data, s);
+			end();
+		}
+		
+		void add(byte[] bytes){
+			data.put(bytes);
+			end();
+		}
+		
+		/*
+		 * Copy the encoded i-th string of another chunk
+		 */
+		void add(Chunk from, int i){
+			ByteBuffer view = from.data.duplicate();
+			view.limit(from.ends[i]);
+			view.position(from.start(i));
+			data.put(view);
+			end();
+		}
+		
+		private void end(){
+			if(count == ends.length)
+				ends = Arrays.copyOf(ends, count * 2);
+			ends[count++] = data.position();
+		}
+		
+		int length(int i){
+			return ends[i] - start(i);
+		}
+		
+		int start(int i){
+			return (i == 0) ? 0 : ends[i - 1];
+		}
+		
+		String get(int i){
+			int start = start(i);
+			int length = ends[i] - start;
+			if(data.hasArray())
+				return new String(data.array(), data.arrayOffset() + start, length, StandardCharsets.UTF_8);
+			byte[] bytes = new byte[length];
+			ByteBuffer view = data.duplicate();
+			view.position(start);
+			view.get(bytes);
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+		
+		/*
+		 * Compare the i-th string with encoded bytes without decoding it
+		 */
+		boolean equals(int i, byte[] bytes){
+			int start = start(i);
+			if(ends[i] - start != bytes.length) return false;
+			for(int j = 0; j < bytes.length; j++)
+				if(data.get(start + j) != bytes[j]) return false;
+			return true;
+		}
+		
+		/*
+		 * No more appends, a mostly empty chunk is shrunk before being
+		 * shared, the direct ones too
+		 */
+		void seal(){
+			if(sealed) return;
+			sealed = true;
+			if(data.position() < data.capacity() / 2){
+				ByteBuffer used   = data.duplicate();
+				used.flip();
+				ByteBuffer shrunk = data.isDirect() ? ByteBuffer.allocateDirect(used.remaining()) 
+						: ByteBuffer.allocate(used.remaining());
+				shrunk.put(used);
+				data = shrunk;
+			}
+			ends = Arrays.copyOf(ends, count);
+		}
+		
+		int bytes(){
+			return data.capacity() + 4 * ends.length;
+		}
+		
+		ByteBuffer data;
+		int[]      ends;
+		int        count;
+		boolean    sealed;
+	}
+	
+	//--------------------------------------------
+	// Constructors
+	
+	/**
+	 * Heap arena with 64KB chunks
+	 */
+	public StringArena() {
+		this(DEFAULT_CHUNK, false);
+	}
+	
+	/**
+	 * @param chunkSize maximum bytes per chunk, larger strings get their own chunk
+	 * @param direct true to allocate the chunks off-heap
+	 */
+	public StringArena(int chunkSize, boolean direct) {
+		if(chunkSize < 64)
+			throw new IllegalArgumentException("Chunk size too small");
+		this.chunkSize = chunkSize;
+		this.direct    = direct;
+		this.chunks    = new ArrayList<>();
+		this.starts    = new int[8];
+	}
+	
+	/**
+	 * Empty arena with the same settings, used for the forked handlers
+	 * @return a new empty arena
+	 */
+	public StringArena emptyCopy(){
+		return new StringArena(chunkSize, direct);
+	}
+	
+	//--------------------------------------------
+	// List
+	
+	@Override
+	public boolean add(String s){
+		append(s, utf8Length(s));
+		return true;
+	}
+	
+	void append(CharSequence s, int length){
+		tail(length).add(s, length);
+		size++;
+		modCount++;
+	}
+	
+	/*
+	 * Append a string already encoded
+	 */
+	void append(byte[] bytes){
+		tail(bytes.length).add(bytes);
+		size++;
+		modCount++;
+	}
+	
+	/*
+	 * Chunk with room for length bytes
+	 */
+	private Chunk tail(int length){
+		Chunk tail = chunks.isEmpty() ? null : chunks.get(chunks.size() - 1);
+		if(tail == null || ! tail.fits(length)){
+			// small arenas (forked handlers) start with small chunks
+			int capacity = (tail == null) ? 1024 : Math.min(chunkSize, 2 * tail.data.capacity());
+			tail = newChunk(Math.max(capacity, length));
+		}
+		return tail;
+	}
+	
+	private Chunk newChunk(int capacity){
+		if(! chunks.isEmpty())
+			chunks.get(chunks.size() - 1).seal();
+		Chunk chunk = new Chunk(capacity, direct);
+		addChunk(chunk);
+		return chunk;
+	}
+	
+	private void addChunk(Chunk chunk){
+		if(chunks.size() == starts.length)
+			starts = Arrays.copyOf(starts, starts.length * 2);
+		starts[chunks.size()] = size;
+		chunks.add(chunk);
+	}
+	
+	/**
+	 * Append all the strings. The chunks of another arena are 
+	 * shared, the small ones are copied in the last chunk.
+	 */
+	@Override
+	public boolean addAll(Collection<? extends String> c){
+		if(! (c instanceof StringArena) || c instanceof UniqueStringArena || c == this)
+			return super.addAll(c);
+		StringArena other = (StringArena) c;
+		if(other.size == 0) return false;
+		for(Chunk chunk : other.chunks){
+			if(! chunk.sealed && chunk.data.position() < chunk.data.capacity() / 2){
+				for(int i = 0; i < chunk.count; i++){
+					tail(chunk.length(i)).add(chunk, i);
+					size++;
+				}
+			}
+			else {
+				if(! chunks.isEmpty())
+					chunks.get(chunks.size() - 1).seal();
+				chunk.seal();
+				addChunk(chunk);
+				size += chunk.count;
+			}
+		}
+		modCount++;
+		return true;
+	}
+	
+	@Override
+	public void add(int index, String element) {
+		if(index != size)
+			throw new UnsupportedOperationException("Append only");
+		add(element);
+	}
+	
+	@Override
+	public String get(int index){
+		if(index < 0 || index >= size)
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		int c = chunkOf(index);
+		return chunks.get(c).get(index - starts[c]);
+	}
+	
+	/*
+	 * Compare the index-th string with UTF-8 bytes
+	 */
+	boolean equals(int index, byte[] bytes){
+		int c = chunkOf(index);
+		return chunks.get(c).equals(index - starts[c], bytes);
+	}
+	
+	private int chunkOf(int index){
+		int c = Arrays.binarySearch(starts, 0, chunks.size(), index);
+		if(c < 0) c = -c - 2;
+		// skip the empty chunks sharing the same start
+		while(c + 1 < chunks.size() && starts[c + 1] <= index) c++;
+		return c;
+	}
+	
+	@Override
+	public int size(){
+		return size;
+	}
+	
+	@Override
+	public void clear() {
+		chunks.clear();
+		size = 0;
+		modCount++;
+	}
+	
+	@Override
+	public Iterator<String> iterator() {
+		return new Iterator<String>() {
+			@Override
+			public boolean hasNext() {
+				return chunk < chunks.size() && (index < chunks.get(chunk).count || skip());
+			}
+			
+			private boolean skip(){
+				while(++chunk < chunks.size()){
+					index = 0;
+					if(chunks.get(chunk).count > 0) return true;
+				}
+				return false;
+			}
+			
+			@Override
+			public String next() {
+				if(! hasNext()) throw new NoSuchElementException();
+				return chunks.get(chunk).get(index++);
+			}
+			
+			int chunk = 0;
+			int index = 0;
+		};
+	}
+	
+	//--------------------------------------------
+	// Metrics
+	
+	/**
+	 * @return number of chunks
+	 */
+	public int getChunkCount(){
+		return chunks.size();
+	}
+	
+	/**
+	 * Memory reserved by the chunks and their offsets, heap or direct.
+	 * Shared chunks are counted by every arena holding them.
+	 * @return reserved bytes
+	 */
+	public long getReservedBytes(){
+		long bytes = 0;
+		for(Chunk chunk : chunks)
+			bytes += chunk.bytes();
+		return bytes;
+	}
+	
+	/**
+	 * @return maximum bytes per chunk
+	 */
+	public int getChunkSize(){
+		return chunkSize;
+	}
+	
+	/**
+	 * @return true if the chunks are off-heap
+	 */
+	public boolean isDirect(){
+		return direct;
+	}
+	
+	//--------------------------------------------
+	// UTF-8
+	
+	static int utf8Length(CharSequence s){
+		int length = s.length();
+		int bytes  = length;
+		for(int i = 0; i < length; i++){
+			char c = s.charAt(i);
+			if(c >= 0x80){
+				if(c < 0x800) bytes += 1;
+				else if(Character.isHighSurrogate(c) && i + 1 < length 
+						&& Character.isLowSurrogate(s.charAt(i + 1))){ bytes += 2; i++; }
+				else bytes += 2;
+			}
+		}
+		return bytes;
+	}
+	
+	/*
+	 * Same bytes as String.getBytes(UTF_8), without the copy
+	 */
+	static void encode(ByteBuffer out, CharSequence s){
+		int length = s.length();
+		for(int i = 0; i < length; i++){
+			char c = s.charAt(i);
+			if(c < 0x80)
+				out.put((byte) c);
+			else if(c < 0x800){
+				out.put((byte) (0xc0 | (c >> 6)));
+				out.put((byte) (0x80 | (c & 0x3f)));
+			}
+			else if(Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))){
+				int cp = Character.toCodePoint(c, s.charAt(++i));
+				out.put((byte) (0xf0 | (cp >> 18)));
+				out.put((byte) (0x80 | ((cp >> 12) & 0x3f)));
+				out.put((byte) (0x80 | ((cp >> 6) & 0x3f)));
+				out.put((byte) (0x80 | (cp & 0x3f)));
+			}
+			else {
+				if(Character.isSurrogate(c)) c = '?'; // lone surrogate, as the JDK encoder
+				out.put((byte) (0xe0 | (c >> 12)));
+				out.put((byte) (0x80 | ((c >> 6) & 0x3f)));
+				out.put((byte) (0x80 | (c & 0x3f)));
+			}
+		}
+	}
+	
+	//--------------------------------------------
+	// Serialization, used by the distributed crawl
+	
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		out.writeInt(size);
+		for(Chunk chunk : chunks){
+			for(int i = 0; i < chunk.count; i++){
+				byte[] bytes = chunk.get(i).getBytes(StandardCharsets.UTF_8);
+				out.writeInt(bytes.length);
+				out.write(bytes);
+			}
+		}
+	}
+	
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		this.chunks = new ArrayList<>();
+		this.starts = new int[8];
+		int count = in.readInt();
+		for(int i = 0; i < count; i++){
+			byte[] bytes = new byte[in.readInt()];
+			in.readFully(bytes);
+			add(new String(bytes, StandardCharsets.UTF_8));
+		}
+	}
+	
+	private static final int DEFAULT_CHUNK = 64 * 1024;
+	private final int                 chunkSize;
+	private final boolean             direct;
+	private transient List<Chunk>     chunks;
+	private transient int[]           starts;
+	private transient int             size;
+}
@@ -0,0 +1,151 @@
+package org.rexcrawler;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Deduplicating string arena
+ * 
+ * A {@link StringArena} storing each distinct string once, in insertion
+ * order: {@link #add(String)} returns false for a string already present
+ * and {@link #contains(Object)} is a hash lookup. The hash table holds 
+ * one int per slot and one hash per string, no object per string.
+ * 
+ * Merging another arena copies its distinct strings, the chunks cannot
+ * be shared.
+ * 
+ * @author shake0
+ *
+ */
+public class UniqueStringArena extends StringArena {
+	private static final long serialVersionUID = 1L;
+	
+	/**
+	 * Heap arena with 64KB chunks
+	 */
+	public UniqueStringArena() {
+		super();
+	}
+	
+	/**
+	 * @param chunkSize maximum bytes per chunk
+	 * @param direct true to allocate the chunks off-heap
+	 * @see StringArena#StringArena(int, boolean)
+	 */
+	public UniqueStringArena(int chunkSize, boolean direct) {
+		super(chunkSize, direct);
+	}
+	
+	@Override
+	public StringArena emptyCopy() {
+		return new UniqueStringArena(getChunkSize(), isDirect());
+	}
+	
+	@Override
+	public boolean add(String s) {
+		int size = size();
+		return intern(s) == size;
+	}
+	
+	/**
+	 * Index of the string, added if absent. The index of a string 
+	 * never changes, it can be used as a dense integer id.
+	 * @param s string to intern
+	 * @return index of the string
+	 */
+	public int intern(String s) {
+		return intern(s.getBytes(StandardCharsets.UTF_8), s.hashCode());
+	}
+	
+	/**
+	 * Index of a string already encoded, added if absent. The caller
+	 * can encode outside the lock guarding the arena.
+	 * @param bytes UTF-8 bytes of the string
+	 * @param hash {@link String#hashCode()} of the string
+	 * @return index of the string
+	 */
+	public int intern(byte[] bytes, int hash) {
+		if(table == null) init();
+		int slot = find(hash, bytes);
+		if(table[slot] != 0) return table[slot] - 1;
+		int index = size();
+		append(bytes);
+		if(index == hashes.length)
+			hashes = Arrays.copyOf(hashes, index * 2);
+		hashes[index] = hash;
+		table[slot]   = index + 1;
+		if(2 * size() > table.length) rehash();
+		return index;
+	}
+	
+	@Override
+	public boolean addAll(Collection<? extends String> c) {
+		boolean modified = false;
+		for(String s : c)
+			modified |= add(s);
+		return modified;
+	}
+	
+	@Override
+	public boolean contains(Object o) {
+		if(! (o instanceof String) || table == null) return false;
+		String s = (String) o;
+		return table[find(s.hashCode(), s.getBytes(StandardCharsets.UTF_8))] != 0;
+	}
+	
+	@Override
+	public int indexOf(Object o) {
+		if(! (o instanceof String) || table == null) return -1;
+		String s = (String) o;
+		return table[find(s.hashCode(), s.getBytes(StandardCharsets.UTF_8))] - 1;
+	}
+	
+	@Override
+	public int lastIndexOf(Object o) {
+		return indexOf(o);
+	}
+	
+	@Override
+	public void clear() {
+		super.clear();
+		table = null;
+	}
+	
+	/*
+	 * Slot holding the string, or the empty slot where it goes
+	 */
+	private int find(int hash, byte[] bytes){
+		int mask = table.length - 1;
+		int slot = mix(hash) & mask;
+		while(table[slot] != 0){
+			int index = table[slot] - 1;
+			if(hashes[index] == hash && equals(index, bytes)) return slot;
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+	
+	private void rehash(){
+		int[] grown = new int[table.length * 2];
+		int   mask  = grown.length - 1;
+		for(int index = 0; index < size(); index++){
+			int slot = mix(hashes[index]) & mask;
+			while(grown[slot] != 0) slot = (slot + 1) & mask;
+			grown[slot] = index + 1;
+		}
+		table = grown;
+	}
+	
+	private void init(){
+		table  = new int[16];
+		hashes = new int[8];
+	}
+	
+	private static int mix(int hash){
+		return hash ^ (hash >>> 16);
+	}
+	
+	private transient int[] table;
+	private transient int[] hashes;
+}
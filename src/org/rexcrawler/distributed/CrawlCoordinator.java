@@ -0,0 +1,239 @@
+package org.rexcrawler.distributed;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.rexcrawler.CompactUrl;
+import org.rexcrawler.HostDictionary;
+import org.rexcrawler.CrawlerHandler;
+
+/**
+ * Crawl coordinator
+ * 
+ * Drives a set of {@link CrawlNode}: sends each seed to the node owning
+ * its host, waits for the distributed search to terminate and merges the
+ * @Reduced results of every node into the local handler.
+ * 
+ * The search is over when all the nodes are idle and every forwarded
+ * link has been received, as observed by two consecutive polls returning
+ * the same counters.
+ * 
+ * Only the @Reduced collections are merged, and their content must be
+ * <code>Serializable</code>.
+ * 
+ * @author shake0
+ *
+ */
+public class CrawlCoordinator {
+	
+	/**
+	 * @param handler handler receiving the merged results, same class of the nodes' handlers
+	 * @param nodes addresses of all the nodes, in the order given to {@link CrawlNode#join(List, int)}
+	 */
+	public CrawlCoordinator(CrawlerHandler handler, List<InetSocketAddress> nodes) {
+		this.handler      = handler;
+		this.nodes        = new ArrayList<>(nodes);
+		this.partitioner  = new HostPartitioner(nodes.size());
+		this.pollInterval = 20;
+	}
+	
+	/**
+	 * Set the interval between two status polls
+	 * @param pollInterval milliseconds between polls
+	 * @return the calling object
+	 */
+	public CrawlCoordinator setPollInterval(long pollInterval){
+		if(pollInterval > 0)
+			this.pollInterval = pollInterval;
+		return this;
+	}
+	
+	/**
+	 * Crawl the targets on the nodes and merge the results in the handler.
+	 * The call returns when the distributed search is over.
+	 * 
+	 * @param targets list of the URL to parse
+	 * @throws IOException a node is unreachable
+	 */
+	public void run(URL ... targets) throws IOException{
+		connect();
+		try {
+			// seed
+			HostDictionary     hosts = new HostDictionary();
+			List<List<String>> seeds = new ArrayList<>();
+			for(int i = 0; i < nodes.size(); i++) seeds.add(new ArrayList<String>());
+			for(URL target : targets)
+				seeds.get(partitioner.owner(CompactUrl.of(hosts, target.toString()))).add(target.toString());
+			long seeded = 0;
+			for(int i = 0; i < nodes.size(); i++){
+				if(seeds.get(i).isEmpty()) continue;
+				Protocol.writeLinks(outputs[i], seeds.get(i));
+				seeded += seeds.get(i).size();
+			}
+			awaitQuiescence(seeded);
+			collect();
+		} finally {
+			close();
+		}
+	}
+	
+	/**
+	 * Shut down all the nodes
+	 * @throws IOException a node is unreachable
+	 */
+	public void shutdown() throws IOException{
+		for(InetSocketAddress node : nodes){
+			try (Socket socket = Protocol.connect(node)){
+				DataOutputStream out = Protocol.output(socket);
+				out.writeByte(Protocol.SHUTDOWN);
+				out.flush();
+			}
+		}
+	}
+	
+	/**
+	 * Get the number of links followed by all the nodes in the last search
+	 * @return number of links followed
+	 */
+	public long getFollowedLinkCount(){
+		return this.followed;
+	}
+	
+	/**
+	 * Get the number of links forwarded between the nodes 
+	 * and lost by a broken connection, in the last search
+	 * @return number of links lost
+	 */
+	public long getLostLinkCount(){
+		return this.lost;
+	}
+	
+	private void awaitQuiescence(long seeded) throws IOException{
+		long[] previous = null;
+		while(true){
+			boolean[] idle    = new boolean[1];
+			long[]    current = status(idle);
+			current[0] += seeded;
+			if(idle[0] && current[0] == current[1]){
+				if(Arrays.equals(previous, current)) {
+					this.followed = current[2];
+					this.lost     = current[3];
+					if(this.lost > 0)
+						System.err.println(this.lost + " links lost between the nodes");
+					return;
+				}
+				previous = current;
+			}
+			else 
+				previous = null;
+			try { Thread.sleep(pollInterval); }
+			catch (InterruptedException e) { 
+				Thread.currentThread().interrupt(); 
+				throw new IOException("Interrupted while waiting for the nodes"); 
+			}
+		}
+	}
+	
+	private void collect() throws IOException{
+		for(int i = 0; i < nodes.size(); i++){
+			outputs[i].writeByte(Protocol.COLLECT);
+			outputs[i].flush();
+			Object[] values = (Object[]) Protocol.readObject(inputs[i], handler.getClass());
+			try {
+				handler.mergeReduced(values);
+			} catch (CloneNotSupportedException | IllegalAccessException 
+					| IllegalArgumentException | InvocationTargetException e) {
+				throw new IOException("Cannot merge the results of " + nodes.get(i), e);
+			}
+		}
+	}
+	
+	private void connect() throws IOException{
+		this.sockets = new Socket[nodes.size()];
+		this.inputs  = new DataInputStream[nodes.size()];
+		this.outputs = new DataOutputStream[nodes.size()];
+		for(int i = 0; i < nodes.size(); i++){
+			sockets[i] = Protocol.connect(nodes.get(i));
+			inputs[i]  = Protocol.input(sockets[i]);
+			outputs[i] = Protocol.output(sockets[i]);
+		}
+		// nodes may have crawled before
+		this.baseline = null;
+		this.baseline = status(new boolean[1]);
+	}
+	
+	/*
+	 * Counters of all the nodes since the start of this search:
+	 * sent, received, followed and lost links
+	 */
+	private long[] status(boolean[] idle) throws IOException{
+		long[] counters = new long[4];
+		idle[0] = true;
+		for(int i = 0; i < nodes.size(); i++){
+			outputs[i].writeByte(Protocol.STATUS);
+			outputs[i].flush();
+			idle[0] &= inputs[i].readBoolean();
+			for(int c = 0; c < counters.length; c++)
+				counters[c] += inputs[i].readLong();
+		}
+		if(baseline != null)
+			for(int c = 0; c < counters.length; c++)
+				counters[c] -= baseline[c];
+		return counters;
+	}
+	
+	private void close(){
+		for(Socket socket : sockets){
+			try { if(socket != null) socket.close(); }
+			catch (IOException e) { }
+		}
+	}
+	
+	static List<InetSocketAddress> parseAddresses(String[] args, int from){
+		List<InetSocketAddress> addresses = new ArrayList<>();
+		for(int i = from; i < args.length; i++){
+			int colon = args[i].lastIndexOf(':');
+			addresses.add(new InetSocketAddress(args[i].substring(0, colon), 
+					Integer.parseInt(args[i].substring(colon + 1))));
+		}
+		return addresses;
+	}
+	
+	/**
+	 * Run a search on standalone nodes, print the followed links and shut the nodes down.
+	 * <pre>
+	 * CrawlCoordinator handlerClass target host:port [host:port ...]
+	 * </pre>
+	 */
+	public static void main(String[] args) throws Exception {
+		if(args.length < 3){
+			System.err.println("usage: CrawlCoordinator handlerClass target host:port [host:port ...]");
+			System.exit(1);
+		}
+		CrawlerHandler   handler     = (CrawlerHandler) Class.forName(args[0]).getDeclaredConstructor().newInstance();
+		CrawlCoordinator coordinator = new CrawlCoordinator(handler, parseAddresses(args, 2));
+		coordinator.run(new URL(args[1]));
+		System.out.println("Followed links: " + coordinator.getFollowedLinkCount());
+		coordinator.shutdown();
+	}
+	
+	private final CrawlerHandler          handler;
+	private final List<InetSocketAddress> nodes;
+	private final HostPartitioner         partitioner;
+	private long                          pollInterval;
+	private long                          followed;
+	private long                          lost;
+	private long[]                        baseline;
+	// connections
+	private Socket[]           sockets;
+	private DataInputStream[]  inputs;
+	private DataOutputStream[] outputs;
+}
@@ -0,0 +1,441 @@
+package org.rexcrawler.distributed;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+
+import org.rexcrawler.CompactUrl;
+import org.rexcrawler.Crawler;
+import org.rexcrawler.CrawlerHandler;
+import org.rexcrawler.HostDictionary;
+import org.rexcrawler.LinkRouter;
+
+/**
+ * Crawl node
+ * 
+ * A node of a distributed search. Each node owns a partition of the 
+ * hosts (@see HostPartitioner) and crawls only their URLs with its own
+ * {@link Crawler}. Discovered links owned by other nodes are batched 
+ * and forwarded to their owner over TCP, the owner discards the URLs
+ * it already visited.
+ * 
+ * The node is driven by a {@link CrawlCoordinator} which seeds the
+ * search, detects its termination and collects the @Reduced results.
+ * 
+ * Usage:
+ * <pre>
+ * CrawlNode node = new CrawlNode(new MyHandler());
+ * node.bind(address);          // start listening
+ * node.join(addresses, index); // start crawling
+ * </pre>
+ * 
+ * @author shake0
+ *
+ */
+public class CrawlNode implements LinkRouter {
+	
+	//--------------------------------------------
+	// Constructors
+	
+	public CrawlNode(CrawlerHandler handler) {
+		this.crawler      = new Crawler().setHandler(handler).setLinkRouter(this);
+		this.inbox        = new LinkedList<>();
+		this.seen         = Collections.newSetFromMap(new ConcurrentHashMap<CompactUrl, Boolean>());
+		this.hosts        = new HostDictionary();
+		this.parallel     = 0;
+		this.batchSize    = 64;
+		this.searchLength = Integer.MAX_VALUE / 2;
+		this.running      = true;
+	}
+	
+	/**
+	 * Get the local crawler, to set chunk size, resolver and so on.
+	 * The link router of this crawler must not be replaced.
+	 * 
+	 * @return local crawler
+	 */
+	public Crawler getCrawler(){
+		return this.crawler;
+	}
+	
+	/**
+	 * Set the number of threads of the local crawler, 
+	 * the pool is created by {@link #join(List, int)}
+	 * @param parallel number of threads, 0 for all the cores
+	 * @return the calling object
+	 */
+	public CrawlNode setParallelism(int parallel){
+		this.parallel = parallel;
+		return this;
+	}
+	
+	/**
+	 * Set the number of links buffered for a node before forwarding them.
+	 * The buffers are flushed anyway at the end of each local search.
+	 * @param batchSize links per message
+	 * @return the calling object
+	 */
+	public CrawlNode setBatchSize(int batchSize){
+		if(batchSize > 0)
+			this.batchSize = batchSize;
+		return this;
+	}
+	
+	/**
+	 * Set the maximum number of links followed by this node
+	 * @param searchLength maximum number of followed links
+	 * @return the calling object
+	 */
+	public CrawlNode setSearchLength(int searchLength){
+		if(searchLength > 0)
+			this.searchLength = searchLength;
+		return this;
+	}
+	
+	//--------------------------------------------
+	// Lifecycle
+	
+	/**
+	 * Start listening for links and coordinator requests.
+	 * @param address local address, port 0 for any free port
+	 * @return the bound address
+	 * @throws IOException cannot bind the address
+	 */
+	public InetSocketAddress bind(InetSocketAddress address) throws IOException{
+		this.server = new ServerSocket();
+		this.server.bind(address);
+		Thread acceptor = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				accept();
+			}
+		}, "rexcrawler-node-accept");
+		acceptor.setDaemon(true);
+		acceptor.start();
+		return (InetSocketAddress) this.server.getLocalSocketAddress();
+	}
+	
+	/**
+	 * Join the cluster and start crawling the received links.
+	 * @param nodes addresses of all the nodes, the same list on every node
+	 * @param index position of this node in <code>nodes</code>
+	 */
+	public void join(List<InetSocketAddress> nodes, int index){
+		this.nodes       = new ArrayList<>(nodes);
+		this.index       = index;
+		this.partitioner = new HostPartitioner(nodes.size());
+		this.peers       = new DataOutputStream[nodes.size()];
+		this.outbox      = new ArrayList<>(nodes.size());
+		this.pool        = (parallel > 0) ? new ForkJoinPool(parallel) : new ForkJoinPool();
+		for(int i = 0; i < nodes.size(); i++)
+			this.outbox.add(new ArrayList<String>());
+		this.worker      = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				work();
+			}
+		}, "rexcrawler-node-" + index);
+		this.worker.start();
+	}
+	
+	/**
+	 * Stop crawling and close all the connections
+	 */
+	public void shutdown(){
+		synchronized (inbox) {
+			running = false;
+			inbox.notifyAll();
+		}
+		try { if(server != null) server.close(); }
+		catch (IOException e) { }
+		if(peers != null){
+			synchronized (peers) {
+				for(DataOutputStream peer : peers)
+					try { if(peer != null) peer.close(); }
+					catch (IOException e) { }
+			}
+		}
+		if(pool != null)
+			pool.shutdown();
+	}
+	
+	/**
+	 * Wait for the node to shut down
+	 * @throws InterruptedException
+	 */
+	public void awaitTermination() throws InterruptedException{
+		if(worker != null) worker.join();
+	}
+	
+	//--------------------------------------------
+	// Crawling
+	
+	private void work(){
+		while(true){
+			List<String> batch;
+			synchronized (inbox) {
+				while(running && inbox.isEmpty()){
+					try { inbox.wait(); }
+					catch (InterruptedException e) { running = false; }
+				}
+				if(! running) return;
+				batch = new ArrayList<>(inbox);
+				inbox.clear();
+				busy  = true;
+			}
+			try {
+				crawl(batch);
+				flush();
+			} catch (IOException e) {
+				System.err.println(e.getLocalizedMessage());
+			} finally {
+				synchronized (inbox) {
+					busy = false;
+				}
+			}
+		}
+	}
+	
+	private void crawl(List<String> batch){
+		int remaining;
+		synchronized (inbox) {
+			remaining = searchLength - (int) followed;
+		}
+		if(remaining <= 0) return;
+		List<URL> targets = new ArrayList<>(batch.size());
+		for(String url : batch){
+			try { targets.add(new URL(url)); }
+			catch (MalformedURLException e) { System.err.println(e.getLocalizedMessage()); }
+		}
+		if(targets.isEmpty()) return;
+		crawler.setSearchLength(remaining);
+		crawler.run(pool, targets.toArray(new URL[0]));
+		synchronized (inbox) {
+			followed += crawler.getFollowedLinkCount();
+		}
+	}
+	
+	@Override
+	public List<CompactUrl> route(List<CompactUrl> links) {
+		List<CompactUrl> local = new ArrayList<>(links.size());
+		for(CompactUrl link : links){
+			int owner = partitioner.owner(link);
+			if(owner == index){
+				// the links of a search use its own dictionary
+				if(seen.add(CompactUrl.of(hosts, link.toString()))) local.add(link);
+			}
+			else
+				forward(owner, link.toString());
+		}
+		return local;
+	}
+	
+	/*
+	 * Links received from other nodes and the coordinator
+	 */
+	private void receive(List<String> links){
+		List<String> fresh = new ArrayList<>(links.size());
+		for(String link : links)
+			if(seen.add(CompactUrl.of(hosts, link))) fresh.add(link);
+		synchronized (inbox) {
+			received += links.size();
+			inbox.addAll(fresh);
+			inbox.notifyAll();
+		}
+	}
+	
+	private void forward(int owner, String link){
+		List<String> batch = null;
+		synchronized (outbox) {
+			List<String> buffer = outbox.get(owner);
+			buffer.add(link);
+			if(buffer.size() >= batchSize){
+				batch = new ArrayList<>(buffer);
+				buffer.clear();
+			}
+		}
+		if(batch != null){
+			try { send(owner, batch); }
+			catch (IOException e) { System.err.println(e.getLocalizedMessage()); }
+		}
+	}
+	
+	private void flush() throws IOException{
+		for(int owner = 0; owner < outbox.size(); owner++){
+			List<String> batch;
+			synchronized (outbox) {
+				batch = new ArrayList<>(outbox.get(owner));
+				outbox.get(owner).clear();
+			}
+			if(! batch.isEmpty()) send(owner, batch);
+		}
+	}
+	
+	/*
+	 * A broken connection is replaced once, the links of a batch 
+	 * that cannot be delivered are counted as lost.
+	 */
+	private void send(int owner, List<String> batch) throws IOException{
+		synchronized (peers) {
+			try {
+				write(owner, batch);
+			} catch (IOException e) {
+				disconnect(owner);
+				try {
+					write(owner, batch);
+				} catch (IOException again) {
+					disconnect(owner);
+					synchronized (inbox) {
+						lost += batch.size();
+					}
+					throw again;
+				}
+			}
+		}
+		synchronized (inbox) {
+			sent += batch.size();
+		}
+	}
+	
+	private void write(int owner, List<String> batch) throws IOException{
+		if(peers[owner] == null)
+			peers[owner] = Protocol.output(Protocol.connect(nodes.get(owner)));
+		Protocol.writeLinks(peers[owner], batch);
+	}
+	
+	private void disconnect(int owner){
+		try { if(peers[owner] != null) peers[owner].close(); }
+		catch (IOException e) { }
+		peers[owner] = null;
+	}
+	
+	//--------------------------------------------
+	// Server
+	
+	private void accept(){
+		while(! server.isClosed()){
+			try {
+				final Socket socket = server.accept();
+				socket.setTcpNoDelay(true);
+				Thread reader = new Thread(new Runnable() {
+					@Override
+					public void run() {
+						serve(socket);
+					}
+				}, "rexcrawler-node-reader");
+				reader.setDaemon(true);
+				reader.start();
+			} catch (IOException e) {
+				// closed
+			}
+		}
+	}
+	
+	private void serve(Socket socket){
+		try {
+			DataInputStream  in  = Protocol.input(socket);
+			DataOutputStream out = Protocol.output(socket);
+			while(true){
+				byte type = in.readByte();
+				switch(type){
+				case Protocol.LINKS:
+					receive(Protocol.readLinks(in));
+					break;
+				case Protocol.STATUS:
+					synchronized (inbox) {
+						out.writeBoolean(! busy && inbox.isEmpty());
+						out.writeLong(sent);
+						out.writeLong(received);
+						out.writeLong(followed);
+						out.writeLong(lost);
+					}
+					out.flush();
+					break;
+				case Protocol.COLLECT:
+					// the results of a search are collected once
+					Object[] values;
+					synchronized (crawler.getHandler()) {
+						values = crawler.getHandler().takeReducedValues();
+					}
+					Protocol.writeObject(out, values);
+					break;
+				case Protocol.SHUTDOWN:
+					shutdown();
+					return;
+				default:
+					throw new IOException("Unknown message " + type);
+				}
+			}
+		} catch (EOFException | SocketException e) {
+			// peer gone
+		} catch (IOException | IllegalAccessException e) {
+			System.err.println(e.getLocalizedMessage());
+		} finally {
+			try { socket.close(); }
+			catch (IOException e) { }
+		}
+	}
+	
+	//--------------------------------------------
+	// Standalone node
+	
+	/**
+	 * Run a node in its own JVM until the coordinator shuts it down.
+	 * <pre>
+	 * CrawlNode handlerClass index host:port [host:port ...]
+	 * </pre>
+	 * The handler class needs a public constructor without arguments.
+	 */
+	public static void main(String[] args) throws Exception {
+		if(args.length < 3){
+			System.err.println("usage: CrawlNode handlerClass index host:port [host:port ...]");
+			System.exit(1);
+		}
+		CrawlerHandler          handler = (CrawlerHandler) Class.forName(args[0]).getDeclaredConstructor().newInstance();
+		int                     index   = Integer.parseInt(args[1]);
+		List<InetSocketAddress> nodes   = CrawlCoordinator.parseAddresses(args, 2);
+		CrawlNode               node    = new CrawlNode(handler);
+		node.bind(nodes.get(index));
+		node.join(nodes, index);
+		node.awaitTermination();
+	}
+	
+	// configuration
+	private final Crawler   crawler;
+	private int             parallel;
+	private int             batchSize;
+	private int             searchLength;
+	// cluster
+	private List<InetSocketAddress> nodes;
+	private int                     index;
+	private HostPartitioner         partitioner;
+	private ServerSocket            server;
+	private DataOutputStream[]      peers;
+	private List<List<String>>      outbox;
+	private Thread                  worker;
+	private ForkJoinPool            pool;
+	// state, guarded by inbox
+	private final List<String>    inbox;
+	private final Set<CompactUrl> seen;
+	private final HostDictionary  hosts;
+	private boolean               running;
+	private boolean               busy;
+	private long                  sent;
+	private long                  received;
+	private long                  followed;
+	private long                  lost;
+}
@@ -0,0 +1,49 @@
+package org.rexcrawler.distributed;
+
+import org.rexcrawler.CompactUrl;
+
+/**
+ * Assigns each host to a node.
+ * 
+ * The partition key is the URL prefix (scheme and authority), hashed
+ * with <code>String.hashCode()</code> which is stable across JVMs.
+ * All the URLs of a host are therefore crawled by the same node.
+ * 
+ * @author shake0
+ *
+ */
+public class HostPartitioner {
+	
+	/**
+	 * @param nodes number of nodes
+	 */
+	public HostPartitioner(int nodes) {
+		if(nodes <= 0)
+			throw new IllegalArgumentException("At least one node is required");
+		this.nodes = nodes;
+	}
+	
+	/**
+	 * Get the node owning the URL
+	 * @param url compact URL
+	 * @return node index
+	 */
+	public int owner(CompactUrl url){
+		return owner(url.getPrefix());
+	}
+	
+	/**
+	 * Get the node owning the prefix
+	 * @param prefix scheme and authority
+	 * @return node index
+	 */
+	public int owner(String prefix){
+		return (prefix.hashCode() & Integer.MAX_VALUE) % this.nodes;
+	}
+	
+	public int getNodeCount(){
+		return this.nodes;
+	}
+	
+	private final int nodes;
+}
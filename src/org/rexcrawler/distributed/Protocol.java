@@ -0,0 +1,136 @@
+package org.rexcrawler.distributed;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/*
+ * Wire format shared by nodes and coordinator.
+ * 
+ * Every message starts with its type byte:
+ *  LINKS    int n, n * UTF url                   (no reply)
+ *  STATUS   reply: boolean idle, long sent, long received, long followed, long lost
+ *  COLLECT  reply: int length, serialized Object[] of @Reduced values,
+ *           the values are cleared on the node
+ *  SHUTDOWN (no reply)
+ *
+ * The sizes sent by a peer are bounded, and only the classes of the
+ * @Reduced values are deserialized: see filter(Class).
+ */
+final class Protocol {
+	
+	static final byte LINKS    = 1;
+	static final byte STATUS   = 2;
+	static final byte COLLECT  = 3;
+	static final byte SHUTDOWN = 4;
+	
+	static final int  CONNECT_TIMEOUT = 10000;
+	static final int  MAX_LINKS       = 1 << 20;
+	static final int  MAX_OBJECT      = 1 << 28;
+	
+	private Protocol() { }
+	
+	/*
+	 * Connection to a node, retried until the node is listening
+	 */
+	static Socket connect(InetSocketAddress address) throws IOException{
+		long deadline = System.currentTimeMillis() + CONNECT_TIMEOUT;
+		while(true){
+			try {
+				Socket socket = new Socket();
+				socket.setTcpNoDelay(true);
+				socket.connect(address, CONNECT_TIMEOUT);
+				return socket;
+			} catch (IOException e) {
+				if(System.currentTimeMillis() > deadline) throw e;
+				try { Thread.sleep(50); }
+				catch (InterruptedException ie) { Thread.currentThread().interrupt(); throw e; }
+			}
+		}
+	}
+	
+	static DataOutputStream output(Socket socket) throws IOException{
+		return new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+	}
+	
+	static DataInputStream input(Socket socket) throws IOException{
+		return new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+	}
+	
+	static void writeLinks(DataOutputStream out, Collection<String> links) throws IOException{
+		out.writeByte(LINKS);
+		out.writeInt(links.size());
+		for(String link : links)
+			out.writeUTF(link);
+		out.flush();
+	}
+	
+	static List<String> readLinks(DataInputStream in) throws IOException{
+		int count = in.readInt();
+		if(count < 0 || count > MAX_LINKS)
+			throw new IOException("Invalid link count " + count);
+		// the strings are read before they are allocated
+		List<String> links = new ArrayList<>(Math.min(count, 1024));
+		for(int i = 0; i < count; i++)
+			links.add(in.readUTF());
+		return links;
+	}
+	
+	static void writeObject(DataOutputStream out, Object value) throws IOException{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream    oos   = new ObjectOutputStream(bytes);
+		oos.writeObject(value);
+		oos.close();
+		out.writeInt(bytes.size());
+		bytes.writeTo(out);
+		out.flush();
+	}
+	
+	/*
+	 * Object sent by a node running the handler class
+	 */
+	static Object readObject(DataInputStream in, Class<?> handler) throws IOException{
+		int length = in.readInt();
+		if(length < 0 || length > MAX_OBJECT)
+			throw new IOException("Invalid object length " + length);
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes));
+		ois.setObjectInputFilter(filter(handler));
+		try {
+			return ois.readObject();
+		} catch (ClassNotFoundException e) {
+			throw new IOException(e);
+		} finally {
+			ois.close();
+		}
+	}
+	
+	/*
+	 * Allow-list of the @Reduced values: the boxed values and the
+	 * collections of the JDK, the classes of the project and those of
+	 * the handler package. Anything else is rejected.
+	 */
+	static ObjectInputFilter filter(Class<?> handler){
+		String own = handler.getPackage() == null || handler.getPackage().getName().isEmpty() 
+				? handler.getName() + "*" : handler.getPackage().getName() + ".*";
+		return ObjectInputFilter.Config.createFilter(
+				"java.lang.Object;java.lang.String;java.lang.Number;java.lang.Enum;"
+				+ "java.lang.Boolean;java.lang.Character;java.lang.Byte;java.lang.Short;"
+				+ "java.lang.Integer;java.lang.Long;java.lang.Float;java.lang.Double;"
+				+ "java.util.*;java.util.concurrent.*;java.util.concurrent.atomic.*;"
+				+ "org.rexcrawler.**;" + own + ";!*");
+	}
+}
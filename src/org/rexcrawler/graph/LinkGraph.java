@@ -0,0 +1,273 @@
+package org.rexcrawler.graph;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import org.rexcrawler.UniqueStringArena;
+
+/**
+ * Link graph
+ *
+ * Immutable graph of the links between the URLs of a crawl, in
+ * compressed sparse rows: the links of the URL <code>v</code> are
+ * <code>targets[offsets[v] .. offsets[v + 1]]</code>, sorted and without
+ * duplicates. The reverse graph is stored the same way, the in- and
+ * out-degree of a URL are two array reads.
+ *
+ * A graph of <code>n</code> URLs and <code>m</code> links takes
+ * <code>8(n + m)</code> bytes plus the URL strings.
+ *
+ * @author shake0
+ * @see LinkGraphCollector#build()
+ */
+public final class LinkGraph {
+
+	private LinkGraph(UniqueStringArena urls, int[] outOffsets, int[] outTargets, int[] inOffsets, int[] inSources) {
+		this.urls       = urls;
+		this.outOffsets = outOffsets;
+		this.outTargets = outTargets;
+		this.inOffsets  = inOffsets;
+		this.inSources  = inSources;
+	}
+
+	/*
+	 * Sort and deduplicate the rows, then build the reverse graph
+	 */
+	static LinkGraph compact(UniqueStringArena urls, int n, int[] offsets, int[] targets){
+		int[] rows = new int[n + 1];
+		int   size = 0;
+		for(int v = 0; v < n; v++){
+			int from = offsets[v], to = offsets[v + 1];
+			Arrays.sort(targets, from, to);
+			rows[v] = size;
+			for(int i = from; i < to; i++)
+				if(i == from || targets[i] != targets[i - 1])
+					targets[size++] = targets[i];
+		}
+		rows[n] = size;
+		int[] out = Arrays.copyOf(targets, size);
+
+		// transpose, the sources come sorted
+		int[] inOffsets = new int[n + 1];
+		for(int i = 0; i < size; i++)
+			inOffsets[out[i] + 1]++;
+		for(int v = 0; v < n; v++)
+			inOffsets[v + 1] += inOffsets[v];
+		int[] inSources = new int[size];
+		int[] next      = Arrays.copyOf(inOffsets, n);
+		for(int v = 0; v < n; v++)
+			for(int i = rows[v]; i < rows[v + 1]; i++)
+				inSources[next[out[i]]++] = v;
+		return new LinkGraph(urls, rows, out, inOffsets, inSources);
+	}
+
+	//--------------------------------------------
+	// Queries
+
+	/**
+	 * @return number of URL
+	 */
+	public int size(){
+		return outOffsets.length - 1;
+	}
+
+	/**
+	 * @return number of distinct links
+	 */
+	public int getEdgeCount(){
+		return outTargets.length;
+	}
+
+	/**
+	 * Get the URL of an id
+	 * @param id URL id
+	 * @return URL
+	 */
+	public String getUrl(int id){
+		checkId(id);
+		synchronized (urls) {
+			return urls.get(id);
+		}
+	}
+
+	/**
+	 * Get the id of a URL
+	 * @param url location
+	 * @return id, -1 if the URL is not in the graph
+	 */
+	public int getId(String url){
+		int id;
+		synchronized (urls) {
+			id = urls.indexOf(url);
+		}
+		return (id < size()) ? id : -1;
+	}
+
+	/**
+	 * @param id URL id
+	 * @return number of distinct links of the URL
+	 */
+	public int getOutDegree(int id){
+		checkId(id);
+		return outOffsets[id + 1] - outOffsets[id];
+	}
+
+	/**
+	 * @param id URL id
+	 * @return number of distinct URLs linking the URL
+	 */
+	public int getInDegree(int id){
+		checkId(id);
+		return inOffsets[id + 1] - inOffsets[id];
+	}
+
+	/**
+	 * @param id URL id
+	 * @return sorted ids linked by the URL
+	 */
+	public int[] getOutLinks(int id){
+		checkId(id);
+		return Arrays.copyOfRange(outTargets, outOffsets[id], outOffsets[id + 1]);
+	}
+
+	/**
+	 * @param id URL id
+	 * @return sorted ids linking the URL
+	 */
+	public int[] getInLinks(int id){
+		checkId(id);
+		return Arrays.copyOfRange(inSources, inOffsets[id], inOffsets[id + 1]);
+	}
+
+	private void checkId(int id){
+		if(id < 0 || id >= size())
+			throw new IndexOutOfBoundsException("Id: " + id + ", size: " + size());
+	}
+
+	//--------------------------------------------
+	// Ranking
+
+	/**
+	 * PageRank on the common pool
+	 * @see #pageRank(ForkJoinPool, double, int, double)
+	 */
+	public double[] pageRank(double damping, int iterations, double tolerance){
+		return pageRank(ForkJoinPool.commonPool(), damping, iterations, tolerance);
+	}
+
+	/**
+	 * Compute the PageRank of the URLs by power iteration. Each iteration
+	 * pulls the rank of the in-links in parallel, over ranges of URLs;
+	 * the rank of the URLs without links is spread over all the URLs.
+	 *
+	 * @param pool pool running the iterations
+	 * @param damping probability to follow a link, usually 0.85
+	 * @param iterations maximum number of iterations
+	 * @param tolerance stop when the L1 change of an iteration is below
+	 * @return rank of each id, the ranks sum to 1
+	 */
+	public double[] pageRank(ForkJoinPool pool, double damping, int iterations, double tolerance){
+		if(damping < 0 || damping > 1)
+			throw new IllegalArgumentException("Damping out of [0, 1]");
+		int n = size();
+		double[] rank = new double[n];
+		if(n == 0) return rank;
+		Arrays.fill(rank, 1.0 / n);
+		double[] contribution = new double[n];
+		double[] next         = new double[n];
+		for(int k = 0; k < iterations; k++){
+			double dangling = pool.invoke(new Sweep(this, Sweep.SCATTER, rank, contribution, null, 0, 0, n));
+			double base     = (1 - damping) / n + damping * dangling / n;
+			double delta    = pool.invoke(new Sweep(this, Sweep.GATHER, rank, contribution, next, damping, base, n));
+			double[] swap = rank; rank = next; next = swap;
+			if(delta < tolerance) break;
+		}
+		return rank;
+	}
+
+	/*
+	 * One parallel pass of PageRank over a range of ids.
+	 * SCATTER: contribution of each URL to its links, returns the dangling rank.
+	 * GATHER : new rank from the in-links, returns the L1 change.
+	 */
+	private static final class Sweep extends RecursiveTask<Double> {
+		private static final long serialVersionUID = 1L;
+		static final int SCATTER   = 0;
+		static final int GATHER    = 1;
+		static final int THRESHOLD = 4096;
+
+		Sweep(LinkGraph graph, int mode, double[] rank, double[] contribution, double[] next,
+				double damping, double base, int n) {
+			this(graph, mode, rank, contribution, next, damping, base, 0, n);
+		}
+
+		private Sweep(LinkGraph graph, int mode, double[] rank, double[] contribution, double[] next,
+				double damping, double base, int from, int to) {
+			this.graph        = graph;
+			this.mode         = mode;
+			this.rank         = rank;
+			this.contribution = contribution;
+			this.next         = next;
+			this.damping      = damping;
+			this.base         = base;
+			this.from         = from;
+			this.to           = to;
+		}
+
+		@Override
+		protected Double compute() {
+			if(to - from > THRESHOLD){
+				int  middle = (from + to) >>> 1;
+				Sweep left  = new Sweep(graph, mode, rank, contribution, next, damping, base, from, middle);
+				Sweep right = new Sweep(graph, mode, rank, contribution, next, damping, base, middle, to);
+				left.fork();
+				double sum = right.compute();
+				return sum + left.join();
+			}
+			double sum = 0;
+			if(mode == SCATTER){
+				for(int v = from; v < to; v++){
+					int degree = graph.outOffsets[v + 1] - graph.outOffsets[v];
+					if(degree == 0){
+						contribution[v] = 0;
+						sum += rank[v];
+					}
+					else
+						contribution[v] = rank[v] / degree;
+				}
+			}
+			else {
+				for(int v = from; v < to; v++){
+					double pulled = 0;
+					for(int i = graph.inOffsets[v]; i < graph.inOffsets[v + 1]; i++)
+						pulled += contribution[graph.inSources[i]];
+					next[v] = base + damping * pulled;
+					sum += Math.abs(next[v] - rank[v]);
+				}
+			}
+			return sum;
+		}
+
+		private final LinkGraph graph;
+		private final int       mode;
+		private final double[]  rank;
+		private final double[]  contribution;
+		private final double[]  next;
+		private final double    damping;
+		private final double    base;
+		private final int       from;
+		private final int       to;
+	}
+
+	@Override
+	public String toString() {
+		return "urls=" + size() + " links=" + getEdgeCount();
+	}
+
+	private final UniqueStringArena urls;
+	private final int[]             outOffsets;
+	private final int[]             outTargets;
+	private final int[]             inOffsets;
+	private final int[]             inSources;
+}
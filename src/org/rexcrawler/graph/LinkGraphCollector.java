@@ -0,0 +1,180 @@
+package org.rexcrawler.graph;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.rexcrawler.UniqueStringArena;
+
+/**
+ * Link graph collector
+ *
+ * Collects the links of the pages parsed by a crawl and builds their
+ * {@link LinkGraph}. Every URL, page or link, gets a dense integer id;
+ * the URLs are stored once in a {@link UniqueStringArena}. The edges
+ * are appended to a primitive buffer owned by the worker thread, the
+ * workers never share a buffer. {@link #build()} merges the buffers into
+ * the compressed sparse rows of the graph.
+ *
+ * The collector is set on the handler and shared by the forked handlers.
+ * <pre>
+ * LinkGraphCollector collector = new LinkGraphCollector();
+ * handler.setLinkGraph(collector);
+ * crawler.run(targets);
+ * LinkGraph graph = collector.build();
+ * </pre>
+ *
+ * @author shake0
+ * @see org.rexcrawler.CrawlerHandler#setLinkGraph(LinkGraphCollector)
+ */
+public class LinkGraphCollector {
+
+	/*
+	 * Edges of a worker, source and target interleaved
+	 */
+	static final class EdgeBuffer {
+
+		EdgeBuffer() {
+			this.edges = new int[256];
+		}
+
+		synchronized void add(int source, int[] targets, int count){
+			if(size + 2 * count > edges.length){
+				int[] grown = new int[Math.max(edges.length * 2, size + 2 * count)];
+				System.arraycopy(edges, 0, grown, 0, size);
+				edges = grown;
+			}
+			for(int i = 0; i < count; i++){
+				edges[size++] = source;
+				edges[size++] = targets[i];
+			}
+		}
+
+		int[] edges;
+		int   size;
+	}
+
+	public LinkGraphCollector() {
+		this.urls    = new UniqueStringArena();
+		this.buffers = new ArrayList<>();
+		this.local   = new ThreadLocal<EdgeBuffer>() {
+			@Override
+			protected EdgeBuffer initialValue() {
+				EdgeBuffer buffer = new EdgeBuffer();
+				synchronized (buffers) {
+					buffers.add(buffer);
+				}
+				return buffer;
+			}
+		};
+	}
+
+	/**
+	 * Record the links of a page. Duplicated links are kept until
+	 * the graph is built.
+	 * @param page page location
+	 * @param links links of the page
+	 */
+	public void collect(String page, List<String> links){
+		int      count   = links.size();
+		int[]    targets = new int[count];
+		int[]    hashes  = new int[count];
+		byte[][] encoded = new byte[count][];
+		// encode and hash outside the lock, the lock only covers the lookups
+		int i = 0;
+		for(String link : links){
+			encoded[i] = link.getBytes(StandardCharsets.UTF_8);
+			hashes[i++] = link.hashCode();
+		}
+		byte[] bytes = page.getBytes(StandardCharsets.UTF_8);
+		int    hash  = page.hashCode();
+		int    source;
+		synchronized (urls) {
+			source = urls.intern(bytes, hash);
+			for(i = 0; i < count; i++)
+				targets[i] = urls.intern(encoded[i], hashes[i]);
+		}
+		local.get().add(source, targets, targets.length);
+	}
+
+	/**
+	 * Get the id of a URL
+	 * @param url page or link location
+	 * @return id, -1 if the URL was never collected
+	 */
+	public int getId(String url){
+		synchronized (urls) {
+			return urls.indexOf(url);
+		}
+	}
+
+	/**
+	 * @return number of URL collected
+	 */
+	public int size(){
+		synchronized (urls) {
+			return urls.size();
+		}
+	}
+
+	/**
+	 * @return number of edges collected, duplicates included
+	 */
+	public long getEdgeCount(){
+		long count = 0;
+		synchronized (buffers) {
+			for(EdgeBuffer buffer : buffers)
+				synchronized (buffer) {
+					count += buffer.size / 2;
+				}
+		}
+		return count;
+	}
+
+	/**
+	 * Build the graph of the links collected so far. The collector
+	 * can go on collecting, the graph is not affected.
+	 * @return compressed link graph
+	 */
+	public LinkGraph build(){
+		int n;
+		synchronized (urls) {
+			n = urls.size();
+		}
+		List<EdgeBuffer> snapshot;
+		synchronized (buffers) {
+			snapshot = new ArrayList<>(buffers);
+		}
+		// count the out-degrees, then fill the rows. The edges and 
+		// the ids added after the snapshot are left out
+		int[] sizes   = new int[snapshot.size()];
+		int[] offsets = new int[n + 1];
+		for(int b = 0; b < sizes.length; b++){
+			EdgeBuffer buffer = snapshot.get(b);
+			synchronized (buffer) {
+				sizes[b] = buffer.size;
+				for(int i = 0; i < sizes[b]; i += 2)
+					if(buffer.edges[i] < n && buffer.edges[i + 1] < n)
+						offsets[buffer.edges[i] + 1]++;
+			}
+		}
+		for(int v = 0; v < n; v++)
+			offsets[v + 1] += offsets[v];
+		int[] targets = new int[offsets[n]];
+		int[] next    = new int[n];
+		System.arraycopy(offsets, 0, next, 0, n);
+		for(int b = 0; b < sizes.length; b++){
+			EdgeBuffer buffer = snapshot.get(b);
+			synchronized (buffer) {
+				for(int i = 0; i < sizes[b]; i += 2)
+					if(buffer.edges[i] < n && buffer.edges[i + 1] < n)
+						targets[next[buffer.edges[i]]++] = buffer.edges[i + 1];
+			}
+		}
+		return LinkGraph.compact(urls, n, offsets, targets);
+	}
+
+	private final UniqueStringArena      urls;
+	private final List<EdgeBuffer>       buffers;
+	private final ThreadLocal<EdgeBuffer> local;
+}
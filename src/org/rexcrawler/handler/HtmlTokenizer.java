@@ -0,0 +1,354 @@
+package org.rexcrawler.handler;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * HTML tokenizer
+ * 
+ * A forgiving, SAX-style tokenizer: the document is scanned once and 
+ * every start tag, end tag and run of text is reported to a {@link Handler}.
+ * No tree is built. Comments, doctypes and processing instructions are 
+ * skipped, the content of <code>script</code> and <code>style</code> is 
+ * skipped as raw text. A '&lt;' not starting a tag is part of the text.
+ * 
+ * Tag and attribute names are reported in lower case, attribute values
+ * have their entities decoded. The text is reported as a region of the 
+ * document, see {@link #appendText(StringBuilder, CharSequence, int, int)}.
+ * 
+ * @author shake0
+ *
+ */
+public class HtmlTokenizer {
+	
+	/**
+	 * Receives the tokens
+	 */
+	public static interface Handler {
+		
+		/**
+		 * @param name tag name, lower case
+		 * @param attributes attributes of the tag, only valid during the call
+		 * @param selfClosing the tag ends with "/&gt;"
+		 */
+		public void startTag(String name, Attributes attributes, boolean selfClosing);
+		
+		/**
+		 * @param name tag name, lower case
+		 */
+		public void endTag(String name);
+		
+		/**
+		 * @param html document
+		 * @param start first character of the text
+		 * @param end end of the text, excluded
+		 */
+		public void text(CharSequence html, int start, int end);
+	}
+	
+	/**
+	 * Attributes of a start tag. The object is reused for every tag.
+	 */
+	public static final class Attributes {
+		
+		Attributes() {
+			this.names  = new String[8];
+			this.values = new String[8];
+			this.bounds = new int[16];
+		}
+		
+		/** @return number of attributes */
+		public int    size()            { return size; }
+		/** @return name of the i-th attribute, lower case */
+		public String getName(int i)    { return names[i]; }
+		
+		/** 
+		 * The value is decoded on the first request
+		 * @return value of the i-th attribute, empty if the attribute has no value 
+		 */
+		public String getValue(int i){
+			if(values[i] == null)
+				values[i] = unescape(html, bounds[2 * i], bounds[2 * i + 1]);
+			return values[i];
+		}
+		
+		/**
+		 * @param name attribute name, lower case
+		 * @return value of the attribute, null if missing
+		 */
+		public String get(String name){
+			for(int i = 0; i < size; i++)
+				if(names[i].equals(name)) return getValue(i);
+			return null;
+		}
+		
+		void reset(String html){
+			this.html = html;
+			this.size = 0;
+		}
+		
+		void add(String name, int start, int end){
+			if(size == names.length){
+				names  = Arrays.copyOf(names,  size * 2);
+				values = Arrays.copyOf(values, size * 2);
+				bounds = Arrays.copyOf(bounds, size * 4);
+			}
+			names [size]         = name;
+			values[size]         = null;
+			bounds[2 * size]     = start;
+			bounds[2 * size + 1] = end;
+			size++;
+		}
+		
+		private String   html;
+		private String[] names;
+		private String[] values;
+		private int[]    bounds;
+		private int      size;
+	}
+	
+	public HtmlTokenizer(Handler handler) {
+		this.handler    = handler;
+		this.attributes = new Attributes();
+		this.names      = new String[NAMES];
+	}
+	
+	//--------------------------------------------
+	// Tokenizer
+	
+	/**
+	 * Scan the whole document
+	 * @param html document
+	 */
+	public void tokenize(String html){
+		final int n         = html.length();
+		int       i         = 0;
+		int       textStart = 0;
+		while(i < n){
+			int lt = html.indexOf('<', i);
+			if(lt < 0 || lt + 1 >= n) break;
+			char c = html.charAt(lt + 1);
+			if(c == '!' || c == '?'){
+				text(html, textStart, lt);
+				int end = html.startsWith("<!--", lt) ? html.indexOf("-->", lt + 4) : html.indexOf('>', lt + 2);
+				i = textStart = (end < 0) ? n : end + ((html.charAt(end) == '>') ? 1 : 3);
+			}
+			else if(c == '/' && lt + 2 < n && isLetter(html.charAt(lt + 2))){
+				text(html, textStart, lt);
+				int nameEnd = nameEnd(html, lt + 2);
+				handler.endTag(name(html, lt + 2, nameEnd));
+				int end = html.indexOf('>', nameEnd);
+				i = textStart = (end < 0) ? n : end + 1;
+			}
+			else if(isLetter(c)){
+				text(html, textStart, lt);
+				i = textStart = startTag(html, lt + 1);
+			}
+			else
+				i = lt + 1; // plain '<'
+		}
+		text(html, textStart, n);
+	}
+	
+	/*
+	 * Returns the position after the tag, and after the raw text for
+	 * script and style
+	 */
+	private int startTag(String html, int from){
+		final int n       = html.length();
+		int       nameEnd = nameEnd(html, from);
+		String    name    = name(html, from, nameEnd);
+		boolean   closing = false;
+		attributes.reset(html);
+		int i = nameEnd;
+		while(i < n){
+			char c = html.charAt(i);
+			if(c == '>'){ i++; break; }
+			if(c == '/'){
+				closing = (i + 1 < n && html.charAt(i + 1) == '>');
+				i++;
+				continue;
+			}
+			if(isSpace(c)){ i++; continue; }
+			// name
+			int start = i;
+			while(i < n && (c = html.charAt(i)) != '=' && c != '>' && c != '/' && ! isSpace(c)) i++;
+			String attribute   = name(html, start, i);
+			int    valueStart  = i;
+			int    valueEnd    = i;
+			while(i < n && isSpace(html.charAt(i))) i++;
+			if(i < n && html.charAt(i) == '='){
+				i++;
+				while(i < n && isSpace(html.charAt(i))) i++;
+				if(i < n && ((c = html.charAt(i)) == '"' || c == '\'')){
+					int end = html.indexOf(c, i + 1);
+					if(end < 0) end = n;
+					valueStart = i + 1;
+					valueEnd   = end;
+					i = Math.min(n, end + 1);
+				}
+				else {
+					valueStart = i;
+					while(i < n && (c = html.charAt(i)) != '>' && ! isSpace(c)) i++;
+					valueEnd   = i;
+				}
+			}
+			closing = false;
+			attributes.add(attribute, valueStart, valueEnd);
+		}
+		handler.startTag(name, attributes, closing);
+		if(! closing && (name.equals("script") || name.equals("style")))
+			return skipRawText(html, i, name);
+		return i;
+	}
+	
+	private static int skipRawText(String html, int from, String name){
+		int i = from;
+		while((i = html.indexOf("</", i)) >= 0){
+			if(html.regionMatches(true, i + 2, name, 0, name.length()))
+				return i; // the end tag is reported normally
+			i += 2;
+		}
+		return html.length();
+	}
+	
+	private void text(CharSequence html, int start, int end){
+		if(end > start)
+			handler.text(html, start, end);
+	}
+	
+	private static int nameEnd(String html, int from){
+		int i = from;
+		char c;
+		while(i < html.length() && (c = html.charAt(i)) != '>' && c != '/' && ! isSpace(c)) i++;
+		return i;
+	}
+	
+	/*
+	 * Lower case name, the same names come back on every 
+	 * page so they are cached instead of allocated
+	 */
+	private String name(String html, int start, int end){
+		int hash = 0;
+		for(int i = start; i < end; i++)
+			hash = 31 * hash + lower(html.charAt(i));
+		int    slot   = (hash ^ (hash >>> 16)) & (NAMES - 1);
+		String cached = names[slot];
+		if(cached != null && cached.length() == end - start){
+			int i = 0;
+			while(i < end - start && cached.charAt(i) == lower(html.charAt(start + i))) i++;
+			if(i == end - start) return cached;
+		}
+		String name = html.substring(start, end).toLowerCase(Locale.ROOT);
+		names[slot] = name;
+		return name;
+	}
+	
+	private static char lower(char c){
+		return (c >= 'A' && c <= 'Z') ? (char) (c + 32) : c;
+	}
+	
+	private static boolean isLetter(char c){
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+	}
+	
+	static boolean isSpace(char c){
+		return c == ' ' || c == '\n' || c == '\t' || c == '\r' || c == '\f';
+	}
+	
+	//--------------------------------------------
+	// Text
+	
+	/**
+	 * Append a region of text with the entities decoded and the 
+	 * white spaces collapsed. A leading space is not appended to 
+	 * an empty builder.
+	 * 
+	 * @param sb destination
+	 * @param html document
+	 * @param start first character
+	 * @param end end of the region, excluded
+	 */
+	public static void appendText(StringBuilder sb, CharSequence html, int start, int end){
+		boolean space = sb.length() == 0 || sb.charAt(sb.length() - 1) == ' ';
+		for(int i = start; i < end; i++){
+			char c = html.charAt(i);
+			if(c == '&'){
+				int next = entity(sb, html, i, end);
+				if(next > i){ i = next - 1; space = false; continue; }
+			}
+			if(isSpace(c) || c == '\u00a0'){
+				if(! space) sb.append(' ');
+				space = true;
+			}
+			else {
+				sb.append(c);
+				space = false;
+			}
+		}
+	}
+	
+	/**
+	 * Decode the entities of a region
+	 * @param html document
+	 * @param start first character
+	 * @param end end of the region, excluded
+	 * @return decoded text
+	 */
+	public static String unescape(String html, int start, int end){
+		int amp = start;
+		while(amp < end && html.charAt(amp) != '&') amp++;
+		if(amp == end) return html.substring(start, end);
+		StringBuilder sb = new StringBuilder(end - start);
+		sb.append(html, start, amp);
+		for(int i = amp; i < end; i++){
+			char c = html.charAt(i);
+			if(c == '&'){
+				int next = entity(sb, html, i, end);
+				if(next > i){ i = next - 1; continue; }
+			}
+			sb.append(c);
+		}
+		return sb.toString();
+	}
+	
+	/*
+	 * Decode the entity at 'amp', returns the position after
+	 * it or 'amp' if it is not a known entity
+	 */
+	private static int entity(StringBuilder sb, CharSequence html, int amp, int end){
+		int semi = -1;
+		for(int i = amp + 1; i < end && i < amp + 10; i++)
+			if(html.charAt(i) == ';'){ semi = i; break; }
+		if(semi < 0) return amp;
+		String name = html.subSequence(amp + 1, semi).toString();
+		int    code;
+		if(name.startsWith("#x") || name.startsWith("#X")){
+			try { code = Integer.parseInt(name.substring(2), 16); }
+			catch (NumberFormatException e) { return amp; }
+		}
+		else if(name.startsWith("#")){
+			try { code = Integer.parseInt(name.substring(1)); }
+			catch (NumberFormatException e) { return amp; }
+		}
+		else {
+			switch(name){
+			case "amp":  code = '&'; break;
+			case "lt":   code = '<'; break;
+			case "gt":   code = '>'; break;
+			case "quot": code = '"'; break;
+			case "apos": code = '\''; break;
+			case "nbsp": code = 0xa0; break;
+			default:     return amp;
+			}
+		}
+		if(! Character.isValidCodePoint(code)) return amp;
+		sb.appendCodePoint(code);
+		return semi + 1;
+	}
+	
+	private static final int NAMES = 512;
+	private final Handler    handler;
+	private final Attributes attributes;
+	private final String[]   names;
+}
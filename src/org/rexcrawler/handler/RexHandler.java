@@ -3,7 +3,6 @@ package org.rexcrawler.handler;
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -12,10 +11,15 @@ import java.util.regex.Pattern;
 
 import org.rexcrawler.CrawlerHandler;
 import org.rexcrawler.Page;
+import org.rexcrawler.StringArena;
 
 /**
  * A common handler based on regular expression.
  * This class may parse the same page multiple times.
+ * 
+ * If a result publisher is set, the matches are streamed 
+ * to it instead of being collected, otherwise they are
+ * stored in compact {@link StringArena}.
  * @author shake0
  *
  */
@@ -27,11 +31,11 @@ public class RexHandler extends CrawlerHandler{
 	private class Filter {
 		
 		public Filter(int group) {
-			this.results = new LinkedList<>();
+			this.results = new StringArena();
 			this.group   = group;
 		}
 		
-		List<String> results;
+		StringArena  results;
 		int          group;
 	}
 	
@@ -79,7 +83,7 @@ public class RexHandler extends CrawlerHandler{
 	 * @return
 	 */
 	public List<String> getResults(){
-		List<String> results = new LinkedList<>();
+		StringArena results = new StringArena();
 		for(Filter value : this.filters.values())
 			results.addAll(value.results);
 		return results;
@@ -91,11 +95,15 @@ public class RexHandler extends CrawlerHandler{
 		for(Entry<Pattern, Filter> filter : filters.entrySet()){
 			Pattern      key     = filter.getKey();
 			int          group   = filter.getValue().group;
-			List<String> results = filter.getValue().results;
+			StringArena  results = filter.getValue().results;
 			
 			match = key.matcher(page.getContent());
-			while(match.find())
-				results.add(match.group(group));
+			while(match.find()){
+				if(getResultPublisher() != null)
+					emit(match.group(group));
+				else
+					results.add(match.group(group));
+			}
 		}
 		return true;
 	}
@@ -106,15 +114,17 @@ public class RexHandler extends CrawlerHandler{
 	@Override
 	protected Object clone() throws CloneNotSupportedException {
 		RexHandler handler =(RexHandler) super.clone();
-		// A new Map for each thread 
+		// A new Map for each thread, same patterns
 		handler.filters    = new HashMap<>();
+		for(Entry<Pattern, Filter> entry : this.filters.entrySet())
+			handler.filters.put(entry.getKey(), new Filter(entry.getValue().group));
 		return handler;
 	}
 	
 	@Override
 	protected void reduce(CrawlerHandler other) throws IllegalAccessException,
 			IllegalArgumentException, InvocationTargetException {
-		// Reducing the Map
+		// Reducing the Map, the arenas share their chunks
 		RexHandler handler = (RexHandler) other;
 		for(Entry<Pattern, Filter> entry : handler.filters.entrySet()){
 			if(this.filters.containsKey(entry.getKey()))
@@ -0,0 +1,233 @@
+package org.rexcrawler.handler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import org.rexcrawler.handler.HtmlTokenizer.Attributes;
+
+/**
+ * Compiled selector
+ * 
+ * A small subset of the CSS selectors: a list of compound selectors
+ * separated by spaces (descendant combinator). A compound selector 
+ * is made of:
+ * <ul>
+ * <li>an optional tag name or <code>*</code></li>
+ * <li><code>.class</code>, any number</li>
+ * <li><code>#id</code></li>
+ * <li><code>[attribute]</code> or <code>[attribute=value]</code>, 
+ * the value may be quoted and contain spaces</li>
+ * </ul>
+ * For instance <code>div#main article.post a[rel=next]</code>.
+ * 
+ * The selector is a chain of states: state <code>s</code> means the
+ * first <code>s</code> steps matched an ancestor. The states reached
+ * by an element are a bit set, see {@link #advance(long, String, Attributes)}.
+ * 
+ * @author shake0
+ *
+ */
+public final class Selector {
+	
+	/*
+	 * Compound selector
+	 */
+	static final class Step {
+		
+		boolean matches(String name, Attributes attributes){
+			if(tag != null && ! tag.equals(name)) return false;
+			if(id != null && ! id.equals(attributes.get("id"))) return false;
+			if(classes.length > 0){
+				String value = attributes.get("class");
+				if(value == null) return false;
+				for(String cl : classes)
+					if(! hasToken(value, cl)) return false;
+			}
+			for(int i = 0; i < attributeNames.length; i++){
+				String value = attributes.get(attributeNames[i]);
+				if(value == null) return false;
+				if(attributeValues[i] != null && ! attributeValues[i].equals(value)) return false;
+			}
+			return true;
+		}
+		
+		private static boolean hasToken(String list, String token){
+			int from = 0;
+			while((from = list.indexOf(token, from)) >= 0){
+				int end = from + token.length();
+				if((from == 0 || HtmlTokenizer.isSpace(list.charAt(from - 1)))
+						&& (end == list.length() || HtmlTokenizer.isSpace(list.charAt(end))))
+					return true;
+				from = end;
+			}
+			return false;
+		}
+		
+		String   tag;
+		String   id;
+		String[] classes;
+		String[] attributeNames;
+		String[] attributeValues;
+	}
+	
+	private Selector(String source, Step[] steps) {
+		this.source = source;
+		this.steps  = steps;
+	}
+	
+	/**
+	 * Compile a selector
+	 * @param selector selector source
+	 * @return compiled selector
+	 * @throws IllegalArgumentException the selector is not valid or has more than 62 steps
+	 */
+	public static Selector compile(String selector){
+		List<Step> steps = new ArrayList<>();
+		int i = 0;
+		int n = selector.length();
+		while(i < n){
+			if(Character.isWhitespace(selector.charAt(i))){
+				i++;
+				continue;
+			}
+			// the spaces of an attribute selector do not end the compound
+			int start = i;
+			while(i < n && ! Character.isWhitespace(selector.charAt(i))){
+				if(selector.charAt(i) == '['){
+					int close = close(selector, i);
+					if(close < 0)
+						throw new IllegalArgumentException("Invalid selector: " + selector);
+					i = close + 1;
+				}
+				else i++;
+			}
+			steps.add(step(selector, selector.substring(start, i)));
+		}
+		if(steps.isEmpty() || steps.size() > 62)
+			throw new IllegalArgumentException("Invalid selector: " + selector);
+		return new Selector(selector, steps.toArray(new Step[0]));
+	}
+	
+	private static Step step(String selector, String compound){
+		Step         step   = new Step();
+		List<String> cls    = new ArrayList<>();
+		List<String> names  = new ArrayList<>();
+		List<String> values = new ArrayList<>();
+		int i = 0;
+		int n = compound.length();
+		int end = token(compound, 0);
+		if(end > 0){
+			String tag = compound.substring(0, end).toLowerCase(Locale.ROOT);
+			step.tag = tag.equals("*") ? null : tag;
+			i = end;
+		}
+		while(i < n){
+			char c = compound.charAt(i);
+			if(c == '.' || c == '#'){
+				end = token(compound, i + 1);
+				if(end == i + 1) 
+					throw new IllegalArgumentException("Invalid selector: " + selector);
+				if(c == '.') cls.add(compound.substring(i + 1, end));
+				else         step.id = compound.substring(i + 1, end);
+				i = end;
+			}
+			else if(c == '['){
+				int close = close(compound, i);
+				if(close < 0)
+					throw new IllegalArgumentException("Invalid selector: " + selector);
+				String attribute = compound.substring(i + 1, close);
+				int    eq        = attribute.indexOf('=');
+				if(eq < 0){
+					names .add(attribute.trim().toLowerCase(Locale.ROOT));
+					values.add(null);
+				}
+				else {
+					String value = attribute.substring(eq + 1).trim();
+					if(value.length() >= 2 && (value.charAt(0) == '"' || value.charAt(0) == '\'')
+							&& value.charAt(value.length() - 1) == value.charAt(0))
+						value = value.substring(1, value.length() - 1);
+					names .add(attribute.substring(0, eq).trim().toLowerCase(Locale.ROOT));
+					values.add(value);
+				}
+				i = close + 1;
+			}
+			else
+				throw new IllegalArgumentException("Invalid selector: " + selector);
+		}
+		step.classes         = cls.toArray(new String[0]);
+		step.attributeNames  = names.toArray(new String[0]);
+		step.attributeValues = values.toArray(new String[0]);
+		return step;
+	}
+	
+	/*
+	 * Index of the ']' closing the attribute selector at from, 
+	 * skipping the quoted values, -1 if none
+	 */
+	private static int close(String source, int from){
+		char quote = 0;
+		for(int i = from + 1; i < source.length(); i++){
+			char c = source.charAt(i);
+			if(quote != 0){
+				if(c == quote) quote = 0;
+			}
+			else if(c == '"' || c == '\'') quote = c;
+			else if(c == ']') return i;
+		}
+		return -1;
+	}
+	
+	private static int token(String compound, int from){
+		int i = from;
+		char c;
+		while(i < compound.length() && (c = compound.charAt(i)) != '.' && c != '#' && c != '[') i++;
+		return i;
+	}
+	
+	//--------------------------------------------
+	// Evaluation
+	
+	/**
+	 * States of the document root
+	 * @return initial state set
+	 */
+	public long start(){
+		return 1L;
+	}
+	
+	/**
+	 * States of an element given the states of its parent.
+	 * A step is never taken twice on the same element.
+	 * @param states states of the parent, without {@link #accepting()}
+	 * @param name tag name
+	 * @param attributes tag attributes
+	 * @return states of the element, {@link #accepting()} included if the element matches
+	 */
+	public long advance(long states, String name, Attributes attributes){
+		long next    = states;
+		long pending = states;
+		while(pending != 0){
+			int s = Long.numberOfTrailingZeros(pending);
+			pending &= pending - 1;
+			if(steps[s].matches(name, attributes))
+				next |= 1L << (s + 1);
+		}
+		return next;
+	}
+	
+	/**
+	 * @return bit of the state reached when all the steps matched
+	 */
+	public long accepting(){
+		return 1L << steps.length;
+	}
+	
+	@Override
+	public String toString() {
+		return source;
+	}
+	
+	private final String source;
+	private final Step[] steps;
+}
@@ -0,0 +1,286 @@
+package org.rexcrawler.handler;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+
+import org.rexcrawler.CrawlerHandler;
+import org.rexcrawler.Page;
+import org.rexcrawler.Reduced;
+import org.rexcrawler.StringArena;
+import org.rexcrawler.handler.HtmlTokenizer.Attributes;
+
+/**
+ * A handler extracting the text or an attribute of the elements
+ * matching a {@link Selector}.
+ * 
+ * Each page is scanned once by an {@link HtmlTokenizer}, whatever 
+ * the number of selectors, and nested elements are matched 
+ * correctly, unlike {@link RexHandler#addNode(String)}. Unclosed
+ * elements end with their parent. 
+ * 
+ * If a result publisher is set, the matches are streamed 
+ * to it instead of being collected.
+ * 
+ * @author shake0
+ *
+ */
+public class SelectorHandler extends CrawlerHandler {
+	
+	/**
+	 * Value extracted by a selector
+	 */
+	public static class Match implements Serializable {
+		private static final long serialVersionUID = 1L;
+		
+		public Match(String name, String value) {
+			this.name  = name;
+			this.value = value;
+		}
+		
+		/** @return name of the selector */
+		public String getName() { return name; }
+		/** @return extracted text or attribute */
+		public String getValue(){ return value; }
+		
+		@Override
+		public String toString() {
+			return name + "=" + value;
+		}
+		
+		private final String name;
+		private final String value;
+	}
+	
+	/*
+	 * Selector and what to extract
+	 */
+	private static class Rule {
+		
+		public Rule(String name, Selector selector, String attribute) {
+			this.name      = name;
+			this.selector  = selector;
+			this.attribute = attribute;
+		}
+		
+		final String   name;
+		final Selector selector;
+		final String   attribute;
+	}
+	
+	public SelectorHandler() {
+		this.rules   = new ArrayList<>();
+		this.matches = new LinkedList<>();
+	}
+	
+	/**
+	 * Collect the text of the matching elements
+	 * @param name name of the results
+	 * @param selector selector of the elements
+	 * @return the calling object
+	 * @see Selector
+	 */
+	public SelectorHandler select(String name, String selector){
+		return select(name, selector, null);
+	}
+	
+	/**
+	 * Collect an attribute of the matching elements, 
+	 * elements without the attribute are skipped.
+	 * @param name name of the results
+	 * @param selector selector of the elements
+	 * @param attribute attribute to collect, null for the text
+	 * @return the calling object
+	 * @see Selector
+	 */
+	public SelectorHandler select(String name, String selector, String attribute){
+		rules.add(new Rule(name, Selector.compile(selector), 
+				(attribute == null) ? null : attribute.toLowerCase(Locale.ROOT)));
+		return this;
+	}
+	
+	/**
+	 * Get the values collected under a name
+	 * @param name name of the results
+	 * @return list of values
+	 */
+	public List<String> getResult(String name){
+		List<String> results = new StringArena();
+		for(Match match : this.matches)
+			if(match.getName().equals(name)) results.add(match.getValue());
+		return results;
+	}
+	
+	/**
+	 * Get all the matches
+	 * @return list of matches
+	 */
+	public List<Match> getResults(){
+		return this.matches;
+	}
+	
+	@Override
+	public boolean parsePage(Page page) throws IOException {
+		for(Match match : extract(page.getContent())){
+			if(getResultPublisher() != null)
+				emit(match);
+			else
+				matches.add(match);
+		}
+		return true;
+	}
+	
+	/**
+	 * Run the selectors on a document
+	 * @param html document
+	 * @return matches in document order of their end
+	 */
+	public List<Match> extract(String html){
+		Evaluation evaluation = new Evaluation();
+		new HtmlTokenizer(evaluation).tokenize(html);
+		evaluation.close(0);
+		return evaluation.found;
+	}
+	
+	//--------------------------------------------
+	// Evaluation
+	
+	/*
+	 * Open element stack, each level holds the selector 
+	 * states of its element
+	 */
+	private class Evaluation implements HtmlTokenizer.Handler {
+		
+		public Evaluation() {
+			int count = rules.size();
+			this.names    = new String[16];
+			this.states   = new long[16 * count];
+			this.found    = new ArrayList<>();
+			this.captures = new ArrayList<>();
+			for(int r = 0; r < count; r++)
+				states[r] = rules.get(r).selector.start();
+		}
+		
+		@Override
+		public void startTag(String name, Attributes attributes, boolean selfClosing) {
+			if(depth > 0 && isImplicitlyClosed(name) && names[depth].equals(name))
+				close(depth - 1);
+			int count = rules.size();
+			int level = depth + 1;
+			if(level == names.length){
+				names  = Arrays.copyOf(names,  level * 2);
+				states = Arrays.copyOf(states, level * 2 * count);
+			}
+			boolean opened = false;
+			for(int r = 0; r < count; r++){
+				Selector selector = rules.get(r).selector;
+				long     next     = selector.advance(states[depth * count + r], name, attributes);
+				if((next & selector.accepting()) != 0){
+					next &= ~selector.accepting();
+					Rule rule = rules.get(r);
+					if(rule.attribute == null){
+						captures.add(new Capture(rule.name, level));
+						opened = true;
+					}
+					else {
+						String value = attributes.get(rule.attribute);
+						if(value != null) found.add(new Match(rule.name, value));
+					}
+				}
+				states[level * count + r] = next;
+			}
+			if(selfClosing || isVoid(name)){
+				if(opened) closeCaptures(level);
+				return;
+			}
+			names[level] = name;
+			depth        = level;
+		}
+		
+		@Override
+		public void endTag(String name) {
+			for(int level = depth; level > 0; level--){
+				if(names[level].equals(name)){
+					close(level - 1);
+					return;
+				}
+			}
+			// stray end tag
+		}
+		
+		@Override
+		public void text(CharSequence html, int start, int end) {
+			for(int i = 0; i < captures.size(); i++)
+				HtmlTokenizer.appendText(captures.get(i).text, html, start, end);
+		}
+		
+		/*
+		 * Pop the elements above 'level'
+		 */
+		void close(int level){
+			closeCaptures(level + 1);
+			depth = level;
+		}
+		
+		private void closeCaptures(int level){
+			for(int i = captures.size() - 1; i >= 0; i--){
+				Capture capture = captures.get(i);
+				if(capture.level < level) break;
+				captures.remove(i);
+				found.add(new Match(capture.name, capture.text.toString().trim()));
+			}
+		}
+		
+		String[]            names;
+		long[]              states;
+		int                 depth;
+		final List<Match>   found;
+		final List<Capture> captures;
+	}
+	
+	/*
+	 * Text of an open element
+	 */
+	private static class Capture {
+		
+		public Capture(String name, int level) {
+			this.name  = name;
+			this.level = level;
+			this.text  = new StringBuilder();
+		}
+		
+		final String        name;
+		final int           level;
+		final StringBuilder text;
+	}
+	
+	private static boolean isVoid(String name){
+		switch(name){
+		case "area": case "base": case "br": case "col": case "embed": case "hr": case "img":
+		case "input": case "link": case "meta": case "param": case "source": case "track": case "wbr":
+			return true;
+		default:
+			return false;
+		}
+	}
+	
+	/*
+	 * Elements closed by a sibling of the same name, eg. <li>a<li>b
+	 */
+	private static boolean isImplicitlyClosed(String name){
+		switch(name){
+		case "li": case "p": case "option": case "tr": case "td": case "th": case "dt": case "dd":
+			return true;
+		default:
+			return false;
+		}
+	}
+	
+	private final List<Rule> rules;
+	@Reduced
+	private List<Match>      matches;
+}
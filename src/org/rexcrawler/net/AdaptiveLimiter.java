@@ -0,0 +1,270 @@
+package org.rexcrawler.net;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adaptive per-host concurrency limiter
+ * 
+ * Each host has its own limit of concurrent requests, adjusted
+ * with an AIMD (additive increase, multiplicative decrease) rule:
+ * <ul>
+ * <li>every successful response whose latency stays close to the
+ * host baseline grows the limit by <code>1/limit</code>, about +1 per
+ * round of requests</li>
+ * <li>an error, a 429/503 response or a latency above 
+ * <code>tolerance * baseline</code> multiplies the limit by <code>backoff</code>,
+ * at most once per round trip</li>
+ * </ul>
+ * The baseline is a slow moving average of the latency, the current latency
+ * a fast one. 
+ * 
+ * Waiting for a permit is a managed block for the ForkJoin pool, which may
+ * start a spare thread to keep the other hosts busy. The crawler fetches
+ * in managed blocks as well, a host can get more requests in flight than
+ * the pool has workers.
+ * 
+ * @author shake0
+ *
+ */
+public class AdaptiveLimiter {
+	
+	/**
+	 * Snapshot of the state of a single host
+	 */
+	public static class HostMetrics {
+		
+		HostMetrics(Host host) {
+			this.limit     = host.limit;
+			this.inFlight  = host.inFlight;
+			this.latency   = (long) host.latency;
+			this.baseline  = (long) host.baseline;
+			this.requests  = host.requests;
+			this.errors    = host.errors;
+			this.throttled = host.throttled;
+			this.increases = host.increases;
+			this.decreases = host.decreases;
+		}
+		
+		/** @return current concurrency limit */
+		public double getLimit()    { return limit; }
+		/** @return requests in flight */
+		public int    getInFlight() { return inFlight; }
+		/** @return recent latency in nanoseconds */
+		public long   getLatency()  { return latency; }
+		/** @return baseline latency in nanoseconds */
+		public long   getBaseline() { return baseline; }
+		/** @return completed requests */
+		public long   getRequests() { return requests; }
+		/** @return failed requests */
+		public long   getErrors()   { return errors; }
+		/** @return 429 and 503 responses */
+		public long   getThrottled(){ return throttled; }
+		/** @return number of additive increases */
+		public long   getIncreases(){ return increases; }
+		/** @return number of multiplicative decreases */
+		public long   getDecreases(){ return decreases; }
+		
+		@Override
+		public String toString() {
+			return String.format("limit=%.1f inFlight=%d latency=%dms baseline=%dms requests=%d errors=%d throttled=%d +%d -%d",
+					limit, inFlight, TimeUnit.NANOSECONDS.toMillis(latency), TimeUnit.NANOSECONDS.toMillis(baseline),
+					requests, errors, throttled, increases, decreases);
+		}
+		
+		private final double limit;
+		private final int    inFlight;
+		private final long   latency;
+		private final long   baseline;
+		private final long   requests;
+		private final long   errors;
+		private final long   throttled;
+		private final long   increases;
+		private final long   decreases;
+	}
+	
+	/*
+	 * Host state, guarded by its own monitor
+	 */
+	class Host implements ForkJoinPool.ManagedBlocker {
+		
+		Host() {
+			this.limit = initialLimit;
+		}
+		
+		@Override
+		public synchronized boolean block() throws InterruptedException {
+			while(inFlight >= (int) limit)
+				wait();
+			inFlight++;
+			return true;
+		}
+		
+		@Override
+		public synchronized boolean isReleasable() {
+			if(inFlight < (int) limit){
+				inFlight++;
+				return true;
+			}
+			return false;
+		}
+		
+		synchronized void complete(long elapsed, int status){
+			inFlight--;
+			requests++;
+			long now = System.nanoTime();
+			if(latency == 0){
+				latency  = elapsed;
+				baseline = elapsed;
+			}
+			else {
+				latency  += FAST * (elapsed - latency);
+				baseline += SLOW * (Math.min(elapsed, latency) - baseline);
+			}
+			boolean throttle = status == 429 || status == 503;
+			boolean error    = status < 0 || status >= 500;
+			if(throttle) throttled++;
+			else if(error) errors++;
+			
+			if(throttle || error || latency > tolerance * baseline){
+				// one decrease per round trip
+				if(now - lastDecrease > latency){
+					limit = Math.max(minLimit, limit * backoff);
+					lastDecrease = now;
+					decreases++;
+				}
+			}
+			else if(limit < maxLimit){
+				limit = Math.min(maxLimit, limit + 1.0 / limit);
+				increases++;
+			}
+			notifyAll();
+		}
+		
+		double limit;
+		int    inFlight;
+		double latency;
+		double baseline;
+		long   lastDecrease;
+		long   requests;
+		long   errors;
+		long   throttled;
+		long   increases;
+		long   decreases;
+	}
+	
+	/**
+	 * Limiter starting at 2 concurrent requests per host, 
+	 * growing up to 64, halving on degradation.
+	 */
+	public AdaptiveLimiter() {
+		this(2, 1, 64, 0.5, 2.0);
+	}
+	
+	/**
+	 * @param initialLimit starting limit of a new host
+	 * @param minLimit lower bound of the limit
+	 * @param maxLimit upper bound of the limit
+	 * @param backoff multiplicative decrease factor, in (0, 1)
+	 * @param tolerance latency ratio over the baseline considered a degradation
+	 */
+	public AdaptiveLimiter(int initialLimit, int minLimit, int maxLimit, double backoff, double tolerance) {
+		if(minLimit < 1 || maxLimit < minLimit || initialLimit < minLimit || initialLimit > maxLimit)
+			throw new IllegalArgumentException("Limits must satisfy 1 <= min <= initial <= max");
+		if(backoff <= 0 || backoff >= 1 || tolerance <= 1)
+			throw new IllegalArgumentException("Backoff must be in (0, 1) and tolerance > 1");
+		this.initialLimit = initialLimit;
+		this.minLimit     = minLimit;
+		this.maxLimit     = maxLimit;
+		this.backoff      = backoff;
+		this.tolerance    = tolerance;
+		this.hosts        = new ConcurrentHashMap<>();
+	}
+	
+	//--------------------------------------------
+	// Permits
+	
+	/**
+	 * Wait until a request to <code>host</code> is allowed.
+	 * Every call must be followed by {@link #release(String, long, int)}.
+	 * @param host host (and port) of the request
+	 * @throws InterruptedException interrupted while waiting
+	 */
+	public void acquire(String host) throws InterruptedException{
+		Host state = host(host);
+		if(! state.isReleasable())
+			ForkJoinPool.managedBlock(state);
+	}
+	
+	/**
+	 * Release the permit and adapt the limit of the host.
+	 * @param host host (and port) of the request
+	 * @param elapsed latency of the request in nanoseconds
+	 * @param status HTTP status code, -1 for an I/O error
+	 */
+	public void release(String host, long elapsed, int status){
+		host(host).complete(elapsed, status);
+	}
+	
+	private Host host(String host){
+		Host state = hosts.get(host);
+		if(state == null){
+			Host created = new Host();
+			state = hosts.putIfAbsent(host, created);
+			if(state == null) state = created;
+		}
+		return state;
+	}
+	
+	//--------------------------------------------
+	// Metrics
+	
+	/**
+	 * Get the current limit of the host
+	 * @param host host (and port)
+	 * @return concurrency limit
+	 */
+	public double getLimit(String host){
+		Host state = hosts.get(host);
+		if(state == null) return initialLimit;
+		synchronized (state) {
+			return state.limit;
+		}
+	}
+	
+	/**
+	 * Get a snapshot of all the hosts seen so far
+	 * @return metrics by host
+	 */
+	public Map<String, HostMetrics> getMetrics(){
+		Map<String, HostMetrics> metrics = new TreeMap<>();
+		for(Map.Entry<String, Host> entry : hosts.entrySet()){
+			synchronized (entry.getValue()) {
+				metrics.put(entry.getKey(), new HostMetrics(entry.getValue()));
+			}
+		}
+		return Collections.unmodifiableMap(metrics);
+	}
+	
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for(Map.Entry<String, HostMetrics> entry : getMetrics().entrySet())
+			sb.append(entry.getKey()).append(": ").append(entry.getValue()).append('\n');
+		return sb.toString();
+	}
+	
+	private static final double FAST = 0.3;
+	private static final double SLOW = 0.02;
+	private final int    initialLimit;
+	private final int    minLimit;
+	private final int    maxLimit;
+	private final double backoff;
+	private final double tolerance;
+	private final ConcurrentMap<String, Host> hosts;
+}
@@ -0,0 +1,309 @@
+package org.rexcrawler.net;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caching resolver
+ * 
+ * A bounded LRU cache in front of another {@link HostResolver}.
+ * Both successful and failed lookups are cached, each with its own
+ * time to live, so a dead host discovered many times in the frontier
+ * is resolved only once per TTL.
+ * 
+ * Host names can be prefetched: the lookup is executed in background
+ * as soon as a link enters the frontier, and a later {@link #resolve(String)}
+ * waits for the pending lookup instead of starting a new one.
+ * 
+ * The crawler connects to the addresses returned by this resolver,
+ * the JVM cache is only used for HTTPS (@see CrawlerHandler#makeConnection(String)).
+ * 
+ * @author shake0
+ *
+ */
+public class CachingResolver implements HostResolver {
+	
+	/*
+	 * Cache entry, <code>addresses</code> is null for negative entries
+	 */
+	private static class Entry {
+		
+		public Entry(InetAddress[] addresses, long expires) {
+			this.addresses = addresses;
+			this.expires   = expires;
+		}
+		
+		final InetAddress[] addresses;
+		final long          expires;
+	}
+	
+	/**
+	 * Caching resolver over the JVM resolver, with 1024 entries,
+	 * 5 minutes for resolved hosts and 1 minute for unknown hosts.
+	 */
+	public CachingResolver() {
+		this(SYSTEM, 1024, TimeUnit.MINUTES.toMillis(5), TimeUnit.MINUTES.toMillis(1), 4);
+	}
+	
+	/**
+	 * @param delegate resolver performing the actual lookups
+	 * @param capacity maximum number of cached hosts
+	 * @param ttl milliseconds a resolved host is cached
+	 * @param negativeTtl milliseconds an unknown host is cached
+	 * @param prefetchThreads threads used for the prefetch
+	 */
+	public CachingResolver(HostResolver delegate, final int capacity, long ttl, long negativeTtl, int prefetchThreads) {
+		if(capacity <= 0 || prefetchThreads <= 0)
+			throw new IllegalArgumentException("Capacity and prefetch threads must be positive");
+		this.delegate    = delegate;
+		this.ttl         = ttl;
+		this.negativeTtl = negativeTtl;
+		this.pending     = new ConcurrentHashMap<>();
+		this.cache       = new LinkedHashMap<String, Entry>(16, 0.75f, true){
+			private static final long serialVersionUID = 1L;
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				return size() > capacity;
+			}
+		};
+		this.prefetcher  = Executors.newFixedThreadPool(prefetchThreads, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "rexcrawler-dns");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		this.lookups      = new AtomicLong();
+		this.hits         = new AtomicLong();
+		this.negativeHits = new AtomicLong();
+		this.prefetches   = new AtomicLong();
+		this.failures     = new AtomicLong();
+		this.latency      = new AtomicLong();
+		this.maxLatency   = new AtomicLong();
+	}
+	
+	//--------------------------------------------
+	// Resolution
+	
+	@Override
+	public InetAddress[] resolve(String host) throws UnknownHostException {
+		Entry entry = cached(host);
+		if(entry == null)
+			entry = lookup(host);
+		else if(entry.addresses != null)
+			hits.incrementAndGet();
+		else
+			negativeHits.incrementAndGet();
+		if(entry.addresses == null)
+			throw new UnknownHostException(host);
+		return entry.addresses;
+	}
+	
+	/**
+	 * Resolve the host in background if it is not cached yet.
+	 * The call never blocks.
+	 * @param host host name
+	 */
+	public void prefetch(final String host){
+		if(host == null || host.isEmpty() || cached(host) != null || pending.containsKey(host)) 
+			return;
+		prefetches.incrementAndGet();
+		prefetcher.execute(new Runnable() {
+			@Override
+			public void run() {
+				// another prefetch of the host may have been queued meanwhile
+				if(cached(host) == null)
+					try { lookup(host); }
+					catch (UnknownHostException e) { } // shut down meanwhile
+			}
+		});
+	}
+	
+	/**
+	 * Drop all the cached entries
+	 */
+	public void clear(){
+		synchronized (cache) {
+			cache.clear();
+		}
+	}
+	
+	/**
+	 * Stop the prefetch threads. Pending prefetches are discarded.
+	 */
+	public void shutdown(){
+		prefetcher.shutdownNow();
+	}
+	
+	private Entry cached(String host){
+		synchronized (cache) {
+			Entry entry = cache.get(host);
+			if(entry != null && entry.expires < System.currentTimeMillis()){
+				cache.remove(host);
+				entry = null;
+			}
+			return entry;
+		}
+	}
+	
+	/*
+	 * Only one thread performs the lookup of a given host, 
+	 * the others wait for its result. An interrupted waiter gives up,
+	 * the interrupt flag set: an abort of the search.
+	 */
+	private Entry lookup(String host) throws UnknownHostException{
+		Object lock = new Object();
+		Object owner;
+		while((owner = pending.putIfAbsent(host, lock)) != null){
+			synchronized (owner) {
+				while(pending.get(host) == owner){
+					try { owner.wait(); }
+					catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new UnknownHostException(host + ": interrupted");
+					}
+				}
+			}
+			Entry entry = cached(host);
+			if(entry != null) {
+				hits.incrementAndGet();
+				return entry;
+			}
+			// evicted meanwhile, looked up again
+		}
+		try{
+			return fetch(host);
+		} finally {
+			synchronized (lock) {
+				pending.remove(host);
+				lock.notifyAll();
+			}
+		}
+	}
+	
+	private Entry fetch(String host){
+		InetAddress[] addresses = null;
+		long          start     = System.nanoTime();
+		try {
+			addresses = delegate.resolve(host);
+		} catch (UnknownHostException e) {
+			failures.incrementAndGet();
+		}
+		long elapsed = System.nanoTime() - start;
+		lookups.incrementAndGet();
+		latency.addAndGet(elapsed);
+		long max;
+		while(elapsed > (max = maxLatency.get()) && ! maxLatency.compareAndSet(max, elapsed));
+		
+		Entry entry = new Entry(addresses, 
+				System.currentTimeMillis() + ((addresses == null) ? negativeTtl : ttl));
+		synchronized (cache) {
+			cache.put(host, entry);
+		}
+		return entry;
+	}
+	
+	//--------------------------------------------
+	// Metrics
+	
+	/**
+	 * Get the number of lookups forwarded to the delegate resolver
+	 * @return number of lookups
+	 */
+	public long getLookupCount(){
+		return lookups.get();
+	}
+	
+	/**
+	 * Get the number of lookups failed with an unknown host
+	 * @return number of failed lookups
+	 */
+	public long getFailureCount(){
+		return failures.get();
+	}
+	
+	/**
+	 * Get the number of resolutions served by the cache
+	 * @return number of positive hits
+	 */
+	public long getHitCount(){
+		return hits.get();
+	}
+	
+	/**
+	 * Get the number of unknown hosts served by the cache
+	 * @return number of negative hits
+	 */
+	public long getNegativeHitCount(){
+		return negativeHits.get();
+	}
+	
+	/**
+	 * Get the number of prefetches submitted
+	 * @return number of prefetches
+	 */
+	public long getPrefetchCount(){
+		return prefetches.get();
+	}
+	
+	/**
+	 * Get the average latency of the lookups
+	 * @return average latency in nanoseconds
+	 */
+	public long getAverageLatency(){
+		long count = lookups.get();
+		return (count == 0) ? 0 : latency.get() / count;
+	}
+	
+	/**
+	 * Get the slowest lookup
+	 * @return maximum latency in nanoseconds
+	 */
+	public long getMaxLatency(){
+		return maxLatency.get();
+	}
+	
+	/**
+	 * Get the number of cached hosts, including expired entries not yet evicted
+	 * @return cache size
+	 */
+	public int size(){
+		synchronized (cache) {
+			return cache.size();
+		}
+	}
+	
+	@Override
+	public String toString() {
+		return "lookups=" + getLookupCount() + " failures=" + getFailureCount() 
+				+ " hits=" + getHitCount() + " negativeHits=" + getNegativeHitCount() 
+				+ " prefetches=" + getPrefetchCount() 
+				+ " avgLatency=" + TimeUnit.NANOSECONDS.toMicros(getAverageLatency()) + "us"
+				+ " maxLatency=" + TimeUnit.NANOSECONDS.toMicros(getMaxLatency()) + "us";
+	}
+	
+	private final HostResolver              delegate;
+	private final long                      ttl;
+	private final long                      negativeTtl;
+	private final Map<String, Entry>        cache;
+	private final ConcurrentMap<String, Object> pending;
+	private final ExecutorService           prefetcher;
+	// metrics
+	private final AtomicLong lookups;
+	private final AtomicLong failures;
+	private final AtomicLong hits;
+	private final AtomicLong negativeHits;
+	private final AtomicLong prefetches;
+	private final AtomicLong latency;
+	private final AtomicLong maxLatency;
+}
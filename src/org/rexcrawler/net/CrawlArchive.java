@@ -0,0 +1,329 @@
+package org.rexcrawler.net;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Crawl archive
+ * 
+ * Records the responses of a crawl (status, headers and body) in a
+ * single file, and serves them back later without network. Replaying
+ * the same archive gives the same pages in the same state, which makes
+ * the handler benchmarks reproducible.
+ * <ul>
+ * <li>recording: the connections are wrapped, the response is written
+ * when its body has been read, closed or the connection disconnected</li>
+ * <li>replaying: the connections are served from the archive, with an
+ * optional simulated latency. A URL missing from the archive answers 404</li>
+ * </ul>
+ * The file is a sequence of records: URL, status, headers, body length
+ * and body. Only the index (URL to offset) is kept in memory while
+ * replaying, the records are read on demand with positional reads, 
+ * without lock between the replaying threads. When a URL is recorded more 
+ * than once the last record wins.
+ * 
+ * The archive is set on the handler and shared by the forked handlers.
+ * 
+ * @author shake0
+ * @see org.rexcrawler.CrawlerHandler#setArchive(CrawlArchive)
+ */
+public class CrawlArchive {
+	
+	/*
+	 * Response stored in the archive
+	 */
+	static class Record {
+		
+		Record(String url, int status, List<String> headers, byte[] body) {
+			this.url     = url;
+			this.status  = status;
+			this.headers = headers;
+			this.body    = body;
+		}
+		
+		final String       url;
+		final int          status;
+		final List<String> headers; // key, value, key, value...
+		final byte[]       body;
+	}
+	
+	/*
+	 * Location of a record in the file
+	 */
+	static class Position {
+		
+		Position(long offset, int length) {
+			this.offset = offset;
+			this.length = length;
+		}
+		
+		final long offset;
+		final int  length;
+	}
+	
+	private CrawlArchive(File file, boolean replaying) {
+		this.file      = file;
+		this.replaying = replaying;
+		this.index     = new ConcurrentHashMap<>();
+		this.recorded  = new AtomicLong();
+		this.replayed  = new AtomicLong();
+		this.missed    = new AtomicLong();
+	}
+	
+	/**
+	 * Start a new archive, an existing file is overwritten
+	 * @param file archive file
+	 * @return archive in recording mode
+	 * @throws IOException the file cannot be created
+	 */
+	public static CrawlArchive record(File file) throws IOException{
+		CrawlArchive archive = new CrawlArchive(file, false);
+		archive.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 64 * 1024));
+		return archive;
+	}
+	
+	/**
+	 * Open an archive for replay
+	 * @param file archive file
+	 * @return archive in replay mode
+	 * @throws IOException the file cannot be read or is corrupted
+	 */
+	public static CrawlArchive replay(File file) throws IOException{
+		CrawlArchive archive = new CrawlArchive(file, true);
+		archive.in = new RandomAccessFile(file, "r");
+		archive.load();
+		archive.channel = archive.in.getChannel();
+		return archive;
+	}
+	
+	/*
+	 * Index the records, skipping the bodies
+	 */
+	private void load() throws IOException{
+		long length = in.length();
+		while(in.getFilePointer() < length){
+			long   offset = in.getFilePointer();
+			String url    = in.readUTF();
+			in.readInt();
+			int headers = in.readInt();
+			for(int i = 0; i < 2 * headers; i++)
+				readString(in);
+			int body = in.readInt();
+			if(in.getFilePointer() + body > length)
+				throw new EOFException("Truncated record: " + url);
+			in.seek(in.getFilePointer() + body);
+			index.put(url, new Position(offset, (int) (in.getFilePointer() - offset)));
+			if(first == null) first = url;
+		}
+	}
+	
+	//--------------------------------------------
+	// Recording
+	
+	/**
+	 * Wrap a connection so that its response is recorded.
+	 * In replay mode the connection is returned as it is.
+	 * @param connection live connection, not yet read
+	 * @return recording connection
+	 */
+	public HttpURLConnection wrap(HttpURLConnection connection){
+		if(replaying || connection instanceof ReplayConnection || connection instanceof RecordingConnection) 
+			return connection;
+		return new RecordingConnection(connection, this);
+	}
+	
+	void write(Record record){
+		synchronized (this) {
+			if(out == null) return; // closed
+			try {
+				out.writeUTF(record.url);
+				out.writeInt(record.status);
+				out.writeInt(record.headers.size() / 2);
+				for(String header : record.headers)
+					writeString(out, header);
+				out.writeInt(record.body.length);
+				out.write(record.body);
+				index.put(record.url, RECORDED); // offsets are only needed to replay
+			} catch (IOException e) {
+				System.err.println("Archive: " + e.getLocalizedMessage());
+				return;
+			}
+		}
+		recorded.incrementAndGet();
+	}
+	
+	//--------------------------------------------
+	// Replaying
+	
+	/**
+	 * Open a connection served by the archive
+	 * @param url requested URL
+	 * @return replayed response, 404 if the URL was not recorded
+	 * @throws MalformedURLException the URL is wrong
+	 */
+	public HttpURLConnection open(String url) throws MalformedURLException{
+		URL      target   = new URL(url);
+		Position position = replaying ? index.get(url) : null;
+		if(position == null){
+			missed.incrementAndGet();
+			return new ReplayConnection(target, this, new Record(url, 404, new ArrayList<String>(), new byte[0]));
+		}
+		replayed.incrementAndGet();
+		return new ReplayConnection(target, this, position);
+	}
+	
+	/*
+	 * The whole record in a single positional read, 
+	 * the file position is not shared
+	 */
+	Record read(Position position) throws IOException{
+		FileChannel channel = this.channel;
+		if(channel == null)
+			throw new IOException("Archive closed");
+		ByteBuffer buffer = ByteBuffer.allocate(position.length);
+		while(buffer.hasRemaining())
+			if(channel.read(buffer, position.offset + buffer.position()) < 0)
+				throw new EOFException("Truncated record at " + position.offset);
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(buffer.array()));
+		String url     = in.readUTF();
+		int    status  = in.readInt();
+		int    count   = in.readInt();
+		List<String> headers = new ArrayList<>(2 * count);
+		for(int i = 0; i < 2 * count; i++)
+			headers.add(readString(in));
+		byte[] body = new byte[in.readInt()];
+		in.readFully(body);
+		return new Record(url, status, headers, body);
+	}
+	
+	/*
+	 * Simulated latency of a replayed request, the jitter is 
+	 * derived from the URL to be the same on every run
+	 */
+	long latency(String url){
+		if(jitter == 0) return latency;
+		long mix = url.hashCode() * 0x9E3779B97F4A7C15L;
+		return latency + Math.floorMod(mix >>> 17, jitter + 1);
+	}
+	
+	//--------------------------------------------
+	// Strings, null allowed
+	
+	private static void writeString(DataOutputStream out, String s) throws IOException{
+		out.writeBoolean(s != null);
+		if(s != null) out.writeUTF(s.length() > 16384 ? s.substring(0, 16384) : s);
+	}
+	
+	private static String readString(DataInput in) throws IOException{
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+	
+	/**
+	 * Flush and close the archive file
+	 */
+	public void close(){
+		synchronized (this) {
+			try {
+				if(out != null) out.close();
+				if(in  != null) in.close();
+			} catch (IOException e) {
+				System.err.println("Archive: " + e.getLocalizedMessage());
+			}
+			out     = null;
+			in      = null;
+			channel = null;
+		}
+	}
+	
+	//--------------------------------------------
+	// Mutators
+	
+	/**
+	 * Delay every replayed response by <code>latency</code>
+	 * plus up to <code>jitter</code> milliseconds.
+	 * @param latency fixed delay in milliseconds
+	 * @param jitter maximum additional delay in milliseconds
+	 * @return the calling object
+	 */
+	public CrawlArchive setLatency(long latency, long jitter){
+		if(latency < 0 || jitter < 0)
+			throw new IllegalArgumentException("Negative latency");
+		this.latency = latency;
+		this.jitter  = jitter;
+		return this;
+	}
+	
+	/**
+	 * @return true if the archive serves the responses
+	 */
+	public boolean isReplaying(){
+		return replaying;
+	}
+	
+	/**
+	 * @return true if the URL is in the archive
+	 */
+	public boolean contains(String url){
+		return index.containsKey(url);
+	}
+	
+	/**
+	 * @return first URL recorded, usually the crawl root, or null
+	 */
+	public String first(){
+		return first;
+	}
+	
+	/**
+	 * @return number of distinct URL in the archive
+	 */
+	public int size(){
+		return index.size();
+	}
+	
+	/** @return responses written */
+	public long getRecordCount(){ return recorded.get(); }
+	/** @return responses served from the archive */
+	public long getReplayCount(){ return replayed.get(); }
+	/** @return requests for URL missing from the archive */
+	public long getMissCount()  { return missed.get(); }
+	
+	@Override
+	public String toString() {
+		return file + (replaying ? " replaying" : " recording") + " size=" + size()
+				+ " recorded=" + getRecordCount() + " replayed=" + getReplayCount() + " missed=" + getMissCount();
+	}
+	
+	private static final Position  RECORDED = new Position(-1, 0);
+	private final File             file;
+	private final boolean          replaying;
+	private final Map<String, Position> index;
+	private DataOutputStream       out;
+	private RandomAccessFile       in;
+	private volatile FileChannel   channel;
+	private String                 first;
+	private volatile long          latency;
+	private volatile long          jitter;
+	// metrics
+	private final AtomicLong recorded;
+	private final AtomicLong replayed;
+	private final AtomicLong missed;
+}
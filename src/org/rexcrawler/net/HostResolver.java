@@ -0,0 +1,34 @@
+package org.rexcrawler.net;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * Name resolution used by the crawler before opening a connection.
+ * 
+ * Implementations must be thread safe, the same resolver is shared
+ * by all the forked handlers.
+ * 
+ * @author shake0
+ *
+ */
+public interface HostResolver {
+	
+	/**
+	 * Resolver backed by the JVM ({@link InetAddress#getAllByName(String)})
+	 */
+	public static final HostResolver SYSTEM = new HostResolver() {
+		@Override
+		public InetAddress[] resolve(String host) throws UnknownHostException {
+			return InetAddress.getAllByName(host);
+		}
+	};
+	
+	/**
+	 * Resolve the host name
+	 * @param host host name or literal address
+	 * @return all the addresses of the host
+	 * @throws UnknownHostException the host cannot be resolved
+	 */
+	public InetAddress[] resolve(String host) throws UnknownHostException;
+}
@@ -0,0 +1,168 @@
+package org.rexcrawler.net;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.ProtocolException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Connection writing its response to a {@link CrawlArchive}. 
+ * Every call is forwarded to the live connection, the body is 
+ * copied while the caller reads it.
+ * 
+ * @author shake0
+ *
+ */
+class RecordingConnection extends HttpURLConnection {
+	
+	RecordingConnection(HttpURLConnection connection, CrawlArchive archive) {
+		super(connection.getURL());
+		this.connection = connection;
+		this.archive    = archive;
+	}
+	
+	/*
+	 * Write the response once, with the body read so far
+	 */
+	private void save(byte[] body){
+		if(saved) return;
+		saved = true;
+		List<String> headers = new ArrayList<>();
+		for(int i = 0; ; i++){
+			String key   = connection.getHeaderFieldKey(i);
+			String value = connection.getHeaderField(i);
+			if(key == null && value == null) break;
+			headers.add(key);
+			headers.add(value);
+		}
+		int status;
+		try { status = connection.getResponseCode(); }
+		catch (IOException e) { return; } // nothing to replay
+		archive.write(new CrawlArchive.Record(url.toString(), status, headers, body));
+	}
+	
+	/*
+	 * Copies the body, saved at the end of the stream or on close
+	 */
+	private class Tee extends FilterInputStream {
+		
+		Tee(InputStream in) {
+			super(in);
+			this.copy = new ByteArrayOutputStream();
+		}
+		
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if(b < 0) save(copy.toByteArray());
+			else copy.write(b);
+			return b;
+		}
+		
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int n = super.read(b, off, len);
+			if(n < 0) save(copy.toByteArray());
+			else copy.write(b, off, n);
+			return n;
+		}
+		
+		@Override
+		public void close() throws IOException {
+			save(copy.toByteArray());
+			super.close();
+		}
+		
+		private final ByteArrayOutputStream copy;
+	}
+	
+	@Override
+	public InputStream getInputStream() throws IOException {
+		if(stream != null) return stream;
+		try {
+			return stream = new Tee(connection.getInputStream());
+		} catch (IOException e) {
+			InputStream error = connection.getErrorStream();
+			if(error == null)
+				save(new byte[0]);
+			else {
+				ByteArrayOutputStream copy = new ByteArrayOutputStream();
+				byte[] buffer = new byte[8192];
+				int    read;
+				try {
+					while((read = error.read(buffer)) != -1) copy.write(buffer, 0, read);
+				} finally {
+					error.close();
+				}
+				save(copy.toByteArray());
+			}
+			throw e;
+		}
+	}
+	
+	@Override
+	public void disconnect() {
+		save(new byte[0]); // body never read
+		connection.disconnect();
+	}
+	
+	//--------------------------------------------
+	// Forwarded
+	
+	@Override
+	public void connect() throws IOException                       { connection.connect(); }
+	@Override
+	public boolean usingProxy()                                    { return connection.usingProxy(); }
+	@Override
+	public int getResponseCode() throws IOException                { return connection.getResponseCode(); }
+	@Override
+	public String getResponseMessage() throws IOException          { return connection.getResponseMessage(); }
+	@Override
+	public InputStream getErrorStream()                            { return connection.getErrorStream(); }
+	@Override
+	public String getHeaderFieldKey(int n)                         { return connection.getHeaderFieldKey(n); }
+	@Override
+	public String getHeaderField(int n)                            { return connection.getHeaderField(n); }
+	@Override
+	public String getHeaderField(String name)                      { return connection.getHeaderField(name); }
+	@Override
+	public Map<String, List<String>> getHeaderFields()             { return connection.getHeaderFields(); }
+	@Override
+	public String getContentType()                                 { return connection.getContentType(); }
+	@Override
+	public long getContentLengthLong()                             { return connection.getContentLengthLong(); }
+	@Override
+	public void setConnectTimeout(int timeout)                     { connection.setConnectTimeout(timeout); }
+	@Override
+	public int getConnectTimeout()                                 { return connection.getConnectTimeout(); }
+	@Override
+	public void setReadTimeout(int timeout)                        { connection.setReadTimeout(timeout); }
+	@Override
+	public int getReadTimeout()                                    { return connection.getReadTimeout(); }
+	@Override
+	public void setRequestMethod(String method) throws ProtocolException { connection.setRequestMethod(method); }
+	@Override
+	public String getRequestMethod()                               { return connection.getRequestMethod(); }
+	@Override
+	public void setRequestProperty(String key, String value)       { connection.setRequestProperty(key, value); }
+	@Override
+	public void addRequestProperty(String key, String value)       { connection.addRequestProperty(key, value); }
+	@Override
+	public String getRequestProperty(String key)                   { return connection.getRequestProperty(key); }
+	@Override
+	public void setInstanceFollowRedirects(boolean follow)         { connection.setInstanceFollowRedirects(follow); }
+	@Override
+	public boolean getInstanceFollowRedirects()                    { return connection.getInstanceFollowRedirects(); }
+	@Override
+	public void setUseCaches(boolean useCaches)                    { connection.setUseCaches(useCaches); }
+	
+	private final HttpURLConnection connection;
+	private final CrawlArchive      archive;
+	private InputStream             stream;
+	private boolean                 saved;
+}
@@ -0,0 +1,135 @@
+package org.rexcrawler.net;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Connection served by a {@link CrawlArchive}. Behaves as the JDK
+ * connection: the error statuses throw on {@link #getInputStream()}
+ * and expose their body on {@link #getErrorStream()}.
+ * 
+ * @author shake0
+ *
+ */
+class ReplayConnection extends HttpURLConnection {
+	
+	ReplayConnection(URL url, CrawlArchive archive, CrawlArchive.Position position) {
+		super(url);
+		this.archive  = archive;
+		this.position = position;
+	}
+	
+	ReplayConnection(URL url, CrawlArchive archive, CrawlArchive.Record record) {
+		this(url, archive, (CrawlArchive.Position) null);
+		this.record = record;
+	}
+	
+	@Override
+	public void connect() throws IOException {
+		if(connected) return;
+		long delay = archive.latency(url.toString());
+		if(delay > 0){
+			try { Thread.sleep(delay); } 
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted");
+			}
+		}
+		if(record == null)
+			record = archive.read(position);
+		responseCode = record.status;
+		connected    = true;
+	}
+	
+	@Override
+	public void disconnect() {
+		// nothing to release
+	}
+	
+	@Override
+	public boolean usingProxy() {
+		return false;
+	}
+	
+	@Override
+	public InputStream getInputStream() throws IOException {
+		connect();
+		if(record.status == HTTP_NOT_FOUND || record.status == HTTP_GONE)
+			throw new FileNotFoundException(url.toString());
+		if(record.status >= 400)
+			throw new IOException("Server returned HTTP response code: " + record.status + " for URL: " + url);
+		return new ByteArrayInputStream(record.body);
+	}
+	
+	@Override
+	public InputStream getErrorStream() {
+		if(! connected || record == null || record.status < 400 || record.body.length == 0) 
+			return null;
+		return new ByteArrayInputStream(record.body);
+	}
+	
+	@Override
+	public int getResponseCode() throws IOException {
+		connect();
+		return record.status;
+	}
+	
+	@Override
+	public String getHeaderFieldKey(int n) {
+		if(! ensureConnected() || 2 * n >= record.headers.size()) return null;
+		return record.headers.get(2 * n);
+	}
+	
+	@Override
+	public String getHeaderField(int n) {
+		if(! ensureConnected() || 2 * n >= record.headers.size()) return null;
+		return record.headers.get(2 * n + 1);
+	}
+	
+	@Override
+	public String getHeaderField(String name) {
+		if(! ensureConnected()) return null;
+		String value = null;
+		for(int i = 0; i < record.headers.size(); i += 2){
+			String key = record.headers.get(i);
+			if((name == null) ? key == null : name.equalsIgnoreCase(key))
+				value = record.headers.get(i + 1); // last one, as the JDK
+		}
+		return value;
+	}
+	
+	@Override
+	public Map<String, List<String>> getHeaderFields() {
+		if(! ensureConnected()) return Collections.emptyMap();
+		Map<String, List<String>> fields = new LinkedHashMap<>();
+		for(int i = 0; i < record.headers.size(); i += 2){
+			List<String> values = fields.get(record.headers.get(i));
+			if(values == null)
+				fields.put(record.headers.get(i), values = new ArrayList<>());
+			values.add(record.headers.get(i + 1));
+		}
+		return Collections.unmodifiableMap(fields);
+	}
+	
+	private boolean ensureConnected(){
+		try {
+			connect();
+			return record != null;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+	
+	private final CrawlArchive          archive;
+	private final CrawlArchive.Position position;
+	private CrawlArchive.Record         record;
+}
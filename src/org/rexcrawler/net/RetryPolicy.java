@@ -0,0 +1,518 @@
+package org.rexcrawler.net;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Retry policy
+ * 
+ * Makes the fetches resilient to slow and failing servers:
+ * <ul>
+ * <li>every connection gets a connect and a read timeout</li>
+ * <li>transient failures (timeouts, refused or reset connections, 
+ * 408/429/502/503/504 responses) are retried with an exponential
+ * backoff and full jitter, other failures are not</li>
+ * <li>optionally, a request still waiting for its headers after the
+ * <code>percentile</code> latency of the recent requests is hedged: a 
+ * second identical request is sent and the first response wins</li>
+ * </ul>
+ * A retry is not a sleep: the failed URL is parked in a delay queue and
+ * taken back by whichever thread asks for the {@link Retries#due()} retries
+ * once its backoff has elapsed.
+ * 
+ * The policy is shared by all the forked handlers and may be reused by 
+ * several searches, each search parks its URLs in its own {@link Retries}.
+ * 
+ * @author shake0
+ *
+ */
+public class RetryPolicy {
+	
+	/**
+	 * A URL waiting for another attempt
+	 */
+	public static class Attempt implements Delayed {
+		
+		Attempt(String url, int attempt, long due) {
+			this.url     = url;
+			this.attempt = attempt;
+			this.due     = due;
+		}
+		
+		/** @return URL to fetch */
+		public String getUrl()    { return url; }
+		/** @return number of the failed attempts */
+		public int    getAttempt(){ return attempt; }
+		
+		@Override
+		public long getDelay(TimeUnit unit) {
+			return unit.convert(due - System.nanoTime(), TimeUnit.NANOSECONDS);
+		}
+		
+		@Override
+		public int compareTo(Delayed o) {
+			return Long.compare(due, ((Attempt) o).due);
+		}
+		
+		@Override
+		public String toString() {
+			return url + " #" + attempt;
+		}
+		
+		private final String url;
+		private final int    attempt;
+		private final long   due;
+	}
+	
+	/**
+	 * The URLs of a single search waiting for another attempt,
+	 * dropped with the search.
+	 * @see RetryPolicy#newRetries()
+	 */
+	public static class Retries {
+		
+		Retries(RetryPolicy policy) {
+			this.policy = policy;
+			this.queue  = new DelayQueue<>();
+		}
+		
+		/**
+		 * Park the URL for another attempt if the failure is retryable 
+		 * and the URL has attempts left.
+		 * @param url failed URL
+		 * @param attempt number of the previous attempts, 0 for a new URL
+		 * @param e failure of the fetch
+		 * @return true if the URL will be retried
+		 */
+		public boolean schedule(String url, int attempt, IOException e){
+			if(e instanceof SocketTimeoutException)
+				policy.timeouts.incrementAndGet();
+			return policy.isRetryable(e) && schedule(url, attempt);
+		}
+		
+		/**
+		 * Park the URL for another attempt if it has attempts left,
+		 * used for the retryable status codes.
+		 * @param url failed URL
+		 * @param attempt number of the previous attempts, 0 for a new URL
+		 * @return true if the URL will be retried
+		 */
+		public boolean schedule(String url, int attempt){
+			if(attempt + 1 >= policy.maxAttempts){
+				policy.giveUps.incrementAndGet();
+				return false;
+			}
+			policy.retries.incrementAndGet();
+			policy.pending.incrementAndGet();
+			queue.add(new Attempt(url, attempt + 1, System.nanoTime() + policy.backoff(attempt)));
+			return true;
+		}
+		
+		/**
+		 * Take the retries whose backoff has elapsed, never blocks.
+		 * @return URL to fetch again, possibly empty
+		 */
+		public List<Attempt> due(){
+			List<Attempt> due = new ArrayList<>();
+			policy.pending.addAndGet(-queue.drainTo(due));
+			return due;
+		}
+		
+		/**
+		 * Wait until a retry is due. Used when there is nothing
+		 * else to do but the retries.
+		 * @return false if there are no retries left
+		 */
+		public boolean awaitDue() throws InterruptedException {
+			Attempt next = queue.peek();
+			if(next == null) return false;
+			long delay = next.getDelay(TimeUnit.NANOSECONDS);
+			if(delay > 0)
+				TimeUnit.NANOSECONDS.sleep(delay);
+			return true;
+		}
+		
+		/**
+		 * @return number of URL waiting for another attempt
+		 */
+		public int getPendingCount(){
+			return queue.size();
+		}
+		
+		/**
+		 * Drop the URL still parked, at the end of the search
+		 */
+		public void clear(){
+			int dropped = 0;
+			for(Iterator<Attempt> it = queue.iterator(); it.hasNext(); dropped++){
+				it.next();
+				it.remove();
+			}
+			policy.pending.addAndGet(-dropped);
+		}
+		
+		private final RetryPolicy         policy;
+		private final DelayQueue<Attempt> queue;
+	}
+	
+	//--------------------------------------------
+	// Constructors
+	
+	/**
+	 * 3 attempts, backoff from 200ms up to 10s, 
+	 * 10s to connect, 30s to read, no hedging.
+	 */
+	public RetryPolicy() {
+		this.maxAttempts    = 3;
+		this.baseDelay      = TimeUnit.MILLISECONDS.toNanos(200);
+		this.maxDelay       = TimeUnit.SECONDS.toNanos(10);
+		this.connectTimeout = 10000;
+		this.readTimeout    = 30000;
+		this.percentile     = 0;
+		this.minSamples     = 20;
+		this.samples        = new long[SAMPLES];
+		this.threshold      = -1;
+		this.pending        = new AtomicInteger();
+		this.retries        = new AtomicLong();
+		this.giveUps        = new AtomicLong();
+		this.timeouts       = new AtomicLong();
+		this.hedges         = new AtomicLong();
+		this.hedgeWins      = new AtomicLong();
+	}
+	
+	//--------------------------------------------
+	// Settings
+	
+	/**
+	 * Set the per-request deadlines
+	 * @param connectMillis milliseconds to establish the connection
+	 * @param readMillis milliseconds to wait for data once connected
+	 * @return the calling object
+	 */
+	public RetryPolicy setTimeouts(int connectMillis, int readMillis){
+		if(connectMillis < 0 || readMillis < 0)
+			throw new IllegalArgumentException("Negative timeout");
+		this.connectTimeout = connectMillis;
+		this.readTimeout    = readMillis;
+		return this;
+	}
+	
+	/**
+	 * Set the maximum number of attempts per URL, the first included
+	 * @param maxAttempts 1 disables the retries
+	 * @return the calling object
+	 */
+	public RetryPolicy setMaxAttempts(int maxAttempts){
+		if(maxAttempts > 0)
+			this.maxAttempts = maxAttempts;
+		return this;
+	}
+	
+	/**
+	 * Set the backoff. The n-th retry waits a random delay 
+	 * between 0 and <code>min(max, base * 2^n)</code>.
+	 * @param baseMillis delay of the first retry
+	 * @param maxMillis maximum delay
+	 * @return the calling object
+	 */
+	public RetryPolicy setBackoff(long baseMillis, long maxMillis){
+		if(baseMillis <= 0 || maxMillis < baseMillis)
+			throw new IllegalArgumentException("Invalid backoff");
+		this.baseDelay = TimeUnit.MILLISECONDS.toNanos(baseMillis);
+		this.maxDelay  = TimeUnit.MILLISECONDS.toNanos(maxMillis);
+		return this;
+	}
+	
+	/**
+	 * Enable the hedged requests. A request is hedged when its headers
+	 * take longer than the <code>percentile</code> of the recent requests. 
+	 * Hedging starts after <code>minSamples</code> requests.
+	 * @param percentile between 0 and 1, usually 0.95. 0 disables hedging
+	 * @param minSamples requests measured before hedging
+	 * @return the calling object
+	 */
+	public RetryPolicy setHedging(double percentile, int minSamples){
+		if(percentile < 0 || percentile >= 1)
+			throw new IllegalArgumentException("Percentile out of range");
+		synchronized (samples) {
+			this.percentile = percentile;
+			this.minSamples = Math.max(1, minSamples);
+			this.threshold  = -1;
+		}
+		if(percentile > 0 && hedger == null){
+			synchronized (this) {
+				if(hedger == null)
+					hedger = Executors.newCachedThreadPool(new ThreadFactory() {
+						@Override
+						public Thread newThread(Runnable r) {
+							Thread t = new Thread(r, "rexcrawler-hedge");
+							t.setDaemon(true);
+							return t;
+						}
+					});
+			}
+		}
+		return this;
+	}
+	
+	/**
+	 * Stop the hedging threads
+	 */
+	public void shutdown(){
+		if(hedger != null)
+			hedger.shutdownNow();
+	}
+	
+	//--------------------------------------------
+	// Classification
+	
+	/**
+	 * @param status HTTP status code
+	 * @return true if the server may answer differently later
+	 */
+	public boolean isRetryable(int status){
+		switch(status){
+		case 408: case 429: case 502: case 503: case 504:
+			return true;
+		default:
+			return false;
+		}
+	}
+	
+	/**
+	 * Timeouts, refused, reset and truncated connections are retryable. 
+	 * Unknown hosts, protocol errors and missing pages are not.
+	 * @param e failure of the fetch
+	 * @return true if another attempt may succeed
+	 */
+	public boolean isRetryable(IOException e){
+		return e instanceof SocketTimeoutException
+			|| e instanceof SocketException // refused, reset, no route
+			|| e instanceof EOFException;
+	}
+	
+	//--------------------------------------------
+	// Retries
+	
+	/**
+	 * Get an empty queue for the retries of a new search
+	 * @return retries of the search
+	 */
+	public Retries newRetries(){
+		return new Retries(this);
+	}
+	
+	/**
+	 * Full jitter backoff
+	 * @param attempt number of the previous attempts
+	 * @return delay in nanoseconds
+	 */
+	long backoff(int attempt){
+		long ceiling = (attempt >= 30) ? maxDelay : Math.min(maxDelay, baseDelay << attempt);
+		return ThreadLocalRandom.current().nextLong(ceiling + 1);
+	}
+	
+	/**
+	 * @return number of URL waiting for another attempt, in all the
+	 * searches running with this policy
+	 */
+	public int getPendingCount(){
+		return pending.get();
+	}
+	
+	//--------------------------------------------
+	// Requests
+	
+	/**
+	 * Apply the deadlines to a connection not yet connected
+	 * @param connection connection to configure
+	 */
+	public void configure(URLConnection connection){
+		connection.setConnectTimeout(connectTimeout);
+		connection.setReadTimeout(readTimeout);
+	}
+	
+	/**
+	 * Run the request until its headers are received. If hedging is enabled
+	 * and the request is slow, the same request is sent again: the first 
+	 * successful response is returned, the other one is disconnected.
+	 * 
+	 * @param request opens the connection and reads the headers
+	 * @return connection with the headers received
+	 * @throws IOException if all the requests failed
+	 * @throws InterruptedException
+	 */
+	public HttpURLConnection connect(Callable<HttpURLConnection> request) throws IOException, InterruptedException{
+		long start = System.nanoTime();
+		long limit = getHedgeThreshold();
+		if(limit < 0 || hedger == null){
+			HttpURLConnection connection = call(request);
+			record(System.nanoTime() - start);
+			return connection;
+		}
+		
+		CompletionService<HttpURLConnection> completion = new ExecutorCompletionService<>(hedger);
+		List<Future<HttpURLConnection>>      requests   = new ArrayList<>(2);
+		requests.add(completion.submit(request));
+		Future<HttpURLConnection> done = completion.poll(limit, TimeUnit.NANOSECONDS);
+		if(done == null){
+			hedges.incrementAndGet();
+			requests.add(completion.submit(request));
+		}
+		IOException failure     = null;
+		int         outstanding = requests.size();
+		try {
+			while(outstanding-- > 0){
+				if(done == null) done = completion.take();
+				try {
+					HttpURLConnection connection = done.get();
+					record(System.nanoTime() - start);
+					if(requests.size() > 1 && done == requests.get(1))
+						hedgeWins.incrementAndGet();
+					return connection;
+				} catch (ExecutionException e) {
+					failure = (e.getCause() instanceof IOException) 
+							? (IOException) e.getCause() : new IOException(e.getCause());
+					done    = null;
+				}
+			}
+			throw failure;
+		} finally {
+			for(Future<HttpURLConnection> other : requests)
+				if(other != done) discard(other);
+		}
+	}
+	
+	private static HttpURLConnection call(Callable<HttpURLConnection> request) throws IOException{
+		try {
+			return request.call();
+		} catch (IOException | RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new IOException(e);
+		}
+	}
+	
+	/*
+	 * The losing request is closed as soon as it completes
+	 */
+	private void discard(final Future<HttpURLConnection> request){
+		try {
+			hedger.execute(new Runnable() {
+				@Override
+				public void run() {
+					try { request.get().disconnect(); }
+					catch (InterruptedException | ExecutionException e) { }
+				}
+			});
+		} catch (RuntimeException e) {
+			request.cancel(true);
+		}
+	}
+	
+	/*
+	 * Sliding window of the header latencies
+	 */
+	private void record(long latency){
+		if(percentile <= 0) return;
+		synchronized (samples) {
+			samples[(int) (count++ % SAMPLES)] = latency;
+			if(count >= minSamples && (threshold < 0 || count % (SAMPLES / 8) == 0)){
+				int    n      = (int) Math.min(count, SAMPLES);
+				long[] sorted = Arrays.copyOf(samples, n);
+				Arrays.sort(sorted);
+				threshold = sorted[Math.min(n - 1, (int) (percentile * n))];
+			}
+		}
+	}
+	
+	//--------------------------------------------
+	// Metrics
+	
+	/**
+	 * Get the latency after which a request is hedged
+	 * @return threshold in nanoseconds, -1 if hedging is not active
+	 */
+	public long getHedgeThreshold(){
+		synchronized (samples) {
+			return (percentile <= 0) ? -1 : threshold;
+		}
+	}
+	
+	/** @return number of retries scheduled */
+	public long getRetryCount(){
+		return retries.get();
+	}
+	
+	/** @return number of URL abandoned after the last attempt */
+	public long getGiveUpCount(){
+		return giveUps.get();
+	}
+	
+	/** @return number of requests timed out */
+	public long getTimeoutCount(){
+		return timeouts.get();
+	}
+	
+	/** @return number of hedged requests sent */
+	public long getHedgeCount(){
+		return hedges.get();
+	}
+	
+	/** @return number of hedged requests answering first */
+	public long getHedgeWinCount(){
+		return hedgeWins.get();
+	}
+	
+	@Override
+	public String toString() {
+		return "retries=" + getRetryCount() + " giveUps=" + getGiveUpCount() 
+				+ " timeouts=" + getTimeoutCount() + " pending=" + getPendingCount()
+				+ " hedges=" + getHedgeCount() + " hedgeWins=" + getHedgeWinCount()
+				+ " hedgeThreshold=" + TimeUnit.NANOSECONDS.toMillis(getHedgeThreshold()) + "ms";
+	}
+	
+	private static final int SAMPLES = 256;
+	// settings
+	private int     maxAttempts;
+	private long    baseDelay;
+	private long    maxDelay;
+	private int     connectTimeout;
+	private int     readTimeout;
+	private double  percentile;
+	private int     minSamples;
+	// state
+	private final long[]             samples;
+	private long                     count;
+	private long                     threshold;
+	private volatile ExecutorService hedger;
+	// metrics
+	private final AtomicInteger pending;
+	private final AtomicLong retries;
+	private final AtomicLong giveUps;
+	private final AtomicLong timeouts;
+	private final AtomicLong hedges;
+	private final AtomicLong hedgeWins;
+}
@@ -0,0 +1,141 @@
+package org.rexcrawler.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.rexcrawler.Crawler;
+import org.rexcrawler.net.RetryPolicy;
+import org.rexcrawler.test.Retrying.PageCounter;
+
+public class Aborting {
+
+	private static void abortAfter(final Crawler crawler, long delay){
+		ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+		timer.schedule(new Runnable() {
+			@Override
+			public void run() {
+				crawler.abort();
+			}
+		}, delay, TimeUnit.MILLISECONDS);
+		timer.shutdown();
+	}
+
+	@Test
+	public void abortLatency() throws IOException{
+		LocalSite site = new LocalSite();
+		try {
+			int pages = site.tree(3, 5);
+			site.setLatency(50);
+			// a read that would block the worker for 10s
+			site.stall("/site/0/", 1, 10000);
+			PageCounter handler = new PageCounter();
+			Crawler crawler = new Crawler()
+				.setHandler(handler)
+				.setChunkSize(2)
+				.setSearchLength(pages);
+			abortAfter(crawler, 400);
+			long start = System.nanoTime();
+			crawler.run(4, site.url("/site/"));
+			long elapsed = (System.nanoTime() - start) / 1000000;
+			assertTrue(crawler.isAborted());
+			assertFalse(crawler.isBudgetExceeded());
+			assertTrue(elapsed < 1400);
+			assertTrue(crawler.getAbortLatency() >= 0);
+			assertTrue(crawler.getAbortLatency() < 1000);
+			// the partial results of every worker are merged
+			assertTrue(handler.pages.contains(site.url("/site/").toString()));
+			assertTrue(handler.pages.size() > 1);
+			assertTrue(handler.pages.size() < pages);
+		} finally {
+			site.stop();
+		}
+	}
+
+	@Test
+	public void timeBudget() throws IOException{
+		LocalSite site = new LocalSite();
+		try {
+			site.page("/a/", "<a href=\"/a/b/\">b</a>").page("/a/b/", "b").stall("/a/b/", 1, 10000);
+			PageCounter handler = new PageCounter();
+			Crawler crawler = new Crawler()
+				.setHandler(handler)
+				.setSearchLength(2)
+				.setTimeBudget(300);
+			long start = System.nanoTime();
+			crawler.run(1, site.url("/a/"));
+			assertTrue((System.nanoTime() - start) / 1000000 < 1300);
+			assertTrue(crawler.isBudgetExceeded());
+			assertEquals(1, handler.pages.size());
+		} finally {
+			site.stop();
+		}
+	}
+
+	@Test
+	public void retryWait() throws IOException{
+		LocalSite site = new LocalSite();
+		try {
+			site.page("/a/", "a").fail("/a/", 10, 503);
+			RetryPolicy retry   = new RetryPolicy().setBackoff(10000, 10000);
+			PageCounter handler = new PageCounter();
+			handler.setRetryPolicy(retry);
+			Crawler crawler = new Crawler()
+				.setHandler(handler)
+				.setTimeBudget(300);
+			long start = System.nanoTime();
+			crawler.run(1, site.url("/a/"));
+			assertTrue((System.nanoTime() - start) / 1000000 < 1300);
+			assertTrue(crawler.isAborted());
+		} finally {
+			site.stop();
+		}
+	}
+
+	@Test
+	public void byteBudget() throws IOException{
+		LocalSite site = new LocalSite();
+		try {
+			int pages = site.tree(2, 4);
+			PageCounter handler = new PageCounter();
+			Crawler crawler = new Crawler()
+				.setHandler(handler)
+				.setSearchLength(pages)
+				.setByteBudget(200);
+			crawler.run(1, site.url("/site/"));
+			assertTrue(crawler.isBudgetExceeded());
+			assertTrue(crawler.getByteCount() >= 200);
+			assertTrue(handler.pages.size() < pages);
+		} finally {
+			site.stop();
+		}
+	}
+
+	@Test
+	public void runAfterAbort() throws IOException{
+		LocalSite site = new LocalSite();
+		try {
+			int pages = site.tree(2, 3);
+			PageCounter handler = new PageCounter();
+			Crawler crawler = new Crawler()
+				.setHandler(handler)
+				.setSearchLength(pages)
+				.setByteBudget(1);
+			crawler.run(2, site.url("/site/"));
+			assertTrue(crawler.isAborted());
+			handler.pages.clear();
+			crawler.setByteBudget(0).run(2, site.url("/site/"));
+			assertFalse(crawler.isAborted());
+			assertEquals(-1, crawler.getAbortLatency());
+			assertEquals(pages, handler.pages.size());
+		} finally {
+			site.stop();
+		}
+	}
+}
@@ -0,0 +1,182 @@
+package org.rexcrawler.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+import org.rexcrawler.Crawler;
+import org.rexcrawler.CrawlerHandler;
+import org.rexcrawler.Page;
+import org.rexcrawler.Reduced;
+import org.rexcrawler.StringArena;
+import org.rexcrawler.UniqueStringArena;
+import org.rexcrawler.handler.RexHandler;
+
+public class Arenas {
+	
+	static class LinkArena extends CrawlerHandler {
+		
+		public LinkArena(StringArena links) {
+			this.links = links;
+		}
+		
+		@Reduced
+		StringArena links;
+		
+		@Override
+		public boolean parsePage(Page page) throws IOException {
+			links.addAll(page.getHyperLinks());
+			return true;
+		}
+	}
+	
+	@Test
+	public void appending(){
+		StringArena arena = new StringArena(64, false);
+		List<String> expected = new ArrayList<>();
+		for(int i = 0; i < 1000; i++){
+			String s = "match-" + i + ((i % 7 == 0) ? " \u00e9\u4e2d\ud83d\ude00" : "");
+			expected.add(s);
+			arena.add(s);
+		}
+		arena.add("");
+		expected.add("");
+		String large = new String(new char[500]).replace('\0', 'x');
+		arena.add(large);
+		expected.add(large);
+		assertEquals(expected, arena);
+		assertEquals(expected, new ArrayList<>(arena));
+		assertEquals(large, arena.get(1001));
+		assertTrue(arena.getChunkCount() > 1);
+	}
+	
+	@Test
+	public void splicing(){
+		StringArena a = new StringArena();
+		StringArena b = new StringArena(1024, true);
+		for(int i = 0; i < 3000; i++){
+			a.add("a" + i);
+			b.add("b" + i);
+		}
+		int chunks = a.getChunkCount() + b.getChunkCount();
+		a.addAll(b);
+		assertEquals(chunks, a.getChunkCount());
+		assertEquals(6000, a.size());
+		assertEquals("b0", a.get(3000));
+		// both keep appending in new chunks
+		a.add("a-last");
+		b.add("b-last");
+		assertEquals("a-last", a.get(6000));
+		assertEquals(6001, a.size());
+		assertEquals("b-last", b.get(3000));
+		assertEquals("b2999", a.get(5999));
+	}
+	
+	@Test
+	public void manyReduces(){
+		StringArena master = new StringArena(64 * 1024, true);
+		for(int i = 0; i < 2000; i++){
+			// a forked handler with a few strings in a 1KB chunk
+			StringArena child = master.emptyCopy();
+			for(int j = 0; j < 3; j++)
+				child.add("match-" + i + "-" + j);
+			master.addAll(child);
+		}
+		assertEquals(6000, master.size());
+		assertEquals("match-1999-2", master.get(5999));
+		// about 90KB of text, not 2000 chunks of 1KB
+		assertTrue(master.getChunkCount() < 10);
+		assertTrue(master.getReservedBytes() < 4 * 64 * 1024);
+	}
+	
+	@Test
+	public void deduplicating(){
+		StringArena unique = new UniqueStringArena();
+		for(int i = 0; i < 10000; i++)
+			unique.add("link-" + (i % 1000));
+		assertEquals(1000, unique.size());
+		assertTrue(unique.contains("link-999"));
+		assertFalse(unique.contains("link-1000"));
+		assertEquals(42, unique.indexOf("link-42"));
+		StringArena other = unique.emptyCopy();
+		other.addAll(Arrays.asList("link-1", "new"));
+		unique.addAll(other);
+		assertEquals(1001, unique.size());
+		assertEquals("new", unique.get(1000));
+		// already encoded strings share the ids of the plain ones
+		UniqueStringArena ids = (UniqueStringArena) unique;
+		assertEquals(7, ids.intern("link-7".getBytes(StandardCharsets.UTF_8), "link-7".hashCode()));
+		assertEquals(1001, ids.intern("\u00e9t\u00e9".getBytes(StandardCharsets.UTF_8), "\u00e9t\u00e9".hashCode()));
+		assertEquals(1001, unique.indexOf("\u00e9t\u00e9"));
+	}
+	
+	@Test
+	public void serializing() throws IOException, ClassNotFoundException{
+		StringArena arena = new UniqueStringArena(128, true);
+		for(int i = 0; i < 100; i++)
+			arena.add("s\u00e8" + i);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream    out   = new ObjectOutputStream(bytes);
+		out.writeObject(arena);
+		out.close();
+		StringArena copy = (StringArena) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+		assertEquals(arena, copy);
+		assertTrue(copy.isDirect());
+		assertFalse(copy.add("s\u00e842"));
+	}
+	
+	@Test
+	public void compact(){
+		StringArena arena = new StringArena();
+		for(int i = 0; i < 100000; i++)
+			arena.add("http://www.example.org/" + i);
+		// about 29 bytes of text and 4 bytes of offset per string
+		assertTrue(arena.getReservedBytes() < 100000 * 40);
+	}
+	
+	@Test
+	public void reducing() throws IOException{
+		LocalSite site = new LocalSite();
+		try {
+			int pages = site.tree(3, 3);
+			LinkArena arena  = new LinkArena(new UniqueStringArena());
+			Crawler   crawler = new Crawler()
+				.setHandler(arena)
+				.setChunkSize(2)
+				.setSearchLength(pages);
+			crawler.run(2, site.url("/site/"));
+			Crawling.URLCollector expected = new Crawling.URLCollector();
+			new Crawler()
+				.setHandler(expected)
+				.setSearchLength(pages)
+				.run(1, site.url("/site/"));
+			assertEquals(expected.getLinks().size(), arena.links.size());
+			assertTrue(arena.links.containsAll(expected.getLinks()));
+			assertTrue(arena.links instanceof UniqueStringArena);
+			
+			Pattern    href  = Pattern.compile("href=\"(.*?)\"");
+			RexHandler regex = new RexHandler();
+			regex.addFilter(href, 1);
+			new Crawler()
+				.setHandler(regex)
+				.setChunkSize(2)
+				.setSearchLength(pages)
+				.run(2, site.url("/site/"));
+			assertEquals(pages - 1, regex.getResult(href).size());
+		} finally {
+			site.stop();
+		}
+	}
+}
@@ -0,0 +1,65 @@
+package org.rexcrawler.test;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.rexcrawler.distributed.CrawlCoordinator;
+import org.rexcrawler.distributed.CrawlNode;
+
+/**
+ * Scaling benchmark of the distributed search on loopback.
+ * <pre>
+ * DistributedBenchmark [maxNodes] [sites] [depth] [fanout] [latencyMs]
+ * </pre>
+ * Every node count from 1 to <code>maxNodes</code> crawls the same
+ * ring of local sites, each response delayed by <code>latencyMs</code>.
+ */
+public class DistributedBenchmark {
+	
+	public static void main(String[] args) throws Exception {
+		int maxNodes = (args.length > 0) ? Integer.parseInt(args[0]) : 4;
+		int sites    = (args.length > 1) ? Integer.parseInt(args[1]) : 16;
+		int depth    = (args.length > 2) ? Integer.parseInt(args[2]) : 3;
+		int fanout   = (args.length > 3) ? Integer.parseInt(args[3]) : 4;
+		int latency  = (args.length > 4) ? Integer.parseInt(args[4]) : 5;
+		
+		List<LocalSite> ring  = new ArrayList<>();
+		int             pages = 0;
+		for(int i = 0; i < sites; i++){
+			LocalSite site = new LocalSite().setLatency(latency);
+			pages += site.tree(depth, fanout);
+			ring.add(site);
+		}
+		for(int i = 0; i < sites; i++)
+			ring.get(i).append("/site/", "<a href=\"" + ring.get((i + 1) % sites).url("/site/") + "\"></a>");
+		
+		System.out.println("nodes\tpages\tms\tpages/s");
+		for(int count = 1; count <= maxNodes; count++){
+			List<CrawlNode>         nodes     = new ArrayList<>();
+			List<InetSocketAddress> addresses = new ArrayList<>();
+			for(int i = 0; i < count; i++){
+				CrawlNode node = new CrawlNode(new Distributing.PageCollector()).setParallelism(4);
+				node.getCrawler().setChunkSize(4);
+				addresses.add(node.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0)));
+				nodes.add(node);
+			}
+			for(int i = 0; i < count; i++)
+				nodes.get(i).join(addresses, i);
+			
+			CrawlCoordinator coordinator = new CrawlCoordinator(new Distributing.PageCollector(), addresses);
+			long start = System.nanoTime();
+			coordinator.run(ring.get(0).url("/site/"));
+			long elapsed = (System.nanoTime() - start) / 1000000;
+			coordinator.shutdown();
+			for(CrawlNode node : nodes)
+				node.awaitTermination();
+			
+			System.out.println(count + "\t" + coordinator.getFollowedLinkCount() + "/" + pages 
+					+ "\t" + elapsed + "\t" + (coordinator.getFollowedLinkCount() * 1000 / Math.max(1, elapsed)));
+		}
+		for(LocalSite site : ring)
+			site.stop();
+	}
+}
@@ -0,0 +1,237 @@
+package org.rexcrawler.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.ObjectOutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.rexcrawler.CrawlerHandler;
+import org.rexcrawler.Page;
+import org.rexcrawler.Reduced;
+import org.rexcrawler.distributed.CrawlCoordinator;
+import org.rexcrawler.distributed.CrawlNode;
+
+public class Distributing {
+	
+	// Handler following every link, sites are linked to each other
+	public static class PageCollector extends CrawlerHandler {
+		
+		public PageCollector() {
+			this.pages = new TreeSet<>();
+		}
+		
+		@Reduced
+		Set<String> pages;
+
+		@Override
+		public boolean parsePage(Page page) throws IOException {
+			this.pages.add(page.toString());
+			return true;
+		}
+		
+		@Override
+		public List<String> filterLinks(Page page, List<String> links) {
+			return links;
+		}
+	}
+	
+	@Before
+	public void makeSites() throws IOException{
+		this.sites    = new ArrayList<>();
+		this.expected = new TreeSet<>();
+		for(int i = 0; i < SITES; i++){
+			LocalSite site = new LocalSite();
+			site.tree(2, 3);
+			sites.add(site);
+		}
+		// ring of sites, every page is reachable from the first root
+		for(int i = 0; i < SITES; i++){
+			LocalSite next = sites.get((i + 1) % SITES);
+			sites.get(i).append("/site/0/0/", "<a href=\"" + next.url("/site/") + "\"></a>");
+			collect(sites.get(i), "/site/", 2);
+		}
+	}
+	
+	private void collect(LocalSite site, String path, int depth) throws IOException{
+		expected.add(site.url(path).toString());
+		if(depth > 0)
+			for(int i = 0; i < 3; i++)
+				collect(site, path + i + "/", depth - 1);
+	}
+	
+	@After
+	public void stopSites(){
+		for(LocalSite site : sites)
+			site.stop();
+	}
+	
+	@Test
+	public void inProcessNodes() throws Exception{
+		for(int count = 1; count <= 3; count++){
+			List<CrawlNode>         nodes     = new ArrayList<>();
+			List<InetSocketAddress> addresses = new ArrayList<>();
+			for(int i = 0; i < count; i++){
+				CrawlNode node = new CrawlNode(new PageCollector()).setBatchSize(4);
+				node.getCrawler().setChunkSize(3);
+				addresses.add(node.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0)));
+				nodes.add(node);
+			}
+			for(int i = 0; i < count; i++)
+				nodes.get(i).join(addresses, i);
+			
+			PageCollector    merged      = new PageCollector();
+			CrawlCoordinator coordinator = new CrawlCoordinator(merged, addresses);
+			coordinator.run(sites.get(0).url("/site/"));
+			coordinator.shutdown();
+			for(CrawlNode node : nodes)
+				node.awaitTermination();
+			
+			assertEquals(expected, merged.pages);
+			assertEquals(expected.size(), coordinator.getFollowedLinkCount());
+		}
+	}
+	
+	@Test
+	public void repeatedRuns() throws Exception{
+		List<CrawlNode>         nodes     = new ArrayList<>();
+		List<InetSocketAddress> addresses = new ArrayList<>();
+		for(int i = 0; i < 2; i++){
+			CrawlNode node = new CrawlNode(new PageCollector()).setBatchSize(4).setParallelism(2);
+			node.getCrawler().setChunkSize(3);
+			addresses.add(node.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0)));
+			nodes.add(node);
+		}
+		for(int i = 0; i < 2; i++)
+			nodes.get(i).join(addresses, i);
+		
+		PageCollector    first       = new PageCollector();
+		CrawlCoordinator coordinator = new CrawlCoordinator(first, addresses);
+		coordinator.run(sites.get(0).url("/site/"));
+		assertEquals(expected, first.pages);
+		assertEquals(0, coordinator.getLostLinkCount());
+		// the pages are already seen, the first results are not merged again
+		PageCollector second = new PageCollector();
+		new CrawlCoordinator(second, addresses).run(sites.get(0).url("/site/"));
+		assertEquals(0, second.pages.size());
+		coordinator.shutdown();
+		for(CrawlNode node : nodes)
+			node.awaitTermination();
+	}
+	
+	@Test
+	public void separateJvms() throws Exception{
+		final int               count     = 2;
+		List<InetSocketAddress> addresses = new ArrayList<>();
+		for(int i = 0; i < count; i++)
+			addresses.add(new InetSocketAddress(InetAddress.getLoopbackAddress(), freePort()));
+		
+		List<String> command = new ArrayList<>();
+		command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(CrawlNode.class.getName());
+		command.add(PageCollector.class.getName());
+		command.add("0");
+		for(InetSocketAddress address : addresses)
+			command.add(address.getHostString() + ":" + address.getPort());
+		
+		List<Process> processes = new ArrayList<>();
+		for(int i = 0; i < count; i++){
+			command.set(5, Integer.toString(i));
+			processes.add(new ProcessBuilder(command).inheritIO().start());
+		}
+		try {
+			PageCollector    merged      = new PageCollector();
+			CrawlCoordinator coordinator = new CrawlCoordinator(merged, addresses);
+			coordinator.run(sites.get(0).url("/site/"));
+			coordinator.shutdown();
+			for(Process process : processes)
+				assertEquals(0, process.waitFor());
+			assertEquals(expected, merged.pages);
+		} finally {
+			for(Process process : processes)
+				process.destroy();
+		}
+	}
+	
+	@Test
+	public void rejectedClasses() throws Exception{
+		final ServerSocket server = new ServerSocket(0, 0, InetAddress.getLoopbackAddress());
+		// node answering the collect with a class no handler reduces
+		Thread node = new Thread(){
+			@Override
+			public void run() {
+				try (Socket socket = server.accept()){
+					DataInputStream  in  = new DataInputStream(socket.getInputStream());
+					DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+					long             received = 0;
+					while(true){
+						byte type = in.readByte();
+						if(type == 1){
+							for(int i = in.readInt(); i > 0; i--, received++) in.readUTF();
+						}
+						else if(type == 2){
+							out.writeBoolean(true);
+							out.writeLong(0);
+							out.writeLong(received);
+							out.writeLong(received);
+							out.writeLong(0);
+							out.flush();
+						}
+						else if(type == 3){
+							ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+							ObjectOutputStream    oos   = new ObjectOutputStream(bytes);
+							oos.writeObject(new Object[]{ new File("/etc/passwd") });
+							oos.close();
+							out.writeInt(bytes.size());
+							bytes.writeTo(out);
+							out.flush();
+						}
+					}
+				} catch (IOException e) {
+					// coordinator gone
+				}
+			}
+		};
+		node.start();
+		try {
+			List<InetSocketAddress> addresses = new ArrayList<>();
+			addresses.add((InetSocketAddress) server.getLocalSocketAddress());
+			new CrawlCoordinator(new PageCollector(), addresses).run(sites.get(0).url("/site/"));
+			fail("java.io.File deserialized");
+		} catch (InvalidClassException e) {
+			// rejected by the filter
+		} finally {
+			server.close();
+			node.join(5000);
+		}
+	}
+	
+	private static int freePort() throws IOException{
+		try(ServerSocket socket = new ServerSocket(0, 0, InetAddress.getLoopbackAddress())){
+			return socket.getLocalPort();
+		}
+	}
+	
+	private static final int SITES = 4;
+	private List<LocalSite>  sites;
+	private Set<String>      expected;
+}
@@ -0,0 +1,134 @@
+package org.rexcrawler.test;
+
+import java.net.HttpURLConnection;
+import java.util.regex.Pattern;
+
+import org.rexcrawler.Page;
+import org.rexcrawler.handler.RexHandler;
+import org.rexcrawler.handler.SelectorHandler;
+
+/**
+ * Extraction benchmark of the {@link SelectorHandler} against 
+ * the equivalent {@link RexHandler} patterns.
+ * <pre>
+ * ExtractionBenchmark [items] [rounds]
+ * </pre>
+ * The page is a list of <code>items</code> products, nested in 
+ * two levels of div. Only the parsing is measured.
+ */
+public class ExtractionBenchmark {
+	
+	private static interface Case {
+		int run(Page page) throws Exception;
+	}
+	
+	public static void main(String[] args) throws Exception {
+		int items  = (args.length > 0) ? Integer.parseInt(args[0]) : 2000;
+		int rounds = (args.length > 1) ? Integer.parseInt(args[1]) : 20;
+		
+		StringBuilder html = new StringBuilder("<html><body><div id=\"list\">");
+		for(int i = 0; i < items; i++)
+			html.append("<div class=\"item\"><div class=\"name\"><h2>Item ").append(i).append("</h2></div>")
+				.append("<span class=\"price\">").append(i).append(".99</span>")
+				.append("<a href=\"/item/").append(i).append("\">details</a></div>\n");
+		html.append("</div></body></html>");
+		
+		LocalSite site = new LocalSite();
+		site.page("/list/", html.toString());
+		final Page page = new Page((HttpURLConnection) site.url("/list/").openConnection());
+		page.getContent();
+		site.stop();
+		
+		final Pattern price = Pattern.compile("<span class=\"price\">(.*?)</span>");
+		final Pattern title = Pattern.compile("<h2>(.*?)</h2>");
+		final Pattern link  = Pattern.compile("<a href=\"(.*?)\">");
+		// what "span.price" means: any attribute order, other classes
+		final Pattern any   = Pattern.compile("<span[^>]*\\sclass=\"(?:[^\"]*\\s)?price(?:\\s[^\"]*)?\"[^>]*>(.*?)</span>", 
+				Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+		
+		System.out.println(html.length() / 1024 + "KB, " + items + " items, " + rounds + " rounds");
+		System.out.println("case\tmatches\tms/page");
+		bench("regex price", rounds, page, new Case() {
+			public int run(Page page) throws Exception {
+				RexHandler handler = new RexHandler();
+				handler.addFilter(price, 1);
+				handler.parsePage(page);
+				return handler.getResults().size();
+			}
+		});
+		bench("regex price, any attributes", rounds, page, new Case() {
+			public int run(Page page) throws Exception {
+				RexHandler handler = new RexHandler();
+				handler.addFilter(any, 1);
+				handler.parsePage(page);
+				return handler.getResults().size();
+			}
+		});
+		bench("select price", rounds, page, new Case() {
+			public int run(Page page) throws Exception {
+				SelectorHandler handler = new SelectorHandler().select("price", "span.price");
+				handler.parsePage(page);
+				return handler.getResults().size();
+			}
+		});
+		bench("regex 3 fields", rounds, page, new Case() {
+			public int run(Page page) throws Exception {
+				RexHandler handler = new RexHandler();
+				handler.addFilter(price, 1).addFilter(title, 1).addFilter(link, 1);
+				handler.parsePage(page);
+				return handler.getResults().size();
+			}
+		});
+		bench("select 3 fields", rounds, page, new Case() {
+			public int run(Page page) throws Exception {
+				SelectorHandler handler = new SelectorHandler()
+					.select("price", "div.item span.price")
+					.select("title", "div.item h2")
+					.select("link",  "div.item a", "href");
+				handler.parsePage(page);
+				return handler.getResults().size();
+			}
+		});
+		// addNode() scans from the start of the page for each match,
+		// a tenth of the page keeps it measurable
+		final Page small = smaller(html.toString(), items / 10);
+		bench("regex addNode(div) 1/10", Math.max(1, rounds / 10), small, new Case() {
+			public int run(Page page) throws Exception {
+				RexHandler handler = new RexHandler().addNode("div");
+				handler.parsePage(page);
+				return handler.getResults().size();
+			}
+		});
+		bench("select div 1/10", rounds, small, new Case() {
+			public int run(Page page) throws Exception {
+				SelectorHandler handler = new SelectorHandler().select("div", "div");
+				handler.parsePage(page);
+				return handler.getResults().size();
+			}
+		});
+	}
+	
+	private static Page smaller(String html, int items) throws Exception {
+		int end = 0;
+		for(int i = 0; i < items; i++)
+			end = html.indexOf('\n', end) + 1;
+		LocalSite site = new LocalSite();
+		site.page("/small/", html.substring(0, end) + "</div></body></html>");
+		Page page = new Page((HttpURLConnection) site.url("/small/").openConnection());
+		page.getContent();
+		site.stop();
+		return page;
+	}
+	
+	private static void bench(String name, int rounds, Page page, Case test) throws Exception {
+		int matches = 0;
+		long warmup = System.nanoTime() + 1000000000L;
+		while(System.nanoTime() < warmup)
+			matches = test.run(page); // let the JIT compile both sides
+		long start = System.nanoTime();
+		for(int i = 0; i < rounds; i++)
+			test.run(page);
+		long elapsed = System.nanoTime() - start;
+		System.out.printf("%s\t%d\t%.2f%n", name, matches, elapsed / 1e6 / rounds);
+	}
+}
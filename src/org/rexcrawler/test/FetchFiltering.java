@@ -0,0 +1,59 @@
+package org.rexcrawler.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.Test;
+import org.rexcrawler.Crawler;
+import org.rexcrawler.FetchPolicy;
+
+public class FetchFiltering {
+	
+	@Test
+	public void extensions(){
+		FetchPolicy policy = new FetchPolicy().rejectExtensions("pdf", "JPG");
+		assertFalse(policy.acceptsLink("http://www.example.org/a/b.pdf"));
+		assertFalse(policy.acceptsLink("http://www.example.org/a/b.jpg?size=big"));
+		assertFalse(policy.acceptsLink("http://www.example.org/a/b.PDF#page=2"));
+		assertTrue (policy.acceptsLink("http://www.example.org/a.pdf/b"));
+		assertTrue (policy.acceptsLink("http://www.example.org/a/b.html"));
+		assertTrue (policy.acceptsLink("http://www.example.org/a/?file=b.pdf"));
+		assertTrue (policy.acceptsLink("http://www.example.org"));
+	}
+	
+	@Test
+	public void headers() throws IOException {
+		LocalSite site = new LocalSite();
+		try {
+			byte[] image = new byte[4096];
+			byte[] huge  = new byte[64 * 1024];
+			site.page("/site/", "<a href=\"/site/doc.pdf\"></a>"
+					+ "<a href=\"/site/image\"></a>"
+					+ "<a href=\"/site/huge\"></a>"
+					+ "<a href=\"/site/page\"></a>");
+			site.resource("/site/doc.pdf", 200, "application/pdf", new byte[10], 0);
+			site.resource("/site/image",   200, "image/png",       image, 0);
+			site.resource("/site/huge",    200, "text/html",       huge, 0);
+			site.page("/site/page", "<html></html>");
+			
+			Crawling.URLCollector handler = new Crawling.URLCollector();
+			FetchPolicy           policy  = FetchPolicy.textOnly().setMaxContentLength(16 * 1024);
+			handler.setFetchPolicy(policy);
+			Crawler crawler = new Crawler()
+				.setHandler(handler)
+				.setSearchLength(10);
+			crawler.run(site.url("/site/"));
+			
+			// root + image + huge + page, the pdf never enters the frontier
+			assertEquals(4, crawler.getFollowedLinkCount());
+			assertEquals(1, policy.getSkippedLinkCount());
+			assertEquals(2, policy.getSkippedResponseCount());
+			assertEquals(image.length + huge.length, policy.getSkippedBytes());
+		} finally {
+			site.stop();
+		}
+	}
+}
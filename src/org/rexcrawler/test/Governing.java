@@ -0,0 +1,101 @@
+package org.rexcrawler.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.rexcrawler.Crawler;
+import org.rexcrawler.MemoryGovernor;
+import org.rexcrawler.test.Retrying.PageCounter;
+
+public class Governing {
+
+	@Test
+	public void levels() throws InterruptedException{
+		final MemoryGovernor governor = new MemoryGovernor(1000);
+		assertEquals(MemoryGovernor.Level.NORMAL, governor.getLevel());
+		long first = governor.reserve(800);
+		assertEquals(MemoryGovernor.Level.THROTTLE, governor.getLevel());
+		long second = governor.reserve(150);
+		assertEquals(MemoryGovernor.Level.CRITICAL, governor.getLevel());
+
+		final CountDownLatch fetched = new CountDownLatch(1);
+		Thread fetcher = new Thread(){
+			@Override
+			public void run() {
+				try {
+					governor.awaitFetch();
+					fetched.countDown();
+				} catch (InterruptedException e) { }
+			}
+		};
+		fetcher.start();
+		assertTrue(! fetched.await(200, TimeUnit.MILLISECONDS));
+		governor.release(first);
+		assertTrue(fetched.await(1, TimeUnit.SECONDS));
+		assertEquals(1, governor.getThrottledFetchCount());
+		governor.release(second);
+		assertEquals(0, governor.getUsedBytes());
+		assertEquals(950, governor.getPeakBytes());
+	}
+
+	@Test
+	public void spilling() throws IOException{
+		LocalSite site = new LocalSite();
+		try {
+			int pages = site.tree(3, 6);
+			MemoryGovernor governor = new MemoryGovernor(4096);
+			PageCounter    handler  = new PageCounter();
+			Crawler crawler = new Crawler()
+				.setHandler(handler)
+				.setChunkSize(4)
+				.setSearchLength(pages)
+				.setMemoryGovernor(governor);
+			crawler.run(2, site.url("/site/"));
+			// no URL is lost to the spill
+			assertEquals(pages, handler.pages.size());
+			assertTrue(governor.getSpillCount() > 0);
+			assertEquals(governor.getSpillCount(), governor.getRestoreCount());
+			assertEquals(0, governor.getSpilledCount());
+			assertTrue(governor.getResultBytes() > 0);
+			assertTrue(governor.getPeakBytes() > governor.getBudget() * 0.7);
+			// the drained spill file is written again from the start
+			PageCounter again = new PageCounter();
+			long        count = governor.getSpillCount();
+			crawler.setHandler(again).run(2, site.url("/site/"));
+			assertEquals(pages, again.pages.size());
+			assertTrue(governor.getSpillCount() > count);
+			assertEquals(governor.getSpillCount(), governor.getRestoreCount());
+		} finally {
+			site.stop();
+		}
+	}
+
+	@Test
+	public void noPressure() throws IOException{
+		LocalSite site = new LocalSite();
+		try {
+			int pages = site.tree(3, 6);
+			MemoryGovernor governor = new MemoryGovernor(64 * 1024 * 1024);
+			PageCounter    handler  = new PageCounter();
+			new Crawler()
+				.setHandler(handler)
+				.setChunkSize(4)
+				.setSearchLength(pages)
+				.setMemoryGovernor(governor)
+				.run(2, site.url("/site/"));
+			assertEquals(pages, handler.pages.size());
+			assertEquals(0, governor.getSpillCount());
+			assertEquals(0, governor.getSkippedForkCount());
+			assertEquals(0, governor.getThrottledFetchCount());
+			assertEquals(0, governor.getFrontierBytes());
+			assertEquals(0, governor.getBufferBytes());
+		} finally {
+			site.stop();
+		}
+	}
+}
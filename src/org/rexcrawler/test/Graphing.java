@@ -0,0 +1,106 @@
+package org.rexcrawler.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+import org.rexcrawler.Crawler;
+import org.rexcrawler.graph.LinkGraph;
+import org.rexcrawler.graph.LinkGraphCollector;
+import org.rexcrawler.test.Retrying.PageCounter;
+
+public class Graphing {
+
+	@Test
+	public void compressedRows(){
+		LinkGraphCollector collector = new LinkGraphCollector();
+		collector.collect("a", Arrays.asList("b", "c", "b"));
+		collector.collect("b", Arrays.asList("c"));
+		collector.collect("c", Arrays.asList("a"));
+		assertEquals(5, collector.getEdgeCount());
+		LinkGraph graph = collector.build();
+		int a = graph.getId("a"), b = graph.getId("b"), c = graph.getId("c");
+		assertEquals(3, graph.size());
+		assertEquals(4, graph.getEdgeCount());
+		assertEquals(2, graph.getOutDegree(a));
+		assertEquals(2, graph.getInDegree(c));
+		assertArrayEquals(new int[]{ b, c }, graph.getOutLinks(a));
+		assertArrayEquals(new int[]{ a, b }, graph.getInLinks(c));
+		assertEquals("c", graph.getUrl(c));
+		assertEquals(-1, graph.getId("d"));
+	}
+
+	@Test
+	public void pageRank(){
+		LinkGraphCollector collector = new LinkGraphCollector();
+		// star: every leaf links the center, the center links nothing
+		List<String> center = Arrays.asList("center");
+		for(int i = 0; i < 10; i++)
+			collector.collect("leaf" + i, center);
+		LinkGraph graph = collector.build();
+		double[] rank = graph.pageRank(0.85, 100, 1e-12);
+		double sum = 0;
+		for(double r : rank) sum += r;
+		assertEquals(1, sum, 1e-9);
+		int top = graph.getId("center");
+		for(int v = 0; v < graph.size(); v++)
+			if(v != top) assertTrue(rank[top] > rank[v]);
+	}
+
+	@Test
+	public void parallelRank(){
+		Random random = new Random(7);
+		LinkGraphCollector collector = new LinkGraphCollector();
+		int n = 20000;
+		for(int v = 0; v < n; v++){
+			List<String> links = new ArrayList<>();
+			for(int k = random.nextInt(8); k > 0; k--)
+				links.add(Integer.toString(random.nextInt(n)));
+			collector.collect(Integer.toString(v), links);
+		}
+		LinkGraph graph = collector.build();
+		ForkJoinPool single = new ForkJoinPool(1);
+		ForkJoinPool many   = new ForkJoinPool(4);
+		try {
+			double[] expected = graph.pageRank(single, 0.85, 30, 0);
+			double[] actual   = graph.pageRank(many,   0.85, 30, 0);
+			assertArrayEquals(expected, actual, 1e-12);
+		} finally {
+			single.shutdown();
+			many.shutdown();
+		}
+	}
+
+	@Test
+	public void crawlGraph() throws IOException{
+		LocalSite site = new LocalSite();
+		try {
+			int pages = site.tree(2, 3);
+			LinkGraphCollector collector = new LinkGraphCollector();
+			PageCounter handler = new PageCounter();
+			handler.setLinkGraph(collector);
+			new Crawler()
+				.setHandler(handler)
+				.setChunkSize(1)
+				.setSearchLength(pages)
+				.run(4, site.url("/site/"));
+			LinkGraph graph = collector.build();
+			assertEquals(pages, graph.size());
+			assertEquals(pages - 1, graph.getEdgeCount());
+			int root = graph.getId(site.url("/site/").toString());
+			assertEquals(3, graph.getOutDegree(root));
+			assertEquals(0, graph.getInDegree(root));
+			assertEquals(1, graph.getInDegree(graph.getId(site.url("/site/2/1/").toString())));
+		} finally {
+			site.stop();
+		}
+	}
+}
@@ -0,0 +1,128 @@
+package org.rexcrawler.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.rexcrawler.Crawler;
+import org.rexcrawler.net.AdaptiveLimiter;
+
+public class Limiting {
+	
+	private static final long MS = 1000000L;
+	
+	@Test
+	public void additiveIncrease() throws InterruptedException{
+		AdaptiveLimiter limiter = new AdaptiveLimiter(2, 1, 8, 0.5, 2.0);
+		for(int i = 0; i < 100; i++){
+			limiter.acquire("a");
+			limiter.release("a", 10 * MS, 200);
+		}
+		assertEquals(8.0, limiter.getLimit("a"), 0.001);
+		assertEquals(0, limiter.getMetrics().get("a").getDecreases());
+		assertEquals(100, limiter.getMetrics().get("a").getRequests());
+	}
+	
+	@Test
+	public void multiplicativeDecrease() throws InterruptedException{
+		AdaptiveLimiter limiter = new AdaptiveLimiter(8, 1, 8, 0.5, 2.0);
+		limiter.acquire("a");
+		limiter.release("a", 10 * MS, 503);
+		assertEquals(4.0, limiter.getLimit("a"), 0.001);
+		assertEquals(1, limiter.getMetrics().get("a").getThrottled());
+		// the other hosts are not affected
+		assertEquals(8.0, limiter.getLimit("b"), 0.001);
+	}
+	
+	@Test
+	public void latencyDegradation() throws InterruptedException{
+		AdaptiveLimiter limiter = new AdaptiveLimiter(4, 1, 64, 0.5, 2.0);
+		for(int i = 0; i < 20; i++){
+			limiter.acquire("a");
+			limiter.release("a", 10 * MS, 200);
+		}
+		double grown = limiter.getLimit("a");
+		for(int i = 0; i < 5; i++){
+			limiter.acquire("a");
+			limiter.release("a", 200 * MS, 200);
+		}
+		assertTrue(limiter.getLimit("a") < grown);
+		assertTrue(limiter.getMetrics().get("a").getDecreases() > 0);
+	}
+	
+	@Test
+	public void limitEnforced() throws InterruptedException{
+		final AdaptiveLimiter limiter   = new AdaptiveLimiter(3, 3, 3, 0.5, 2.0);
+		final AtomicInteger   inFlight  = new AtomicInteger();
+		final AtomicInteger   maxFlight = new AtomicInteger();
+		Thread[] threads = new Thread[10];
+		for(int i = 0; i < threads.length; i++){
+			threads[i] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						for(int j = 0; j < 10; j++){
+							limiter.acquire("a");
+							int current = inFlight.incrementAndGet();
+							synchronized (maxFlight) {
+								maxFlight.set(Math.max(maxFlight.get(), current));
+							}
+							Thread.sleep(2);
+							inFlight.decrementAndGet();
+							limiter.release("a", 2 * MS, 200);
+						}
+					} catch (InterruptedException e) { }
+				}
+			});
+			threads[i].start();
+		}
+		for(Thread t : threads) t.join();
+		assertEquals(3, maxFlight.get());
+	}
+	
+	@Test
+	public void crawling() throws IOException{
+		LocalSite site = new LocalSite();
+		try {
+			int pages = site.tree(3, 3);
+			AdaptiveLimiter limiter = new AdaptiveLimiter();
+			Crawler crawler = new Crawler()
+				.setHandler(new Crawling.URLCollector())
+				.setConcurrencyLimiter(limiter)
+				.setChunkSize(2)
+				.setSearchLength(pages * 2);
+			crawler.run(4, site.url("/site/"));
+			assertEquals(pages, crawler.getFollowedLinkCount());
+			String host = site.url("/").getAuthority();
+			assertEquals(pages, limiter.getMetrics().get(host).getRequests());
+			assertEquals(0, limiter.getMetrics().get(host).getInFlight());
+		} finally {
+			site.stop();
+		}
+	}
+	
+	@Test
+	public void beyondWorkers() throws IOException{
+		LocalSite site = new LocalSite();
+		try {
+			int pages = site.tree(2, 12);
+			site.setLatency(50);
+			AdaptiveLimiter limiter = new AdaptiveLimiter(16, 16, 16, 0.5, 2.0);
+			Crawler crawler = new Crawler()
+				.setHandler(new Crawling.URLCollector())
+				.setConcurrencyLimiter(limiter)
+				.setChunkSize(1)
+				.setSearchLength(pages);
+			crawler.run(2, site.url("/site/"));
+			assertEquals(pages, crawler.getFollowedLinkCount());
+			// the permits, not the 2 workers, bound the requests in flight
+			assertTrue(site.getMaxConcurrency() > 4);
+			assertTrue(site.getMaxConcurrency() <= 16);
+		} finally {
+			site.stop();
+		}
+	}
+}
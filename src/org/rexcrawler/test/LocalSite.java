@@ -0,0 +1,212 @@
+package org.rexcrawler.test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Loopback HTTP server used by the tests that cannot
+ * depend on a reachable <code>root</code>.
+ * 
+ * @author shake0
+ *
+ */
+public class LocalSite implements HttpHandler {
+	
+	/*
+	 * Static resource
+	 */
+	static class Resource {
+		
+		public Resource(int status, String type, byte[] body, long delay) {
+			this.status = status;
+			this.type   = type;
+			this.body   = body;
+			this.delay  = delay;
+		}
+		
+		int    status;
+		String type;
+		byte[] body;
+		long   delay;
+	}
+	
+	/*
+	 * Misbehaviour of the first requests to a resource
+	 */
+	static class Fault {
+		
+		public Fault(int times, int status, long delay) {
+			this.remaining = new AtomicInteger(times);
+			this.status    = status;
+			this.delay     = delay;
+		}
+		
+		AtomicInteger remaining;
+		int           status;
+		long          delay;
+	}
+	
+	public LocalSite() throws IOException {
+		this.resources = new ConcurrentHashMap<>();
+		this.faults    = new ConcurrentHashMap<>();
+		this.requests  = new AtomicInteger();
+		this.inFlight  = new AtomicInteger();
+		this.peak      = new AtomicInteger();
+		this.server    = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		this.server.createContext("/", this);
+		this.executor  = Executors.newCachedThreadPool();
+		this.server.setExecutor(this.executor);
+		this.server.start();
+	}
+	
+	/**
+	 * Build a site of <code>depth</code> levels where each page 
+	 * links <code>fanout</code> children. The root is "/site/".
+	 * @return number of pages
+	 */
+	public int tree(int depth, int fanout){
+		return tree("/site/", depth, fanout);
+	}
+	
+	private int tree(String path, int depth, int fanout){
+		StringBuilder html  = new StringBuilder("<html><body>");
+		int           pages = 1;
+		if(depth > 0){
+			for(int i = 0; i < fanout; i++){
+				String child = path + i + "/";
+				html.append("<a href=\"").append(child).append("\">").append(i).append("</a>");
+				pages += tree(child, depth - 1, fanout);
+			}
+		}
+		html.append("</body></html>");
+		page(path, html.toString());
+		return pages;
+	}
+	
+	public LocalSite page(String path, String html){
+		return resource(path, 200, "text/html", html.getBytes(StandardCharsets.UTF_8), 0);
+	}
+	
+	/**
+	 * Append some HTML to an existing page
+	 */
+	public LocalSite append(String path, String html){
+		Resource resource = resources.get(path);
+		byte[]   extra    = html.getBytes(StandardCharsets.UTF_8);
+		byte[]   body     = new byte[resource.body.length + extra.length];
+		System.arraycopy(resource.body, 0, body, 0, resource.body.length);
+		System.arraycopy(extra, 0, body, resource.body.length, extra.length);
+		return resource(path, resource.status, resource.type, body, resource.delay);
+	}
+	
+	/**
+	 * Delay every response, to simulate a remote server
+	 */
+	public LocalSite setLatency(long latency){
+		this.latency = latency;
+		return this;
+	}
+	
+	public LocalSite resource(String path, int status, String type, byte[] body, long delay){
+		this.resources.put(path, new Resource(status, type, body, delay));
+		return this;
+	}
+	
+	/**
+	 * The first <code>times</code> requests to the path answer <code>status</code>
+	 */
+	public LocalSite fail(String path, int times, int status){
+		this.faults.put(path, new Fault(times, status, 0));
+		return this;
+	}
+	
+	/**
+	 * The first <code>times</code> requests to the path are delayed
+	 */
+	public LocalSite stall(String path, int times, long delay){
+		this.faults.put(path, new Fault(times, 0, delay));
+		return this;
+	}
+	
+	public URL url(String path) throws MalformedURLException{
+		return url("localhost", path);
+	}
+	
+	/*
+	 * URL of the site under another host name, for the resolvers
+	 */
+	public URL url(String host, String path) throws MalformedURLException{
+		return new URL("http://" + host + ":" + server.getAddress().getPort() + path);
+	}
+	
+	public int getRequestCount(){
+		return this.requests.get();
+	}
+	
+	/**
+	 * Highest number of requests served at the same time
+	 */
+	public int getMaxConcurrency(){
+		return this.peak.get();
+	}
+	
+	public void stop(){
+		this.server.stop(0);
+		this.executor.shutdownNow();
+	}
+
+	@Override
+	public void handle(HttpExchange exchange) throws IOException {
+		requests.incrementAndGet();
+		int current = inFlight.incrementAndGet(), max;
+		while(current > (max = peak.get()) && ! peak.compareAndSet(max, current));
+		String   path     = exchange.getRequestURI().getPath();
+		Resource resource = resources.get(path);
+		if(resource == null)
+			resource = new Resource(404, "text/plain", new byte[0], 0);
+		Fault    fault    = faults.get(path);
+		if(fault != null && fault.remaining.getAndDecrement() > 0)
+			resource = new Resource((fault.status == 0) ? resource.status : fault.status, 
+					resource.type, (fault.status == 0) ? resource.body : new byte[0], resource.delay + fault.delay);
+		try {
+			if(resource.delay + latency > 0) Thread.sleep(resource.delay + latency);
+			exchange.getResponseHeaders().set("Content-Type", resource.type);
+			exchange.sendResponseHeaders(resource.status, resource.body.length == 0 ? -1 : resource.body.length);
+			if(resource.body.length > 0 && ! "HEAD".equals(exchange.getRequestMethod())){
+				OutputStream os = exchange.getResponseBody();
+				os.write(resource.body);
+				os.close();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (IOException e) {
+			// client gone
+		} finally {
+			inFlight.decrementAndGet();
+			exchange.close();
+		}
+	}
+	
+	private final Map<String, Resource> resources;
+	private final Map<String, Fault>    faults;
+	private final AtomicInteger         requests;
+	private final AtomicInteger         inFlight;
+	private final AtomicInteger         peak;
+	private final HttpServer            server;
+	private final ExecutorService       executor;
+	private volatile long               latency;
+}
@@ -0,0 +1,176 @@
+package org.rexcrawler.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.rexcrawler.CrawlPipeline;
+import org.rexcrawler.CrawlPipeline.Stage;
+import org.rexcrawler.Crawler;
+import org.rexcrawler.Page;
+import org.rexcrawler.test.Retrying.PageCounter;
+
+public class Pipelining {
+	
+	static class SlowCollector extends Crawling.URLCollector {
+		@Override
+		public boolean parsePage(Page page) throws IOException {
+			try { Thread.sleep(5); } 
+			catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+			return super.parsePage(page);
+		}
+	}
+	
+	static class StopAfter extends Crawling.URLCollector {
+		public StopAfter(int pages) {
+			this.pages = pages;
+		}
+		@Override
+		public boolean parsePage(Page page) throws IOException {
+			super.parsePage(page);
+			return --pages > 0;
+		}
+		int pages;
+	}
+	
+	@Test
+	public void sameAsCrawler() throws IOException{
+		LocalSite site = new LocalSite();
+		try {
+			int pages = site.tree(3, 3);
+			Crawling.URLCollector expected = new Crawling.URLCollector();
+			new Crawler()
+				.setHandler(expected)
+				.setSearchLength(pages * 2)
+				.run(2, site.url("/site/"));
+			
+			Crawling.URLCollector handler  = new Crawling.URLCollector();
+			CrawlPipeline         pipeline = new CrawlPipeline(handler)
+				.setIoThreads(4)
+				.setCpuThreads(2)
+				.setSearchLength(pages * 2);
+			pipeline.run(site.url("/site/"));
+			assertEquals(pages, pipeline.getFollowedLinkCount());
+			assertEquals(pages, pipeline.getProcessedCount(Stage.FETCH));
+			assertEquals(pages, pipeline.getProcessedCount(Stage.PARSE));
+			assertEquals(pages, pipeline.getProcessedCount(Stage.FILTER));
+			assertEquals(expected.getLinks(), handler.getLinks());
+			for(Stage stage : Stage.values())
+				assertEquals(0, pipeline.getQueueDepth(stage));
+		} finally {
+			site.stop();
+		}
+	}
+	
+	@Test
+	public void boundedQueues() throws IOException{
+		LocalSite site = new LocalSite();
+		try {
+			int pages = site.tree(2, 6);
+			CrawlPipeline pipeline = new CrawlPipeline(new SlowCollector())
+				.setIoThreads(8)
+				.setCpuThreads(1)
+				.setQueueCapacity(2)
+				.setSearchLength(pages);
+			pipeline.run(site.url("/site/"));
+			assertEquals(pages, pipeline.getProcessedCount(Stage.PARSE));
+			assertTrue(pipeline.getMaxQueueDepth(Stage.DECODE) <= 2);
+			assertTrue(pipeline.getMaxQueueDepth(Stage.PARSE)  <= 2);
+			assertTrue(pipeline.getMaxQueueDepth(Stage.FILTER) <= 2);
+		} finally {
+			site.stop();
+		}
+	}
+	
+	@Test
+	public void failingHandler() throws IOException{
+		LocalSite site = new LocalSite();
+		try {
+			int pages = site.tree(2, 3);
+			CrawlPipeline pipeline = new CrawlPipeline(new Crawling.URLCollector(){
+				@Override
+				public boolean parsePage(Page page) throws IOException {
+					if(page.toString().endsWith("/site/0/"))
+						throw new IllegalStateException("failing handler");
+					return super.parsePage(page);
+				}
+			})
+				.setIoThreads(2)
+				.setCpuThreads(2)
+				.setSearchLength(pages);
+			pipeline.run(site.url("/site/"));
+			// the page and its three children are lost
+			assertEquals(pages - 4, pipeline.getProcessedCount(Stage.PARSE));
+		} finally {
+			site.stop();
+		}
+	}
+	
+	@Test
+	public void budgets() throws IOException{
+		LocalSite site = new LocalSite();
+		try {
+			int pages = site.tree(3, 3);
+			CrawlPipeline pipeline = new CrawlPipeline(new Crawling.URLCollector())
+				.setIoThreads(2)
+				.setCpuThreads(1)
+				.setByteBudget(1)
+				.setSearchLength(pages);
+			pipeline.run(site.url("/site/"));
+			assertTrue(pipeline.isBudgetExceeded());
+			assertTrue(pipeline.getProcessedCount(Stage.FILTER) < pages);
+			
+			site.setLatency(50);
+			pipeline.setByteBudget(0).setTimeBudget(200);
+			long start = System.nanoTime();
+			pipeline.run(site.url("/site/"));
+			assertTrue(pipeline.isBudgetExceeded());
+			assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+			assertTrue(pipeline.getProcessedCount(Stage.FILTER) < pages);
+		} finally {
+			site.stop();
+		}
+	}
+	
+	@Test
+	public void stalledRead() throws IOException{
+		LocalSite site = new LocalSite();
+		try {
+			site.page("/a/", "<a href=\"/a/b/\">b</a>").page("/a/b/", "b").stall("/a/b/", 1, 10000);
+			PageCounter   handler  = new PageCounter();
+			CrawlPipeline pipeline = new CrawlPipeline(handler)
+				.setIoThreads(1)
+				.setCpuThreads(1)
+				.setTimeBudget(300)
+				.setSearchLength(2);
+			long start = System.nanoTime();
+			pipeline.run(site.url("/a/"));
+			// the budget disconnects the blocked fetch
+			assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(1300));
+			assertTrue(pipeline.isBudgetExceeded());
+			assertEquals(1, handler.pages.size());
+		} finally {
+			site.stop();
+		}
+	}
+	
+	@Test
+	public void abort() throws IOException{
+		LocalSite site = new LocalSite();
+		try {
+			int pages = site.tree(3, 3);
+			CrawlPipeline pipeline = new CrawlPipeline(new StopAfter(5))
+				.setIoThreads(2)
+				.setCpuThreads(1)
+				.setSearchLength(pages);
+			pipeline.run(site.url("/site/"));
+			assertEquals(4, pipeline.getProcessedCount(Stage.PARSE));
+			assertTrue(pipeline.getProcessedCount(Stage.FILTER) < pages);
+		} finally {
+			site.stop();
+		}
+	}
+}
@@ -0,0 +1,142 @@
+package org.rexcrawler.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.junit.Test;
+import org.rexcrawler.Crawler;
+import org.rexcrawler.CrawlerHandler;
+import org.rexcrawler.Page;
+import org.rexcrawler.test.Retrying.PageCounter;
+
+public class Profiling {
+
+	@Test
+	public void crawlEvents() throws IOException{
+		LocalSite site = new LocalSite();
+		try {
+			int pages = site.tree(2, 3);
+			List<RecordedEvent> events = record(new Crawler()
+					.setHandler(new PageCounter())
+					.setChunkSize(1)
+					.setSearchLength(pages), 4, site);
+			int fetches = 0, parses = 0, filters = 0, forks = 0, reduces = 0;
+			for(RecordedEvent event : events){
+				String name = event.getEventType().getName();
+				if(name.equals("org.rexcrawler.Fetch")){
+					fetches++;
+					assertEquals(200, event.getInt("status"));
+					assertTrue(event.getString("url").startsWith("http://"));
+					assertTrue(event.getString("url").contains(event.getString("host")));
+				}
+				else if(name.equals("org.rexcrawler.Parse")){
+					parses++;
+					assertTrue(event.getLong("bytes") > 0);
+					assertTrue(event.getLong("monitorWait") >= 0);
+				}
+				else if(name.equals("org.rexcrawler.LinkFilter"))
+					filters++;
+				else if(name.equals("org.rexcrawler.Fork")){
+					forks++;
+					assertTrue(event.getInt("chunkSize") > 0);
+				}
+				else if(name.equals("org.rexcrawler.Reduce")){
+					reduces++;
+					assertTrue(event.getInt("chunkSize") > 0);
+					assertTrue(event.getInt("worker") >= 0);
+				}
+			}
+			assertEquals(pages, fetches);
+			assertEquals(pages, parses);
+			assertEquals(pages, filters);
+			assertTrue(forks > 0);
+			assertTrue(reduces > 0);
+		} finally {
+			site.stop();
+		}
+	}
+
+	@Test
+	public void abortEvent() throws IOException{
+		LocalSite site = new LocalSite();
+		try {
+			int pages = site.tree(2, 3);
+			List<RecordedEvent> events = record(new Crawler()
+					.setHandler(new PageCounter())
+					.setSearchLength(pages)
+					.setByteBudget(1), 1, site);
+			int aborts = 0;
+			for(RecordedEvent event : events)
+				if(event.getEventType().getName().equals("org.rexcrawler.Abort")){
+					aborts++;
+					assertEquals("byte budget", event.getString("reason"));
+					assertTrue(event.getLong("bytes") >= 1);
+				}
+			assertEquals(1, aborts);
+		} finally {
+			site.stop();
+		}
+	}
+
+	// Handler aborting the search on its first page
+	public static class Aborter extends CrawlerHandler {
+		@Override
+		public boolean parsePage(Page page) throws IOException {
+			return false;
+		}
+		
+		@Override
+		public List<String> filterLinks(Page page, List<String> links) {
+			return links;
+		}
+	}
+
+	@Test
+	public void abortingPage() throws IOException{
+		LocalSite site = new LocalSite();
+		try {
+			site.tree(2, 3);
+			List<RecordedEvent> events = record(new Crawler()
+					.setHandler(new Aborter()), 1, site);
+			int parses = 0, filters = 0;
+			for(RecordedEvent event : events){
+				String name = event.getEventType().getName();
+				if(name.equals("org.rexcrawler.Parse"))
+					parses++;
+				else if(name.equals("org.rexcrawler.LinkFilter"))
+					filters++;
+			}
+			// the page was parsed, its links are not filtered
+			assertEquals(1, parses);
+			assertEquals(0, filters);
+		} finally {
+			site.stop();
+		}
+	}
+
+	private static List<RecordedEvent> record(Crawler crawler, int threads, LocalSite site) throws IOException{
+		File file = File.createTempFile("rexcrawler", ".jfr");
+		file.deleteOnExit();
+		Recording recording = new Recording();
+		try {
+			for(String name : new String[]{ "Fetch", "Parse", "LinkFilter", "Fork", "Reduce", "Abort" })
+				recording.enable("org.rexcrawler." + name);
+			recording.start();
+			crawler.run(threads, site.url("/site/"));
+			recording.stop();
+			recording.dump(file.toPath());
+			return RecordingFile.readAllEvents(file.toPath());
+		} finally {
+			recording.close();
+			file.delete();
+		}
+	}
+}
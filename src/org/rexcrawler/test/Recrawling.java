@@ -0,0 +1,139 @@
+package org.rexcrawler.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.rexcrawler.CrawlHistory;
+import org.rexcrawler.Crawler;
+import org.rexcrawler.test.Retrying.PageCounter;
+
+public class Recrawling {
+	
+	private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+	private static final long DAY  = TimeUnit.DAYS.toMillis(1);
+	
+	/*
+	 * "hot" changes every hour and is fetched every hour,
+	 * "cold" never changes and is fetched every day
+	 */
+	private static CrawlHistory observed(){
+		CrawlHistory history = new CrawlHistory();
+		history.begin(0);
+		for(int i = 0; i <= 10; i++){
+			history.observe("http://example.org/hot/",  i, i * HOUR);
+			history.observe("http://example.org/cold/", 0, i * DAY);
+		}
+		return history;
+	}
+	
+	@Test
+	public void estimation(){
+		CrawlHistory history = observed();
+		assertEquals(HOUR, history.getInterval("http://example.org/hot/"));
+		assertEquals(20 * DAY, history.getInterval("http://example.org/cold/"));
+		assertEquals(-1, history.getInterval("http://example.org/none/"));
+		assertTrue(history.getChangeProbability("http://example.org/hot/",  11 * DAY) > 0.99);
+		assertTrue(history.getChangeProbability("http://example.org/cold/", 11 * DAY) < 0.1);
+	}
+	
+	@Test
+	public void frontier(){
+		CrawlHistory history = observed();
+		history.observe("http://example.org/new/", 0, 10 * DAY);
+		List<String> frontier = history.frontier(10 * DAY + 12 * HOUR, 0);
+		assertEquals(1, frontier.size());
+		assertEquals("http://example.org/hot/", frontier.get(0));
+		
+		// ordered by probability, then capped
+		frontier = history.frontier(30 * DAY, 2);
+		assertEquals(2, frontier.size());
+		assertEquals("http://example.org/hot/", frontier.get(0));
+		assertEquals("http://example.org/new/", frontier.get(1));
+		
+		history.frontier(10 * DAY + 12 * HOUR, 0);
+		assertTrue(history.observe("http://example.org/hot/", 99, 10 * DAY + 12 * HOUR));
+		assertEquals(1, history.getRefetchCount());
+		assertEquals(2.0 / 3, history.getSavedFraction(), 1e-9);
+	}
+	
+	@Test
+	public void persistence() throws IOException{
+		File file = File.createTempFile("rexcrawler", ".history");
+		file.delete();
+		file.deleteOnExit();
+		assertEquals(0, CrawlHistory.load(file).size());
+		CrawlHistory history = observed();
+		history.save(file);
+		CrawlHistory loaded = CrawlHistory.load(file);
+		assertEquals(2, loaded.size());
+		assertEquals(history.getInterval("http://example.org/hot/"),  loaded.getInterval("http://example.org/hot/"));
+		assertEquals(history.getInterval("http://example.org/cold/"), loaded.getInterval("http://example.org/cold/"));
+		assertFalse(loaded.observe("http://example.org/cold/", 0, 11 * DAY));
+	}
+	
+	@Test
+	public void frontierRun() throws IOException{
+		LocalSite site = new LocalSite();
+		try {
+			int pages = site.tree(2, 3);
+			CrawlHistory history = new CrawlHistory();
+			PageCounter handler  = new PageCounter();
+			handler.setHistory(history);
+			long now = System.currentTimeMillis();
+			history.begin(now);
+			new Crawler().setHandler(handler).setSearchLength(pages).run(1, site.url("/site/"));
+			
+			// days later, the three most likely pages and nothing else
+			List<String> frontier = history.frontier(now + 5 * DAY, 3);
+			assertEquals(3, frontier.size());
+			handler.pages.clear();
+			new Crawler().setHandler(handler).setSearchLength(3).run(1, frontier);
+			assertEquals(new TreeSet<>(frontier), handler.pages);
+			assertEquals(3, history.getRefetchCount());
+			// fetched on the clock of the run, not on the system clock
+			for(String url : frontier)
+				assertTrue(history.getChangeProbability(url, now + 5 * DAY) < 0.01);
+		} finally {
+			site.stop();
+		}
+	}
+	
+	@Test
+	public void incrementalRun() throws IOException{
+		LocalSite site = new LocalSite();
+		try {
+			int pages = site.tree(2, 3);
+			CrawlHistory history = new CrawlHistory();
+			PageCounter handler  = new PageCounter();
+			handler.setHistory(history);
+			long now = System.currentTimeMillis();
+			
+			history.begin(now);
+			new Crawler().setHandler(handler).setSearchLength(pages).run(1, site.url("/site/"));
+			assertEquals(pages, history.size());
+			assertEquals(pages, history.getDiscoveryCount());
+			
+			// an hour later nothing is due, only the root is fetched
+			assertTrue(history.frontier(now + HOUR, 0).isEmpty());
+			handler.pages.clear();
+			new Crawler().setHandler(handler).setSearchLength(pages).run(1, site.url("/site/"));
+			assertEquals(1, handler.pages.size());
+			assertEquals(1, history.getRefetchCount());
+			assertEquals(1 - 1.0 / pages, history.getSavedFraction(), 1e-9);
+			
+			// days later every page is due again
+			List<String> frontier = history.frontier(now + 5 * DAY, 0);
+			assertEquals(pages, frontier.size());
+		} finally {
+			site.stop();
+		}
+	}
+}
@@ -0,0 +1,69 @@
+package org.rexcrawler.test;
+
+import java.io.File;
+import java.net.URL;
+
+import org.rexcrawler.Crawler;
+import org.rexcrawler.net.CrawlArchive;
+import org.rexcrawler.test.Retrying.PageCounter;
+
+/**
+ * Crawl benchmark on a recorded {@link CrawlArchive}.
+ * <pre>
+ * ReplayBenchmark [archive] [latency ms] [max threads] [chunk size]
+ * </pre>
+ * When the archive does not exist a local tree is crawled and recorded
+ * first. The same archive is then replayed with 1, 2, 4 ... threads,
+ * without network noise: with latency 0 the parse throughput is
+ * measured, with a latency the scaling of the whole crawl.
+ */
+public class ReplayBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		File file    = new File((args.length > 0) ? args[0] : "rexcrawler-bench.archive");
+		long latency = (args.length > 1) ? Long.parseLong(args[1]) : 0;
+		int  threads = (args.length > 2) ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors() * 4;
+		int  chunk   = (args.length > 3) ? Integer.parseInt(args[3]) : 8;
+
+		String root = null;
+		if(! file.exists()){
+			LocalSite site = new LocalSite();
+			int pages = site.tree(4, 6);
+			URL url   = site.url("/site/");
+			CrawlArchive archive = CrawlArchive.record(file);
+			new Crawler()
+				.setHandler(new PageCounter().setArchive(archive))
+				.setSearchLength(pages)
+				.run(1, url);
+			archive.close();
+			site.stop();
+			root = url.toString();
+			System.out.println("recorded " + archive.getRecordCount() + " pages in " + file);
+		}
+
+		CrawlArchive archive = CrawlArchive.replay(file).setLatency(latency, latency / 2);
+		if(root == null) root = archive.first();
+		System.out.println(archive.size() + " pages, latency " + latency + "ms");
+		System.out.println("threads\tpages\tms\tpages/s");
+		// warmup
+		crawl(archive, root, 1, chunk);
+		for(int parallel = 1; parallel <= threads; parallel *= 2){
+			long start = System.nanoTime();
+			int pages  = crawl(archive, root, parallel, chunk);
+			long ms    = Math.max(1, (System.nanoTime() - start) / 1000000);
+			System.out.println(parallel + "\t" + pages + "\t" + ms + "\t" + (pages * 1000L / ms));
+		}
+		archive.close();
+	}
+
+	private static int crawl(CrawlArchive archive, String root, int parallel, int chunk) throws Exception {
+		PageCounter handler = new PageCounter();
+		handler.setArchive(archive);
+		new Crawler()
+			.setHandler(handler)
+			.setSearchLength(archive.size())
+			.setChunkSize(chunk)
+			.run(parallel, new URL(root));
+		return handler.pages.size();
+	}
+}
@@ -0,0 +1,174 @@
+package org.rexcrawler.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.rexcrawler.Crawler;
+import org.rexcrawler.net.CrawlArchive;
+import org.rexcrawler.test.Retrying.PageCounter;
+
+public class Replaying {
+
+	@Test
+	public void recordAndReplay() throws IOException{
+		File file = File.createTempFile("rexcrawler", ".archive");
+		file.deleteOnExit();
+		LocalSite site = new LocalSite();
+		URL root;
+		int pages;
+		PageCounter recorded = new PageCounter();
+		try {
+			pages = site.tree(2, 3);
+			root  = site.url("/site/");
+			CrawlArchive archive = CrawlArchive.record(file);
+			recorded.setArchive(archive);
+			new Crawler()
+				.setHandler(recorded)
+				.setSearchLength(pages)
+				.run(1, root);
+			archive.close();
+			assertEquals(pages, recorded.pages.size());
+			assertEquals(pages, archive.getRecordCount());
+		} finally {
+			site.stop();
+		}
+
+		CrawlArchive archive = CrawlArchive.replay(file);
+		try {
+			assertTrue(archive.isReplaying());
+			assertEquals(pages, archive.size());
+			PageCounter replayed = new PageCounter();
+			replayed.setArchive(archive);
+			new Crawler()
+				.setHandler(replayed)
+				.setSearchLength(pages)
+				.run(2, root);
+			assertEquals(recorded.pages, replayed.pages);
+			assertEquals(0, archive.getMissCount());
+		} finally {
+			archive.close();
+		}
+	}
+
+	@Test
+	public void concurrentReads() throws Exception{
+		File file = File.createTempFile("rexcrawler", ".archive");
+		file.deleteOnExit();
+		LocalSite site = new LocalSite();
+		final PageCounter recorded = new PageCounter();
+		try {
+			int pages = site.tree(3, 3);
+			CrawlArchive archive = CrawlArchive.record(file);
+			recorded.setArchive(archive);
+			new Crawler()
+				.setHandler(recorded)
+				.setSearchLength(pages)
+				.run(1, site.url("/site/"));
+			archive.close();
+		} finally {
+			site.stop();
+		}
+		
+		final CrawlArchive        archive  = CrawlArchive.replay(file);
+		final Map<String, String> expected = new HashMap<>();
+		try {
+			for(String url : recorded.pages)
+				expected.put(url, body(archive.open(url)));
+			// every thread reads every record, none waits for the others
+			final AtomicInteger mismatches = new AtomicInteger();
+			List<Thread>        threads    = new ArrayList<>();
+			for(int i = 0; i < 8; i++){
+				Thread thread = new Thread(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							for(String url : recorded.pages)
+								if(! expected.get(url).equals(body(archive.open(url))))
+									mismatches.incrementAndGet();
+						} catch (IOException e) {
+							mismatches.incrementAndGet();
+						}
+					}
+				});
+				thread.start();
+				threads.add(thread);
+			}
+			for(Thread thread : threads)
+				thread.join();
+			assertEquals(0, mismatches.get());
+			assertEquals(9 * recorded.pages.size(), archive.getReplayCount());
+		} finally {
+			archive.close();
+		}
+	}
+	
+	private static String body(HttpURLConnection connection) throws IOException{
+		try(InputStream in = connection.getInputStream()){
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[4096];
+			for(int n; (n = in.read(buffer)) > 0; )
+				out.write(buffer, 0, n);
+			return connection.getResponseCode() + " " + out.toString("UTF-8");
+		}
+	}
+
+	@Test
+	public void missingRecord() throws IOException{
+		File file = File.createTempFile("rexcrawler", ".archive");
+		file.deleteOnExit();
+		CrawlArchive.record(file).close();
+		CrawlArchive archive = CrawlArchive.replay(file);
+		try {
+			assertFalse(archive.contains("http://localhost/none/"));
+			HttpURLConnection connection = archive.open("http://localhost/none/");
+			assertEquals(404, connection.getResponseCode());
+			assertEquals(1, archive.getMissCount());
+		} finally {
+			archive.close();
+		}
+	}
+
+	@Test
+	public void simulatedLatency() throws IOException{
+		File file = File.createTempFile("rexcrawler", ".archive");
+		file.deleteOnExit();
+		LocalSite site = new LocalSite();
+		URL target;
+		try {
+			site.page("/a/", "a");
+			target = site.url("/a/");
+			CrawlArchive archive = CrawlArchive.record(file);
+			new Crawler()
+				.setHandler(new PageCounter().setArchive(archive))
+				.run(1, target);
+			archive.close();
+		} finally {
+			site.stop();
+		}
+
+		CrawlArchive archive = CrawlArchive.replay(file).setLatency(200, 0);
+		try {
+			long start = System.nanoTime();
+			HttpURLConnection connection = archive.open(target.toString());
+			assertEquals(200, connection.getResponseCode());
+			assertTrue((System.nanoTime() - start) / 1000000 >= 200);
+			assertEquals(1, archive.getReplayCount());
+		} finally {
+			archive.close();
+		}
+	}
+}
@@ -0,0 +1,201 @@
+package org.rexcrawler.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.rexcrawler.Crawler;
+import org.rexcrawler.net.CachingResolver;
+import org.rexcrawler.net.HostResolver;
+
+public class Resolving {
+	
+	// Stub resolver: everything resolves to loopback except "unknown.*"
+	static class StubResolver implements HostResolver {
+		
+		public StubResolver(long delay) {
+			this.delay   = delay;
+			this.queries = new ConcurrentHashMap<>();
+		}
+		
+		@Override
+		public InetAddress[] resolve(String host) throws UnknownHostException {
+			queries.putIfAbsent(host, new AtomicInteger());
+			queries.get(host).incrementAndGet();
+			try { Thread.sleep(delay); }
+			catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+			if(host.startsWith("unknown"))
+				throw new UnknownHostException(host);
+			return new InetAddress[]{ InetAddress.getLoopbackAddress() };
+		}
+		
+		int queries(String host){
+			AtomicInteger count = queries.get(host);
+			return (count == null) ? 0 : count.get();
+		}
+		
+		long                       delay;
+		Map<String, AtomicInteger> queries;
+	}
+	
+	@Before
+	public void makeResolver(){
+		this.stub     = new StubResolver(20);
+		this.resolver = new CachingResolver(stub, 2, 200, 100, 2);
+	}
+	
+	@Test
+	public void positiveCaching() throws UnknownHostException{
+		resolver.resolve("a.example.org");
+		resolver.resolve("a.example.org");
+		assertEquals(1, stub.queries("a.example.org"));
+		assertEquals(1, resolver.getLookupCount());
+		assertEquals(1, resolver.getHitCount());
+		assertTrue(resolver.getMaxLatency() >= 20000000L);
+	}
+	
+	@Test
+	public void negativeCaching() throws InterruptedException{
+		for(int i = 0; i < 3; i++){
+			try {
+				resolver.resolve("unknown.example.org");
+				fail("unknown host resolved");
+			} catch (UnknownHostException e) { }
+		}
+		assertEquals(1, stub.queries("unknown.example.org"));
+		assertEquals(2, resolver.getNegativeHitCount());
+		Thread.sleep(150);
+		try { resolver.resolve("unknown.example.org"); }
+		catch (UnknownHostException e) { }
+		assertEquals(2, stub.queries("unknown.example.org"));
+	}
+	
+	@Test
+	public void expiration() throws Exception{
+		resolver.resolve("a.example.org");
+		Thread.sleep(250);
+		resolver.resolve("a.example.org");
+		assertEquals(2, stub.queries("a.example.org"));
+	}
+	
+	@Test
+	public void interruptedWait() throws Exception{
+		resolver = new CachingResolver(new StubResolver(1000), 2, 200, 100, 2);
+		final AtomicInteger outcome = new AtomicInteger();
+		Thread owner = new Thread(){
+			@Override
+			public void run() {
+				try { resolver.resolve("a.example.org"); }
+				catch (UnknownHostException e) { }
+			}
+		};
+		Thread waiter = new Thread(){
+			@Override
+			public void run() {
+				try {
+					resolver.resolve("a.example.org");
+					outcome.set(1);
+				} catch (UnknownHostException e) {
+					// gives up, the flag kept for the caller
+					outcome.set(isInterrupted() ? 2 : 3);
+				} catch (StackOverflowError e) {
+					outcome.set(4);
+				}
+			}
+		};
+		owner.start();
+		Thread.sleep(100);
+		waiter.start();
+		Thread.sleep(100);
+		long start = System.nanoTime();
+		waiter.interrupt();
+		waiter.join(2000);
+		assertTrue(System.nanoTime() - start < 500000000L);
+		assertEquals(2, outcome.get());
+		owner.join();
+	}
+	
+	@Test
+	public void boundedCache() throws UnknownHostException{
+		resolver.resolve("a.example.org");
+		resolver.resolve("b.example.org");
+		resolver.resolve("c.example.org");
+		assertEquals(2, resolver.size());
+		resolver.resolve("a.example.org");
+		assertEquals(2, stub.queries("a.example.org"));
+	}
+	
+	@Test
+	public void prefetch() throws Exception{
+		resolver.prefetch("a.example.org");
+		resolver.prefetch("a.example.org");
+		// waits for the pending lookup
+		resolver.resolve("a.example.org");
+		assertEquals(1, stub.queries("a.example.org"));
+		assertEquals(1, resolver.getLookupCount());
+	}
+	
+	@Test
+	public void queuedPrefetch() throws Exception{
+		resolver = new CachingResolver(stub, 16, 60000, 60000, 1);
+		// the only prefetch thread is busy, the next ones are queued
+		resolver.prefetch("b.example.org");
+		for(int i = 0; i < 3; i++)
+			resolver.prefetch("a.example.org");
+		Thread.sleep(200);
+		assertEquals(1, stub.queries("a.example.org"));
+		resolver.shutdown();
+	}
+	
+	@Test
+	public void resolvedConnection() throws IOException{
+		LocalSite site = new LocalSite();
+		try {
+			int pages = site.tree(2, 3);
+			resolver  = new CachingResolver(stub, 16, 60000, 60000, 2);
+			Crawling.URLCollector handler = new Crawling.URLCollector();
+			// only the stub knows this host
+			Crawler crawler = new Crawler()
+				.setHandler(handler)
+				.setResolver(resolver)
+				.setSearchLength(pages * 2);
+			crawler.run(site.url("crawl.invalid", "/site/"));
+			assertEquals(pages, crawler.getFollowedLinkCount());
+			assertEquals(pages, site.getRequestCount());
+			assertEquals(1, stub.queries("crawl.invalid"));
+		} finally {
+			site.stop();
+		}
+	}
+	
+	@Test
+	public void crawlerPrefetch() throws IOException{
+		LocalSite site = new LocalSite();
+		try {
+			int pages = site.tree(2, 3);
+			resolver  = new CachingResolver(stub, 16, 60000, 60000, 2);
+			Crawler crawler = new Crawler()
+				.setHandler(new Crawling.URLCollector())
+				.setResolver(resolver)
+				.setSearchLength(pages * 2);
+			crawler.run(site.url("/site/"));
+			assertEquals(pages, crawler.getFollowedLinkCount());
+			assertEquals(1, stub.queries("localhost"));
+			assertTrue(resolver.getHitCount() >= pages - 1);
+		} finally {
+			site.stop();
+		}
+	}
+
+	private StubResolver    stub;
+	private CachingResolver resolver;
+}
@@ -0,0 +1,179 @@
+package org.rexcrawler.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.net.UnknownHostException;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.Test;
+import org.rexcrawler.CrawlPipeline;
+import org.rexcrawler.Crawler;
+import org.rexcrawler.CrawlerHandler;
+import org.rexcrawler.Page;
+import org.rexcrawler.Reduced;
+import org.rexcrawler.net.RetryPolicy;
+
+public class Retrying {
+	
+	static class PageCounter extends CrawlerHandler {
+		
+		public PageCounter() {
+			this.pages = new TreeSet<>();
+		}
+		
+		@Reduced
+		Set<String> pages;
+		
+		@Override
+		public boolean parsePage(Page page) throws IOException {
+			pages.add(page.getLocation().toString());
+			return true;
+		}
+	}
+	
+	@Test
+	public void classification(){
+		RetryPolicy retry = new RetryPolicy();
+		assertTrue (retry.isRetryable(503));
+		assertTrue (retry.isRetryable(429));
+		assertFalse(retry.isRetryable(404));
+		assertTrue (retry.isRetryable(new SocketTimeoutException()));
+		assertFalse(retry.isRetryable(new UnknownHostException()));
+	}
+	
+	@Test
+	public void failureKeepsChunk() throws IOException{
+		LocalSite site = new LocalSite();
+		try {
+			site.page("/a/", "a").page("/c/", "c");
+			PageCounter handler = new PageCounter();
+			new Crawler()
+				.setHandler(handler)
+				.run(1, site.url("/a/"), site.url("/missing/"), site.url("/c/"));
+			assertTrue(handler.pages.contains(site.url("/c/").toString()));
+		} finally {
+			site.stop();
+		}
+	}
+	
+	@Test
+	public void deadline() throws IOException{
+		LocalSite site = new LocalSite();
+		try {
+			site.page("/a/", "a").resource("/slow/", 200, "text/html", new byte[]{'s'}, 3000).page("/c/", "c");
+			RetryPolicy retry   = new RetryPolicy().setTimeouts(1000, 200).setMaxAttempts(1);
+			PageCounter handler = new PageCounter();
+			handler.setRetryPolicy(retry);
+			long start = System.nanoTime();
+			new Crawler()
+				.setHandler(handler)
+				.run(1, site.url("/a/"), site.url("/slow/"), site.url("/c/"));
+			assertTrue((System.nanoTime() - start) / 1000000 < 2000);
+			assertEquals(2, handler.pages.size());
+			assertEquals(1, retry.getTimeoutCount());
+			assertEquals(1, retry.getGiveUpCount());
+		} finally {
+			site.stop();
+		}
+	}
+	
+	@Test
+	public void transientErrors() throws IOException{
+		LocalSite site = new LocalSite();
+		try {
+			site.page("/a/", "a").page("/flaky/", "flaky").fail("/flaky/", 2, 503);
+			RetryPolicy retry   = new RetryPolicy().setBackoff(10, 50);
+			PageCounter handler = new PageCounter();
+			handler.setRetryPolicy(retry);
+			new Crawler()
+				.setHandler(handler)
+				.run(1, site.url("/a/"), site.url("/flaky/"));
+			assertEquals(2, handler.pages.size());
+			assertEquals(2, retry.getRetryCount());
+			assertEquals(0, retry.getPendingCount());
+			assertEquals(4, site.getRequestCount());
+		} finally {
+			site.stop();
+		}
+	}
+	
+	@Test
+	public void reuseAfterAbort() throws IOException{
+		LocalSite site = new LocalSite();
+		try {
+			site.page("/b/", "b").page("/flaky/", "flaky").fail("/flaky/", 20, 503);
+			RetryPolicy retry   = new RetryPolicy().setBackoff(500, 500).setMaxAttempts(10);
+			PageCounter handler = new PageCounter();
+			handler.setRetryPolicy(retry);
+			Crawler crawler = new Crawler()
+				.setHandler(handler)
+				.setTimeBudget(200);
+			// aborted with /flaky/ waiting for its retry
+			crawler.run(1, site.url("/flaky/"));
+			assertTrue(crawler.isBudgetExceeded());
+			assertEquals(0, retry.getPendingCount());
+			int requests = site.getRequestCount();
+			// the next search does not inherit the retry
+			crawler.setTimeBudget(0).run(1, site.url("/b/"));
+			assertEquals(requests + 1, site.getRequestCount());
+			assertEquals(1, handler.pages.size());
+		} finally {
+			site.stop();
+		}
+	}
+	
+	@Test
+	public void pipelineRetries() throws IOException{
+		LocalSite site = new LocalSite();
+		try {
+			int pages = site.tree(2, 3);
+			site.fail("/site/1/", 1, 503).fail("/site/2/0/", 2, 502);
+			RetryPolicy retry   = new RetryPolicy().setBackoff(10, 50);
+			PageCounter handler = new PageCounter();
+			handler.setRetryPolicy(retry);
+			new CrawlPipeline(handler)
+				.setIoThreads(2)
+				.setCpuThreads(1)
+				.setSearchLength(pages)
+				.run(site.url("/site/"));
+			assertEquals(pages, handler.pages.size());
+			assertEquals(3, retry.getRetryCount());
+		} finally {
+			site.stop();
+		}
+	}
+	
+	@Test
+	public void hedging() throws IOException{
+		LocalSite site = new LocalSite();
+		try {
+			URL[] targets = new URL[21];
+			for(int i = 0; i < 20; i++){
+				site.page("/" + i + "/", "page");
+				targets[i] = site.url("/" + i + "/");
+			}
+			site.page("/tail/", "tail").stall("/tail/", 1, 3000);
+			targets[20] = site.url("/tail/");
+			RetryPolicy retry   = new RetryPolicy().setHedging(0.95, 10);
+			PageCounter handler = new PageCounter();
+			handler.setRetryPolicy(retry);
+			long start = System.nanoTime();
+			new Crawler()
+				.setHandler(handler)
+				.run(1, targets);
+			assertTrue((System.nanoTime() - start) / 1000000 < 2000);
+			assertEquals(21, handler.pages.size());
+			assertTrue(retry.getHedgeCount() >= 1);
+			assertTrue(retry.getHedgeWinCount() >= 1);
+			retry.shutdown();
+		} finally {
+			site.stop();
+		}
+	}
+}
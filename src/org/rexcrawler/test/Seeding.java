@@ -0,0 +1,215 @@
+package org.rexcrawler.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Test;
+import org.rexcrawler.Crawler;
+import org.rexcrawler.Page;
+import org.rexcrawler.SitemapReader;
+
+public class Seeding {
+	
+	static class Counter implements SitemapReader.Sink {
+		@Override
+		public boolean accept(List<SitemapReader.Entry> batch) {
+			entries  += batch.size();
+			maxBatch  = Math.max(maxBatch, batch.size());
+			for(SitemapReader.Entry entry : batch)
+				if(entry.getLastModified() > 0) dated++;
+			return true;
+		}
+		long entries;
+		int  maxBatch;
+		long dated;
+	}
+	
+	static class Since extends Retrying.PageCounter {
+		public Since(long since) {
+			this.since = since;
+		}
+		@Override
+		public List<SitemapReader.Entry> filterSitemap(List<SitemapReader.Entry> entries) {
+			List<SitemapReader.Entry> recent = new ArrayList<>();
+			for(SitemapReader.Entry entry : entries)
+				if(entry.getLastModified() >= since) recent.add(entry);
+			return recent;
+		}
+		long since;
+	}
+	
+	// highest number of tasks waiting in the pool while parsing
+	static class Backlog extends Retrying.PageCounter {
+		@Override
+		public boolean parsePage(Page page) throws IOException {
+			long queued = ForkJoinTask.getPool().getQueuedTaskCount();
+			synchronized (Backlog.class) {
+				peak = Math.max(peak, queued);
+			}
+			return super.parsePage(page);
+		}
+		static long peak;
+	}
+	
+	private static String urlset(String base, int from, int to, String lastmod){
+		StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+			.append("<urlset xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">\n");
+		for(int i = from; i < to; i++){
+			xml.append("<url><loc>").append(base).append(i).append("/</loc>");
+			if(lastmod != null) xml.append("<lastmod>").append(lastmod).append("</lastmod>");
+			xml.append("</url>\n");
+		}
+		return xml.append("</urlset>").toString();
+	}
+	
+	private static byte[] gzip(String text) throws IOException{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		GZIPOutputStream      gz    = new GZIPOutputStream(bytes);
+		gz.write(text.getBytes(StandardCharsets.UTF_8));
+		gz.close();
+		return bytes.toByteArray();
+	}
+	
+	@Test
+	public void dates(){
+		assertEquals(1104537600000L, SitemapReader.parseDate("2005-01-01"));
+		assertEquals(1103824815000L, SitemapReader.parseDate("2004-12-23T18:00:15+00:00"));
+		assertEquals(-1, SitemapReader.parseDate("yesterday"));
+	}
+	
+	@Test
+	public void largeGzipped() throws IOException{
+		byte[]  sitemap = gzip(urlset("http://www.example.org/p/", 0, 50000, "2020-06-01"));
+		Counter counter = new Counter();
+		SitemapReader reader = new SitemapReader().setBatchSize(500);
+		assertTrue(reader.read(new ByteArrayInputStream(sitemap), counter));
+		assertEquals(50000, counter.entries);
+		assertEquals(50000, counter.dated);
+		assertEquals(500, counter.maxBatch);
+	}
+	
+	@Test
+	public void imageSitemap() throws IOException{
+		final List<SitemapReader.Entry> entries = new ArrayList<>();
+		String sitemap = "<urlset xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\""
+				+ " xmlns:image=\"http://www.google.com/schemas/sitemap-image/1.1\">"
+				+ "<url><loc>http://example.org/page/</loc><lastmod>2020-06-01</lastmod>"
+				+ "<image:image><image:loc>http://example.org/photo.jpg</image:loc></image:image>"
+				+ "</url>"
+				+ "<url><image:image><image:loc>http://example.org/other.jpg</image:loc></image:image>"
+				+ "<loc>http://example.org/other/</loc></url>"
+				+ "</urlset>";
+		new SitemapReader().read(new ByteArrayInputStream(sitemap.getBytes(StandardCharsets.UTF_8)), 
+				new SitemapReader.Sink() {
+					@Override
+					public boolean accept(List<SitemapReader.Entry> batch) {
+						entries.addAll(batch);
+						return true;
+					}
+				});
+		// the image locations are not pages
+		assertEquals(2, entries.size());
+		assertEquals("http://example.org/page/", entries.get(0).getLocation().toString());
+		assertEquals(SitemapReader.parseDate("2020-06-01"), entries.get(0).getLastModified());
+		assertEquals("http://example.org/other/", entries.get(1).getLocation().toString());
+	}
+	
+	@Test
+	public void crawlIndex() throws IOException{
+		LocalSite site = new LocalSite();
+		try {
+			String base = site.url("/p/").toString();
+			for(int i = 0; i < 30; i++)
+				site.page("/p/" + i + "/", "page " + i);
+			site.resource("/sitemap-1.xml", 200, "application/xml", 
+					urlset(base, 0, 10, "2019-01-01").getBytes(StandardCharsets.UTF_8), 0);
+			site.resource("/sitemap-2.xml.gz", 200, "application/x-gzip", 
+					gzip(urlset(base, 10, 30, "2021-03-04T10:00:00Z")), 0);
+			site.resource("/sitemap.xml", 200, "application/xml", (
+					"<sitemapindex xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">"
+					+ "<sitemap><loc>" + site.url("/sitemap-1.xml") + "</loc></sitemap>"
+					+ "<sitemap><loc>" + site.url("/missing.xml") + "</loc></sitemap>"
+					+ "<sitemap><loc>" + site.url("/sitemap-2.xml.gz") + "</loc></sitemap>"
+					+ "</sitemapindex>").getBytes(StandardCharsets.UTF_8), 0);
+			
+			Retrying.PageCounter all = new Retrying.PageCounter();
+			Crawler crawler = new Crawler()
+				.setHandler(all)
+				.setChunkSize(4)
+				.setSitemaps(site.url("/sitemap.xml"));
+			crawler.run(2);
+			assertEquals(30, all.pages.size());
+			
+			Since recent = new Since(SitemapReader.parseDate("2020-01-01"));
+			new Crawler()
+				.setHandler(recent)
+				.setSitemaps(site.url("/sitemap.xml"))
+				.run(1);
+			assertEquals(20, recent.pages.size());
+		} finally {
+			site.stop();
+		}
+	}
+	
+	@Test
+	public void boundedSeeding() throws IOException{
+		LocalSite site = new LocalSite();
+		try {
+			String        base  = site.url("/p/").toString();
+			StringBuilder index = new StringBuilder("<sitemapindex xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">");
+			for(int i = 0; i < 80; i++)
+				site.page("/p/" + i + "/", "page " + i);
+			for(int i = 0; i < 8; i++){
+				site.resource("/sitemap-" + i + ".xml", 200, "application/xml", 
+						urlset(base, i * 10, i * 10 + 10, null).getBytes(StandardCharsets.UTF_8), 0);
+				index.append("<sitemap><loc>").append(site.url("/sitemap-" + i + ".xml")).append("</loc></sitemap>");
+			}
+			site.resource("/sitemap.xml", 200, "application/xml", 
+					index.append("</sitemapindex>").toString().getBytes(StandardCharsets.UTF_8), 0);
+			Backlog handler = new Backlog();
+			Backlog.peak = 0;
+			new Crawler()
+				.setHandler(handler)
+				.setChunkSize(10)
+				.setSitemaps(site.url("/sitemap.xml"))
+				.run(1);
+			assertEquals(80, handler.pages.size());
+			// one batch per sitemap, at most two forked for the single thread
+			assertTrue(Backlog.peak <= 2);
+		} finally {
+			site.stop();
+		}
+	}
+	
+	@Test
+	public void searchLength() throws IOException{
+		LocalSite site = new LocalSite();
+		try {
+			String base = site.url("/p/").toString();
+			for(int i = 0; i < 50; i++)
+				site.page("/p/" + i + "/", "page " + i);
+			site.resource("/sitemap.xml", 200, "application/xml", 
+					urlset(base, 0, 50, null).getBytes(StandardCharsets.UTF_8), 0);
+			Retrying.PageCounter handler = new Retrying.PageCounter();
+			Crawler crawler = new Crawler()
+				.setHandler(handler)
+				.setChunkSize(5)
+				.setSearchLength(12)
+				.setSitemaps(site.url("/sitemap.xml"));
+			crawler.run(2);
+			assertEquals(12, crawler.getFollowedLinkCount());
+			assertEquals(12, handler.pages.size());
+		} finally {
+			site.stop();
+		}
+	}
+}
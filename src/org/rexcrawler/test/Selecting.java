@@ -0,0 +1,113 @@
+package org.rexcrawler.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+import org.rexcrawler.Crawler;
+import org.rexcrawler.Page;
+import org.rexcrawler.handler.RexHandler;
+import org.rexcrawler.handler.Selector;
+import org.rexcrawler.handler.SelectorHandler;
+
+public class Selecting {
+	
+	private static List<String> values(List<SelectorHandler.Match> matches){
+		String[] values = new String[matches.size()];
+		for(int i = 0; i < values.length; i++)
+			values[i] = matches.get(i).getValue();
+		return Arrays.asList(values);
+	}
+	
+	@Test
+	public void tokenizing(){
+		SelectorHandler handler = new SelectorHandler()
+			.select("p", "p")
+			.select("src", "img", "src");
+		String html = "<!DOCTYPE html><!-- <p>comment</p> --><html><body>"
+				+ "<P CLASS=a>one &amp; <b>two</b></P>"
+				+ "<script>var s = '<p>script</p>';</script>"
+				+ "<p>1 < 2 &lt; 3&nbsp;<img src='x.png?a=1&amp;b=2'/></p>"
+				+ "<p>unclosed<p>sibling"
+				+ "</body></html>";
+		assertEquals(Arrays.asList("one & two", "x.png?a=1&b=2", "1 < 2 < 3\u00a0", "unclosed", "sibling"), 
+				values(handler.extract(html)));
+	}
+	
+	@Test
+	public void selectors(){
+		String html = "<div id=main><ul class='menu top'><li><a href=/a rel=next>A</a></li>"
+				+ "<li class=top><a href=/b>B</a></li></ul></div>"
+				+ "<ul class=menu><li><a href=/c>C</a></li></ul>";
+		assertEquals(Arrays.asList("A", "B", "C"), values(new SelectorHandler().select("a", "a").extract(html)));
+		assertEquals(Arrays.asList("A", "B"), values(new SelectorHandler().select("a", "#main a").extract(html)));
+		assertEquals(Arrays.asList("/b"), values(new SelectorHandler().select("a", "ul.top li.top a", "href").extract(html)));
+		assertEquals(Arrays.asList("A"), values(new SelectorHandler().select("a", "a[rel=next]").extract(html)));
+		assertEquals(Arrays.asList("/a", "/b", "/c"), values(new SelectorHandler().select("a", "ul.menu [href]", "href").extract(html)));
+		assertEquals(Collections.emptyList(), values(new SelectorHandler().select("a", "div.menu a").extract(html)));
+	}
+	
+	@Test
+	public void quotedValues(){
+		String html = "<div title='a b'><p>one</p></div><div title=a><p>two</p></div>"
+				+ "<div title='x ] y'><p>three</p></div>";
+		assertEquals(Arrays.asList("one"), 
+				values(new SelectorHandler().select("p", "div[title=\"a b\"] p").extract(html)));
+		assertEquals(Arrays.asList("three"), 
+				values(new SelectorHandler().select("p", "div[title='x ] y']  p").extract(html)));
+		assertEquals(Arrays.asList("one", "two", "three"), 
+				values(new SelectorHandler().select("p", " div[ title ] p ").extract(html)));
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void unterminatedQuote(){
+		Selector.compile("div[title='a b] p");
+	}
+	
+	@Test
+	public void nesting(){
+		String html = "<div>outer <div>inner</div> tail</div>";
+		assertEquals(Arrays.asList("inner", "outer inner tail"), 
+				values(new SelectorHandler().select("div", "div").extract(html)));
+		assertEquals(Arrays.asList("inner"), 
+				values(new SelectorHandler().select("div", "div div").extract(html)));
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void invalidSelector(){
+		Selector.compile("div[class");
+	}
+	
+	@Test
+	public void sameAsRegex() throws IOException{
+		LocalSite site = new LocalSite();
+		try {
+			StringBuilder html = new StringBuilder("<html><body>");
+			for(int i = 0; i < 100; i++)
+				html.append("<div class=\"item\"><h2>Item ").append(i).append("</h2>")
+					.append("<span class=\"price\">").append(i * 3).append(".99</span></div>\n");
+			site.page("/shop/", html.append("</body></html>").toString());
+			
+			Pattern    price = Pattern.compile("<span class=\"price\">(.*?)</span>");
+			RexHandler regex = new RexHandler();
+			regex.addFilter(price, 1);
+			new Crawler().setHandler(regex).run(1, site.url("/shop/"));
+			
+			SelectorHandler selector = new SelectorHandler().select("price", "div.item span.price");
+			new Crawler().setHandler(selector).run(1, site.url("/shop/"));
+			assertEquals(100, selector.getResult("price").size());
+			assertEquals(regex.getResult(price), selector.getResult("price"));
+			
+			Page page = new Page((HttpURLConnection) site.url("/shop/").openConnection());
+			assertEquals("Item 42", new SelectorHandler().select("h2", "h2").extract(page.getContent()).get(42).getValue());
+		} finally {
+			site.stop();
+		}
+	}
+}
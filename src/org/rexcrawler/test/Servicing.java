@@ -0,0 +1,181 @@
+package org.rexcrawler.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.rexcrawler.CrawlJob;
+import org.rexcrawler.CrawlService;
+import org.rexcrawler.Crawler;
+import org.rexcrawler.net.AdaptiveLimiter;
+import org.rexcrawler.net.CachingResolver;
+import org.rexcrawler.net.RetryPolicy;
+
+public class Servicing {
+	
+	// Handler pausing the job while it is being prepared
+	static class Preparing extends Crawling.URLCollector {
+		@Override
+		public RetryPolicy getRetryPolicy() {
+			preparing.countDown();
+			try { cancelled.await(5, TimeUnit.SECONDS); } 
+			catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+			return super.getRetryPolicy();
+		}
+		CountDownLatch preparing = new CountDownLatch(1);
+		CountDownLatch cancelled = new CountDownLatch(1);
+	}
+	
+	@Before
+	public void makeSite() throws IOException{
+		this.site  = new LocalSite();
+		this.pages = site.tree(2, 3);
+	}
+	
+	@After
+	public void stopSite(){
+		this.site.stop();
+	}
+	
+	@Test
+	public void concurrentJobs() throws Exception{
+		CrawlService service = new CrawlService(2, 3);
+		List<CrawlJob>              jobs     = new ArrayList<>();
+		List<Crawling.URLCollector> handlers = new ArrayList<>();
+		for(int i = 0; i < 10; i++){
+			Crawling.URLCollector handler = new Crawling.URLCollector();
+			Crawler crawler = new Crawler()
+				.setHandler(handler)
+				.setChunkSize(2)
+				.setSearchLength(pages * 2);
+			handlers.add(handler);
+			jobs.add(service.submit(crawler, site.url("/site/")));
+		}
+		for(CrawlJob job : jobs){
+			assertTrue(job.await(30, TimeUnit.SECONDS));
+			assertEquals(CrawlJob.State.DONE, job.getState());
+			assertEquals(pages, job.getFollowedLinkCount());
+		}
+		for(Crawling.URLCollector handler : handlers)
+			assertEquals(pages - 1, handler.getLinks().size());
+		assertEquals(10, service.getCompletedJobCount());
+		assertTrue(service.getJobs().isEmpty());
+		
+		service.shutdown();
+		assertTrue(service.awaitTermination(5, TimeUnit.SECONDS));
+	}
+	
+	@Test
+	public void concurrentBeatsSequential() throws Exception{
+		site.setLatency(20);
+		final int count = 4;
+		long start = System.nanoTime();
+		for(int i = 0; i < count; i++)
+			new Crawler()
+				.setHandler(new Crawling.URLCollector())
+				.setChunkSize(1)
+				.setSearchLength(pages * 2)
+				.run(count, site.url("/site/"));
+		long sequential = System.nanoTime() - start;
+		
+		CrawlService   service = new CrawlService(count, count);
+		List<CrawlJob> jobs    = new ArrayList<>();
+		start = System.nanoTime();
+		for(int i = 0; i < count; i++)
+			jobs.add(service.submit(new Crawler()
+				.setHandler(new Crawling.URLCollector())
+				.setChunkSize(1)
+				.setSearchLength(pages * 2), site.url("/site/")));
+		for(CrawlJob job : jobs){
+			assertTrue(job.await(30, TimeUnit.SECONDS));
+			assertEquals(pages, job.getFollowedLinkCount());
+		}
+		long concurrent = System.nanoTime() - start;
+		// no thread is parked by a running job
+		assertTrue(service.getPoolSize() <= count);
+		assertTrue(concurrent + " >= " + sequential, concurrent < sequential);
+		service.shutdown();
+		assertTrue(service.awaitTermination(5, TimeUnit.SECONDS));
+	}
+	
+	@Test
+	public void sharedResources() throws Exception{
+		CrawlService service = new CrawlService(2, 2)
+			.setResolver(new CachingResolver())
+			.setConcurrencyLimiter(new AdaptiveLimiter());
+		Crawler crawler = new Crawler()
+			.setHandler(new Crawling.URLCollector())
+			.setSearchLength(pages);
+		CrawlJob job = service.submit(crawler, site.url("/site/"));
+		assertTrue(job.await(30, TimeUnit.SECONDS));
+		assertEquals(CrawlJob.State.DONE, job.getState());
+		assertEquals(pages, job.getFollowedLinkCount());
+		// the job used the resources of the service, the crawler is unchanged
+		assertNull(crawler.getResolver());
+		assertNull(crawler.getConcurrencyLimiter());
+		service.shutdown();
+	}
+	
+	@Test
+	public void cancelQueuedJob() throws Exception{
+		site.setLatency(20);
+		CrawlService service = new CrawlService(1, 1);
+		CrawlJob first  = service.submit(new Crawler().setHandler(new Crawling.URLCollector())
+				.setSearchLength(pages * 2), site.url("/site/"));
+		CrawlJob second = service.submit(new Crawler().setHandler(new Crawling.URLCollector())
+				.setSearchLength(pages * 2), site.url("/site/"));
+		assertEquals(CrawlJob.State.QUEUED, second.getState());
+		assertTrue(second.cancel());
+		assertFalse(second.cancel());
+		assertTrue(first.cancel());
+		assertTrue(first.await(10, TimeUnit.SECONDS));
+		assertEquals(CrawlJob.State.CANCELLED, first.getState());
+		assertEquals(CrawlJob.State.CANCELLED, second.getState());
+		assertEquals(0, second.getFollowedLinkCount());
+		assertTrue(first.getFollowedLinkCount() < pages);
+		service.shutdownNow();
+	}
+	
+	@Test
+	public void cancelStartingJob() throws Exception{
+		site.setLatency(20);
+		CrawlService service = new CrawlService(1, 1);
+		Preparing    handler = new Preparing();
+		CrawlJob     job     = service.submit(new Crawler().setHandler(handler)
+				.setSearchLength(pages), site.url("/site/"));
+		// running, not yet prepared
+		assertTrue(handler.preparing.await(5, TimeUnit.SECONDS));
+		assertTrue(job.cancel());
+		handler.cancelled.countDown();
+		assertTrue(job.await(10, TimeUnit.SECONDS));
+		assertEquals(CrawlJob.State.CANCELLED, job.getState());
+		assertTrue(job.getFollowedLinkCount() < pages);
+		service.shutdownNow();
+	}
+	
+	@Test
+	public void noThreadLeak() throws Exception{
+		int before = Thread.activeCount();
+		for(int i = 0; i < 20; i++)
+			new Crawler()
+				.setHandler(new Crawling.URLCollector())
+				.setChunkSize(2)
+				.setSearchLength(pages)
+				.run(2, site.url("/site/"));
+		Thread.sleep(200);
+		assertTrue(Thread.activeCount() < before + 10);
+	}
+
+	private LocalSite site;
+	private int       pages;
+}
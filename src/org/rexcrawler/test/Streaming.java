@@ -0,0 +1,184 @@
+package org.rexcrawler.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.rexcrawler.Crawler;
+import org.rexcrawler.CrawlerHandler;
+import org.rexcrawler.Page;
+import org.rexcrawler.ResultPublisher;
+import org.rexcrawler.handler.RexHandler;
+
+public class Streaming {
+	
+	// Handler streaming the visited pages
+	static class PageStreamer extends CrawlerHandler {
+		@Override
+		public boolean parsePage(Page page) throws IOException {
+			emit(page.toString());
+			return true;
+		}
+	}
+	
+	// Subscriber requesting one result at a time
+	static class SlowSubscriber implements Flow.Subscriber<String> {
+		
+		public SlowSubscriber(long delay) {
+			this.delay    = delay;
+			this.received = new CopyOnWriteArrayList<>();
+			this.done     = new CountDownLatch(1);
+		}
+		
+		@Override
+		public void onSubscribe(Flow.Subscription subscription) {
+			this.subscription = subscription;
+			subscription.request(1);
+		}
+		
+		@Override
+		public void onNext(String item) {
+			try { Thread.sleep(delay); }
+			catch (InterruptedException e) { }
+			received.add(item);
+			subscription.request(1);
+		}
+		
+		@Override
+		public void onError(Throwable throwable) {
+			throwable.printStackTrace();
+		}
+		
+		@Override
+		public void onComplete() {
+			done.countDown();
+		}
+		
+		long              delay;
+		List<String>      received;
+		CountDownLatch    done;
+		Flow.Subscription subscription;
+	}
+	
+	@Before
+	public void makeSite() throws IOException{
+		this.site  = new LocalSite();
+		this.pages = site.tree(2, 4);
+	}
+	
+	@After
+	public void stopSite(){
+		this.site.stop();
+	}
+	
+	@Test
+	public void backpressure() throws Exception{
+		ResultPublisher<String> publisher  = new ResultPublisher<>(4);
+		SlowSubscriber          subscriber = new SlowSubscriber(50);
+		publisher.subscribe(subscriber);
+		
+		PageStreamer handler = new PageStreamer();
+		handler.setResultPublisher(publisher);
+		new Crawler()
+			.setHandler(handler)
+			.setChunkSize(2)
+			.setSearchLength(pages * 2)
+			.run(4, site.url("/site/"));
+		
+		assertTrue(subscriber.done.await(10, TimeUnit.SECONDS));
+		assertEquals(pages, subscriber.received.size());
+		assertEquals(pages, publisher.getDeliveredCount());
+		assertTrue(publisher.getMaxBuffered() <= 4);
+		assertTrue(publisher.getBlockedTime() > 0);
+	}
+	
+	@Test
+	public void rexHandlerStreaming() throws Exception{
+		ResultPublisher<String> publisher  = new ResultPublisher<>(16);
+		SlowSubscriber          subscriber = new SlowSubscriber(0);
+		publisher.subscribe(subscriber);
+		
+		Pattern    href    = Pattern.compile("href=\"(.*?)\"");
+		RexHandler handler = new RexHandler().addFilter(href, 1);
+		handler.setResultPublisher(publisher);
+		new Crawler()
+			.setHandler(handler)
+			.setSearchLength(pages * 2)
+			.run(site.url("/site/"));
+		
+		assertTrue(subscriber.done.await(10, TimeUnit.SECONDS));
+		// every page but the root is linked once
+		assertEquals(pages - 1, subscriber.received.size());
+		assertEquals(0, handler.getResults().size());
+	}
+	
+	@Test
+	public void singleSubscriber() throws Exception{
+		ResultPublisher<String> publisher = new ResultPublisher<>(4);
+		final Set<String>       errors    = Collections.synchronizedSet(new TreeSet<String>());
+		publisher.subscribe(new SlowSubscriber(0));
+		publisher.subscribe(new SlowSubscriber(0){
+			@Override
+			public void onError(Throwable throwable) {
+				errors.add(throwable.getClass().getSimpleName());
+			}
+		});
+		assertEquals(Collections.singleton("IllegalStateException"), errors);
+	}
+
+	@Test
+	public void noSubscriber() throws Exception{
+		ResultPublisher<String> publisher = new ResultPublisher<>(4);
+		PageStreamer handler = new PageStreamer();
+		handler.setResultPublisher(publisher);
+		new Crawler()
+			.setHandler(handler)
+			.setChunkSize(2)
+			.setSearchLength(pages * 2)
+			.run(4, site.url("/site/"));
+		// the search is not blocked, the results over the capacity are dropped
+		assertEquals(4, publisher.getBuffered());
+		assertEquals(pages - 4, publisher.getDroppedCount());
+	}
+	
+	@Test
+	public void stalledSubscriber() throws Exception{
+		ResultPublisher<String> publisher  = new ResultPublisher<String>(2).setStallTimeout(100);
+		// one request and no more
+		SlowSubscriber          subscriber = new SlowSubscriber(0){
+			@Override
+			public void onNext(String item) {
+				received.add(item);
+			}
+		};
+		publisher.subscribe(subscriber);
+		PageStreamer handler = new PageStreamer();
+		handler.setResultPublisher(publisher);
+		long start = System.nanoTime();
+		new Crawler()
+			.setHandler(handler)
+			.setChunkSize(2)
+			.setSearchLength(pages * 2)
+			.run(4, site.url("/site/"));
+		// a single timeout, the next results are dropped at once
+		assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+		assertEquals(1, subscriber.received.size());
+		assertEquals(pages - 3, publisher.getDroppedCount());
+	}
+
+	private LocalSite site;
+	private int       pages;
+}
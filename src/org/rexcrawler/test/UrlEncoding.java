@@ -0,0 +1,94 @@
+package org.rexcrawler.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.rexcrawler.CompactUrl;
+import org.rexcrawler.Crawler;
+import org.rexcrawler.HostDictionary;
+import org.rexcrawler.test.Retrying.PageCounter;
+
+public class UrlEncoding {
+	
+	@Before
+	public void makeDictionary(){
+		this.dictionary = new HostDictionary();
+	}
+	
+	@Test
+	public void roundTrip(){
+		String[] urls = {
+				"http://www.example.org",
+				"http://www.example.org/",
+				"https://user@www.example.org:8080/a/b?c=d#e",
+				"http://www.example.org/\u00e8/\u4e2d",
+				"relative/link"
+		};
+		for(String url : urls)
+			assertEquals(url, CompactUrl.of(dictionary, url).toString());
+	}
+	
+	@Test
+	public void sharedHost(){
+		CompactUrl a = CompactUrl.of(dictionary, "http://www.example.org/a");
+		CompactUrl b = CompactUrl.of(dictionary, "http://www.example.org/b?x");
+		CompactUrl c = CompactUrl.of(dictionary, "http://www.example.com/a");
+		assertEquals(a.getHost(), b.getHost());
+		assertFalse(a.getHost() == c.getHost());
+		assertEquals("http://www.example.org", a.getPrefix());
+		assertEquals(CompactUrl.of(dictionary, "http://www.example.org/a"), a);
+	}
+	
+	@Test
+	public void descendants() throws MalformedURLException{
+		CompactUrl parent = CompactUrl.location(new URL("http://www.example.org/a/b/?hello=world"));
+		assertTrue (parent.isParentOf("http://www.example.org/a/b/c/d/e"));
+		assertFalse(parent.isParentOf("http://www.example.org/a/b/"));
+		assertFalse(parent.isParentOf("http://www.example.org/a/"));
+		assertFalse(parent.isParentOf("http://www.example.com/a/b/c"));
+		assertTrue (parent.isParentOf(CompactUrl.of("http://www.example.org/a/b/c")));
+		assertFalse(parent.isParentOf(CompactUrl.of("http://www.example.org/a/b/")));
+		
+		CompactUrl unicode = CompactUrl.location(new URL("http://www.example.org/\u00e8/"));
+		assertTrue (unicode.isParentOf("http://www.example.org/\u00e8/x"));
+		assertFalse(unicode.isParentOf("http://www.example.org/e/x"));
+	}
+
+	@Test
+	public void manyHosts(){
+		for(int i = 0; i < 1000; i++)
+			assertEquals(i + 1, dictionary.intern("http://host" + i));
+		for(int i = 0; i < 1000; i++)
+			assertEquals("http://host" + i, dictionary.prefix(i + 1));
+		assertEquals(1001, dictionary.size());
+	}
+	
+	@Test
+	public void searchScope() throws IOException{
+		LocalSite site = new LocalSite();
+		try {
+			int pages = site.tree(2, 3);
+			int hosts = HostDictionary.SHARED.size();
+			PageCounter handler = new PageCounter();
+			new Crawler()
+				.setHandler(handler)
+				.setChunkSize(2)
+				.setSearchLength(pages)
+				.run(2, site.url("/site/"));
+			assertEquals(pages, handler.pages.size());
+			// the hosts of the search are not kept by the JVM
+			assertEquals(hosts, HostDictionary.SHARED.size());
+		} finally {
+			site.stop();
+		}
+	}
+
+	private HostDictionary dictionary;
+}